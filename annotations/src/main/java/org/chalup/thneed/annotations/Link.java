@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.annotations;
+
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Single link used by {@link References} and {@link MayHave}. The {@code model} is a name of the static field in
+ * the {@link GraphSchema} class, the {@code idColumn} is the column pointed to by {@code by} column and defaults
+ * to {@link GraphSchema#defaultIdColumn()}.
+ */
+@Retention(CLASS)
+@Target({})
+public @interface Link {
+  String model();
+
+  String by();
+
+  String idColumn() default "";
+}
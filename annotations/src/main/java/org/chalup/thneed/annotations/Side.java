@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.annotations;
+
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * One side of the many-to-many relationship declared with {@link Links}. Side with a {@code typeColumn} is
+ * polymorphic and may list multiple {@code models}, otherwise it has to list exactly one model.
+ */
+@Retention(CLASS)
+@Target({})
+public @interface Side {
+  String[] models();
+
+  String by();
+
+  String typeColumn() default "";
+
+  String idColumn() default "";
+}
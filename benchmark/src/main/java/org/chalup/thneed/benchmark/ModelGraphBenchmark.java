@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.benchmark;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelReachability;
+import org.chalup.thneed.ModelVisitor;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.OneToOneRelationship;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.RelationshipVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ModelGraphBenchmark {
+
+  @Param({ "10", "100", "1000", "10000" })
+  int mModelCount;
+
+  SyntheticGraph mSyntheticGraph;
+  ModelGraph<SyntheticModel> mGraph;
+
+  @Setup
+  public void setUp() {
+    mSyntheticGraph = SyntheticGraph.generate(mModelCount, 42);
+    mGraph = mSyntheticGraph.build();
+  }
+
+  @Benchmark
+  public ModelGraph<SyntheticModel> build() {
+    return mSyntheticGraph.build();
+  }
+
+  @Benchmark
+  public ModelReachability<SyntheticModel> buildReachability() {
+    return mSyntheticGraph.build().getReachability();
+  }
+
+  @Benchmark
+  public void acceptRelationshipVisitor(final Blackhole blackhole) {
+    mGraph.accept(new RelationshipVisitor<SyntheticModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends SyntheticModel> relationship) {
+        blackhole.consume(relationship.mReferencedModel);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends SyntheticModel> relationship) {
+        blackhole.consume(relationship.mLinkedModel);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends SyntheticModel> relationship) {
+        blackhole.consume(relationship.mModel);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends SyntheticModel> relationship) {
+        blackhole.consume(relationship.mModel);
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends SyntheticModel> relationship) {
+        blackhole.consume(relationship.mPolymorphicModels);
+      }
+    });
+  }
+
+  @Benchmark
+  public void acceptModelVisitor(final Blackhole blackhole) {
+    mGraph.accept(new ModelVisitor<SyntheticModel>() {
+      @Override
+      public void visit(SyntheticModel model) {
+        blackhole.consume(model);
+      }
+    });
+  }
+}
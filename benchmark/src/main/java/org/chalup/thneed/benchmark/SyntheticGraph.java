@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelGraph.Builder.RelationshipAdder;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Randomly generated, but reproducible graph with a mix of relationships similar to a real application schema:
+ * mostly one-to-many relationships, with every 10th model being a many-to-many join model, every 15th model having
+ * a polymorphic relationship with two or three distinct models, every 20th model grouping other models of the same
+ * type and every 25th model being an optional part of some other model. The residues of these cases differ modulo 5,
+ * so no case shadows another.
+ */
+public final class SyntheticGraph {
+  static final String ID = "_id";
+
+  private interface Declaration {
+    RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder);
+  }
+
+  private final ImmutableList<SyntheticModel> mModels;
+  private final ImmutableList<Declaration> mDeclarations;
+
+  private SyntheticGraph(ImmutableList<SyntheticModel> models, ImmutableList<Declaration> declarations) {
+    mModels = models;
+    mDeclarations = declarations;
+  }
+
+  public static SyntheticGraph generate(int modelCount, long seed) {
+    Random random = new Random(seed);
+
+    ImmutableList.Builder<SyntheticModel> modelsBuilder = ImmutableList.builder();
+    for (int i = 0; i < modelCount; i++) {
+      modelsBuilder.add(new SyntheticModel("model_" + i));
+    }
+    ImmutableList<SyntheticModel> models = modelsBuilder.build();
+
+    ImmutableList.Builder<Declaration> declarations = ImmutableList.builder();
+    for (int i = 1; i < modelCount; i++) {
+      final SyntheticModel model = models.get(i);
+      final SyntheticModel first = pickEarlier(models, i, random);
+      final SyntheticModel second = pickEarlier(models, i, random);
+
+      if (i % 10 == 9) {
+        declarations.add(new Declaration() {
+          @Override
+          public RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder) {
+            return adder
+                .the(model)
+                .links(first).by(first + "_id")
+                .with(second).by(second + "_id");
+          }
+        });
+      } else if (i % 15 == 7) {
+        // the polymorphic relationship maps the models to their type names, so they have to be distinct
+        final ImmutableList<SyntheticModel> polymorphicModels = ImmutableSet.of(first, second, pickEarlier(models, i, random)).asList();
+        declarations.add(new Declaration() {
+          @Override
+          public RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder) {
+            if (polymorphicModels.size() < 2) {
+              return adder.the(model).references(first).by(first + "_id");
+            }
+            return adder.the(model).references(polymorphicModels).by("subject_type", "subject_id");
+          }
+        });
+      } else if (i % 20 == 5) {
+        declarations.add(new Declaration() {
+          @Override
+          public RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder) {
+            return adder
+                .the(model).groupsOther().by("parent_id")
+                .the(model).references(first).by(first + "_id");
+          }
+        });
+      } else if (i % 25 == 13) {
+        declarations.add(new Declaration() {
+          @Override
+          public RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder) {
+            return adder.the(first).mayHave(model).linked().by(first + "_id");
+          }
+        });
+      } else {
+        final boolean referencesSecondModel = random.nextInt(10) < 3;
+        declarations.add(new Declaration() {
+          @Override
+          public RelationshipAdder<SyntheticModel> declare(RelationshipAdder<SyntheticModel> adder) {
+            adder.the(model).references(first).by(first + "_id");
+            if (referencesSecondModel) {
+              adder.the(model).references(second).by(second + "_id");
+            }
+            return adder;
+          }
+        });
+      }
+    }
+
+    return new SyntheticGraph(models, declarations.build());
+  }
+
+  private static SyntheticModel pickEarlier(List<SyntheticModel> models, int index, Random random) {
+    return models.get(random.nextInt(index));
+  }
+
+  public ImmutableList<SyntheticModel> getModels() {
+    return mModels;
+  }
+
+  public ModelGraph<SyntheticModel> build() {
+    return build(1);
+  }
+
+  /**
+   * Builds the graph with every n-th declared relationship.
+   */
+  public ModelGraph<SyntheticModel> build(int every) {
+    RelationshipAdder<SyntheticModel> adder = ModelGraph.of(SyntheticModel.class)
+        .identifiedByDefault().by(ID)
+        .with(mModels.get(0))
+        .where();
+
+    for (int i = 0; i < mDeclarations.size(); i += every) {
+      adder = mDeclarations.get(i).declare(adder);
+    }
+
+    return adder.build();
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.benchmark;
+
+import org.chalup.thneed.PolymorphicType;
+
+public final class SyntheticModel implements PolymorphicType<SyntheticModel> {
+  private final String mName;
+
+  SyntheticModel(String name) {
+    mName = name;
+  }
+
+  @Override
+  public SyntheticModel self() {
+    return this;
+  }
+
+  @Override
+  public String getModelName() {
+    return mName;
+  }
+
+  @Override
+  public String toString() {
+    return mName;
+  }
+}
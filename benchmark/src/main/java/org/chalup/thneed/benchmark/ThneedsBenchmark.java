@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.benchmark;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelVisitor;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.OneToOneRelationship;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.RelationshipVisitor;
+import org.chalup.thneed.Thneeds;
+import org.chalup.thneed.Thneeds.CompiledModelCases;
+import org.chalup.thneed.Thneeds.CompiledRelationshipCases;
+import org.chalup.thneed.Thneeds.ModelsSpecialCaseBuilder;
+import org.chalup.thneed.Thneeds.RelationshipsSpecialCaseBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ThneedsBenchmark {
+
+  @Param({ "10", "100", "1000", "10000" })
+  int mModelCount;
+
+  ModelGraph<SyntheticModel> mGraph;
+  ModelGraph<SyntheticModel> mSpecialCasesGraph;
+  ModelGraph<SyntheticModel> mExcludedGraph;
+  List<SyntheticModel> mSpecialCaseModels;
+
+  CountingRelationshipVisitor mDefaultRelationshipVisitor;
+  CountingRelationshipVisitor mSpecialCaseRelationshipVisitor;
+  CountingModelVisitor mDefaultModelVisitor;
+  CountingModelVisitor mSpecialCaseModelVisitor;
+
+  RelationshipsSpecialCaseBuilder<SyntheticModel> mRelationshipsSpecialCases;
+  ModelsSpecialCaseBuilder<SyntheticModel> mModelsSpecialCases;
+
+  CompiledRelationshipCases<SyntheticModel> mCompiledRelationshipsSpecialCases;
+  CompiledModelCases<SyntheticModel> mCompiledModelsSpecialCases;
+
+  @Setup
+  public void setUp() {
+    SyntheticGraph syntheticGraph = SyntheticGraph.generate(mModelCount, 42);
+    mGraph = syntheticGraph.build();
+    mSpecialCasesGraph = syntheticGraph.build(5);
+    mExcludedGraph = syntheticGraph.build(7);
+    mSpecialCaseModels = syntheticGraph.getModels().subList(0, mModelCount / 5);
+
+    mDefaultRelationshipVisitor = new CountingRelationshipVisitor();
+    mSpecialCaseRelationshipVisitor = new CountingRelationshipVisitor();
+    mDefaultModelVisitor = new CountingModelVisitor();
+    mSpecialCaseModelVisitor = new CountingModelVisitor();
+
+    mRelationshipsSpecialCases = buildRelationshipsSpecialCases();
+    mModelsSpecialCases = buildModelsSpecialCases();
+
+    mCompiledRelationshipsSpecialCases = mRelationshipsSpecialCases.compile();
+    mCompiledModelsSpecialCases = mModelsSpecialCases.compile();
+  }
+
+  @Benchmark
+  public RelationshipsSpecialCaseBuilder<SyntheticModel> buildRelationshipsSpecialCases() {
+    return Thneeds
+        .with(mGraph, mDefaultRelationshipVisitor)
+        .plus(mSpecialCasesGraph, mSpecialCaseRelationshipVisitor)
+        .exclude(mExcludedGraph);
+  }
+
+  @Benchmark
+  public int processRelationshipsSpecialCases() {
+    mRelationshipsSpecialCases.process();
+    return mDefaultRelationshipVisitor.mCount + mSpecialCaseRelationshipVisitor.mCount;
+  }
+
+  @Benchmark
+  public int processCompiledRelationshipsSpecialCases() {
+    mCompiledRelationshipsSpecialCases.process();
+    return mDefaultRelationshipVisitor.mCount + mSpecialCaseRelationshipVisitor.mCount;
+  }
+
+  @Benchmark
+  public ModelsSpecialCaseBuilder<SyntheticModel> buildModelsSpecialCases() {
+    return Thneeds
+        .with(mGraph, mDefaultModelVisitor)
+        .plus(mSpecialCaseModels, mSpecialCaseModelVisitor);
+  }
+
+  @Benchmark
+  public int processModelsSpecialCases() {
+    mModelsSpecialCases.process();
+    return mDefaultModelVisitor.mCount + mSpecialCaseModelVisitor.mCount;
+  }
+
+  @Benchmark
+  public int processCompiledModelsSpecialCases() {
+    mCompiledModelsSpecialCases.process();
+    return mDefaultModelVisitor.mCount + mSpecialCaseModelVisitor.mCount;
+  }
+
+  static class CountingModelVisitor implements ModelVisitor<SyntheticModel> {
+    int mCount;
+
+    @Override
+    public void visit(SyntheticModel model) {
+      mCount++;
+    }
+  }
+
+  static class CountingRelationshipVisitor implements RelationshipVisitor<SyntheticModel> {
+    int mCount;
+
+    @Override
+    public void visit(OneToManyRelationship<? extends SyntheticModel> relationship) {
+      mCount++;
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends SyntheticModel> relationship) {
+      mCount++;
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends SyntheticModel> relationship) {
+      mCount++;
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends SyntheticModel> relationship) {
+      mCount++;
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends SyntheticModel> relationship) {
+      mCount++;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.benchmark.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.OneToOneRelationship;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.RelationshipVisitor;
+import org.chalup.thneed.benchmark.SyntheticGraph;
+import org.chalup.thneed.benchmark.SyntheticModel;
+import org.junit.Test;
+
+public class SyntheticGraphTest {
+
+  @Test
+  public void shouldGenerateEveryKindOfRelationship() throws Exception {
+    ModelGraph<SyntheticModel> graph = SyntheticGraph.generate(100, 42).build();
+
+    final int[] counts = new int[5];
+    graph.accept(new RelationshipVisitor<SyntheticModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends SyntheticModel> relationship) {
+        counts[0]++;
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends SyntheticModel> relationship) {
+        counts[1]++;
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends SyntheticModel> relationship) {
+        counts[2]++;
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends SyntheticModel> relationship) {
+        counts[3]++;
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends SyntheticModel> relationship) {
+        counts[4]++;
+      }
+    });
+
+    assertThat(counts[0]).isGreaterThan(70);
+    assertThat(counts[1]).isEqualTo(4);
+    assertThat(counts[2]).isEqualTo(5);
+    assertThat(counts[3]).isEqualTo(10);
+    assertThat(counts[4]).isEqualTo(7);
+  }
+
+  @Test
+  public void shouldBuildGraphForEverySeed() throws Exception {
+    for (long seed = 0; seed != 100; ++seed) {
+      SyntheticGraph graph = SyntheticGraph.generate(40, seed);
+      assertThat(graph.build().getModels()).hasSize(40);
+    }
+  }
+}
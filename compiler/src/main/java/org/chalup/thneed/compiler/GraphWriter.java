@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.compiler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+class GraphWriter {
+  private final String mSchemaClass;
+  private final String mModelType;
+  private final String mDefaultIdColumn;
+
+  private final Set<String> mModels = new LinkedHashSet<String>();
+  private final List<String> mDeclarations = new ArrayList<String>();
+  private final List<String> mRelationships = new ArrayList<String>();
+
+  GraphWriter(String schemaClass, String modelType, String defaultIdColumn) {
+    mSchemaClass = schemaClass;
+    mModelType = modelType;
+    mDefaultIdColumn = defaultIdColumn;
+  }
+
+  void addModel(String model) {
+    mModels.add(model);
+  }
+
+  void addOneToMany(String model, String referencedModel, String idColumn, String linkedByColumn) {
+    mRelationships.add(declareOneToMany(model, referencedModel, idColumn, linkedByColumn));
+    mModels.add(model);
+    mModels.add(referencedModel);
+  }
+
+  void addOneToOne(String model, String linkedModel, String idColumn, String linkedByColumn) {
+    mRelationships.add(declare("oneToOne", model(model), model(linkedModel), string(idColumn(idColumn)), string(linkedByColumn)));
+    mModels.add(model);
+    mModels.add(linkedModel);
+  }
+
+  void addRecursive(String model, String idColumn, String groupByColumn) {
+    mRelationships.add(declare("recursive", model(model), string(idColumn(idColumn)), string(groupByColumn)));
+    mModels.add(model);
+  }
+
+  void addPolymorphic(String model, List<String> polymorphicModels, String idColumn, String typeColumn, String idColumnName) {
+    mRelationships.add(declarePolymorphic(model, polymorphicModels, idColumn, typeColumn, idColumnName));
+    mModels.add(model);
+    mModels.addAll(polymorphicModels);
+  }
+
+  /**
+   * Mirrors the order in which ModelGraph.Builder registers the many-to-many relationship and its sides.
+   */
+  void addManyToMany(String model, String leftRelationship, String rightRelationship) {
+    mRelationships.add(declare("manyToMany", model(model), leftRelationship, rightRelationship));
+    mRelationships.add(rightRelationship);
+    mRelationships.add(leftRelationship);
+    mModels.add(model);
+  }
+
+  String declareOneToMany(String model, String referencedModel, String idColumn, String linkedByColumn) {
+    mModels.add(referencedModel);
+    return declare("oneToMany", model(model), model(referencedModel), string(idColumn(idColumn)), string(linkedByColumn));
+  }
+
+  String declarePolymorphic(String model, List<String> polymorphicModels, String idColumn, String typeColumn, String idColumnName) {
+    mModels.addAll(polymorphicModels);
+
+    StringBuilder types = new StringBuilder("ImmutableList.of(");
+    for (int i = 0; i < polymorphicModels.size(); i++) {
+      if (i > 0) {
+        types.append(", ");
+      }
+      types.append(model(polymorphicModels.get(i)));
+    }
+    types.append(")");
+
+    return declare("polymorphic", model(model), types.toString(), string(idColumn(idColumn)), string(typeColumn), string(idColumnName));
+  }
+
+  private String declare(String factoryMethod, String... arguments) {
+    String name = "r" + mDeclarations.size();
+
+    StringBuilder builder = new StringBuilder()
+        .append("Relationship<").append(mModelType).append("> ").append(name)
+        .append(" = Relationships.<").append(mModelType).append(">").append(factoryMethod).append("(");
+    for (int i = 0; i < arguments.length; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(arguments[i]);
+    }
+    builder.append(");");
+
+    mDeclarations.add(builder.toString());
+    return name;
+  }
+
+  String brewJava(String packageName, String className) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("// Generated code from Thneed. Do not modify!\n");
+    if (!packageName.isEmpty()) {
+      builder.append("package ").append(packageName).append(";\n\n");
+    }
+    builder.append("import com.google.common.collect.ImmutableList;\n");
+    builder.append("import com.google.common.collect.ImmutableSet;\n");
+    builder.append("import org.chalup.thneed.ModelGraph;\n");
+    builder.append("import org.chalup.thneed.Relationship;\n");
+    builder.append("import org.chalup.thneed.Relationships;\n\n");
+
+    builder.append("public final class ").append(className).append(" {\n");
+    builder.append("  public static final ModelGraph<").append(mModelType).append("> GRAPH = build();\n\n");
+    builder.append("  private ").append(className).append("() {\n");
+    builder.append("  }\n\n");
+
+    builder.append("  private static ModelGraph<").append(mModelType).append("> build() {\n");
+    builder.append("    ImmutableSet.Builder<").append(mModelType).append("> models = ImmutableSet.builder();\n");
+    for (String model : mModels) {
+      builder.append("    models.add(").append(model(model)).append(");\n");
+    }
+    builder.append("\n");
+
+    for (String declaration : mDeclarations) {
+      builder.append("    ").append(declaration).append("\n");
+    }
+    builder.append("\n");
+
+    builder.append("    ImmutableList.Builder<Relationship<? extends ").append(mModelType).append(">> relationships = ImmutableList.builder();\n");
+    for (String relationship : mRelationships) {
+      builder.append("    relationships.add(").append(relationship).append(");\n");
+    }
+    builder.append("\n");
+
+    builder.append("    return ModelGraph.precompiled(").append(string(mDefaultIdColumn)).append(", models.build(), relationships.build());\n");
+    builder.append("  }\n");
+    builder.append("}\n");
+
+    return builder.toString();
+  }
+
+  private String idColumn(String idColumn) {
+    return idColumn.isEmpty() ? mDefaultIdColumn : idColumn;
+  }
+
+  private String model(String model) {
+    return mSchemaClass + "." + model;
+  }
+
+  private static String string(String value) {
+    StringBuilder builder = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        default:
+          builder.append(c);
+      }
+    }
+    return builder.append("\"").toString();
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+class HydratorWriter {
+  private final String mClassName;
+  private final List<String> mAssignments = new ArrayList<String>();
+  private final Map<String, Integer> mColumns = new LinkedHashMap<String, Integer>();
+
+  HydratorWriter(String className) {
+    mClassName = className;
+  }
+
+  static boolean isBindable(String type) {
+    return cursorValue(type) != null;
+  }
+
+  /**
+   * Binds the field to the columns with the same name, its form without the {@code m} prefix and its lower underscore
+   * form, unless these columns are already bound to a field added earlier, e.g. the field of the subclass hiding the
+   * field of the superclass.
+   */
+  void addField(String fieldName, String type) {
+    int index = mAssignments.size();
+    for (String columnName : columnNames(fieldName)) {
+      if (!mColumns.containsKey(columnName)) {
+        mColumns.put(columnName, index);
+      }
+    }
+    if (mColumns.containsValue(index)) {
+      mAssignments.add("object." + fieldName + " = " + cursorValue(type) + ";");
+    }
+  }
+
+  String brewJava(String packageName, String className) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("// Generated code from Thneed. Do not modify!\n");
+    if (!packageName.isEmpty()) {
+      builder.append("package ").append(packageName).append(";\n\n");
+    }
+    builder.append("import android.database.Cursor;\n");
+    builder.append("import java.util.HashMap;\n");
+    builder.append("import java.util.Map;\n");
+    builder.append("import org.chalup.thneed.Hydrator;\n\n");
+
+    builder.append("public final class ").append(className).append(" implements Hydrator<").append(mClassName).append("> {\n");
+    builder.append("  private static final Map<String, Integer> FIELDS = new HashMap<String, Integer>();\n\n");
+
+    builder.append("  static {\n");
+    for (Entry<String, Integer> column : mColumns.entrySet()) {
+      builder.append("    FIELDS.put(\"").append(column.getKey()).append("\", ").append(column.getValue()).append(");\n");
+    }
+    builder.append("  }\n\n");
+
+    builder.append("  @Override\n");
+    builder.append("  public int fieldIndex(String columnName) {\n");
+    builder.append("    Integer index = FIELDS.get(columnName);\n");
+    builder.append("    return index != null ? index : -1;\n");
+    builder.append("  }\n\n");
+
+    builder.append("  @Override\n");
+    builder.append("  public ").append(mClassName).append(" newInstance() {\n");
+    builder.append("    return new ").append(mClassName).append("();\n");
+    builder.append("  }\n\n");
+
+    builder.append("  @Override\n");
+    builder.append("  public void set(").append(mClassName).append(" object, int fieldIndex, Cursor cursor, int column) {\n");
+    builder.append("    switch (fieldIndex) {\n");
+    for (int i = 0; i < mAssignments.size(); i++) {
+      builder.append("      case ").append(i).append(":\n");
+      builder.append("        ").append(mAssignments.get(i)).append("\n");
+      builder.append("        return;\n");
+    }
+    builder.append("      default:\n");
+    builder.append("        throw new IllegalArgumentException(\"Unknown field \" + fieldIndex);\n");
+    builder.append("    }\n");
+    builder.append("  }\n");
+    builder.append("}\n");
+
+    return builder.toString();
+  }
+
+  private static String cursorValue(String type) {
+    if (type.equals("long")) return "cursor.getLong(column)";
+    if (type.equals("int")) return "cursor.getInt(column)";
+    if (type.equals("short")) return "cursor.getShort(column)";
+    if (type.equals("double")) return "cursor.getDouble(column)";
+    if (type.equals("float")) return "cursor.getFloat(column)";
+    if (type.equals("boolean")) return "cursor.getInt(column) != 0";
+    if (type.equals("java.lang.Long")) return nullable("cursor.getLong(column)");
+    if (type.equals("java.lang.Integer")) return nullable("cursor.getInt(column)");
+    if (type.equals("java.lang.Short")) return nullable("cursor.getShort(column)");
+    if (type.equals("java.lang.Double")) return nullable("cursor.getDouble(column)");
+    if (type.equals("java.lang.Float")) return nullable("cursor.getFloat(column)");
+    if (type.equals("java.lang.Boolean")) return nullable("cursor.getInt(column) != 0");
+    if (type.equals("java.lang.String")) return nullable("cursor.getString(column)");
+    if (type.equals("byte[]")) return nullable("cursor.getBlob(column)");
+    return null;
+  }
+
+  private static String nullable(String value) {
+    return "cursor.isNull(column) ? null : " + value;
+  }
+
+  private static List<String> columnNames(String fieldName) {
+    String name = fieldName;
+    if (name.length() > 1 && name.charAt(0) == 'm' && Character.isUpperCase(name.charAt(1))) {
+      name = Character.toLowerCase(name.charAt(1)) + name.substring(2);
+    }
+
+    StringBuilder underscored = new StringBuilder();
+    for (char c : name.toCharArray()) {
+      if (c >= 'A' && c <= 'Z') {
+        underscored.append('_').append(Character.toLowerCase(c));
+      } else {
+        underscored.append(c);
+      }
+    }
+    return Arrays.asList(fieldName, name, underscored.toString());
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.compiler;
+
+import static javax.tools.Diagnostic.Kind.ERROR;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates {@code <ClassName>$$ModelGraph} class with pre-built {@code ModelGraph} for every class annotated with
+ * {@code org.chalup.thneed.annotations.GraphSchema} and {@code <ClassName>$$Hydrator} class for every class annotated
+ * with {@code org.chalup.thneed.annotations.Hydrated}.
+ */
+public class ThneedProcessor extends AbstractProcessor {
+  static final String SUFFIX = "$$ModelGraph";
+  static final String HYDRATOR_SUFFIX = "$$Hydrator";
+
+  private static final String ANNOTATIONS_PACKAGE = "org.chalup.thneed.annotations.";
+
+  private static final String GRAPH_SCHEMA = ANNOTATIONS_PACKAGE + "GraphSchema";
+  private static final String MODEL = ANNOTATIONS_PACKAGE + "Model";
+  private static final String REFERENCES = ANNOTATIONS_PACKAGE + "References";
+  private static final String MAY_HAVE = ANNOTATIONS_PACKAGE + "MayHave";
+  private static final String GROUPS_OTHER = ANNOTATIONS_PACKAGE + "GroupsOther";
+  private static final String REFERENCES_ANY = ANNOTATIONS_PACKAGE + "ReferencesAny";
+  private static final String LINKS = ANNOTATIONS_PACKAGE + "Links";
+  private static final String HYDRATED = ANNOTATIONS_PACKAGE + "Hydrated";
+
+  private static final List<String> FIELD_ANNOTATIONS = Arrays.asList(MODEL, REFERENCES, MAY_HAVE, GROUPS_OTHER, REFERENCES_ANY, LINKS);
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    Set<String> types = new LinkedHashSet<String>(FIELD_ANNOTATIONS);
+    types.add(GRAPH_SCHEMA);
+    types.add(HYDRATED);
+    return types;
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement hydrated = processingEnv.getElementUtils().getTypeElement(HYDRATED);
+    if (hydrated != null) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(hydrated)) {
+        try {
+          HydratorWriter writer = parseHydrated(element);
+          String packageName = getPackageName(element);
+          String className = getClassName((TypeElement) element, packageName, HYDRATOR_SUFFIX);
+          write((TypeElement) element, packageName, className, writer.brewJava(packageName, className));
+        } catch (ProcessingException e) {
+          error(e.mElement, e.getMessage());
+        } catch (IOException e) {
+          error(element, "Unable to write Hydrator for " + element + ": " + e.getMessage());
+        }
+      }
+    }
+
+    for (String fieldAnnotation : FIELD_ANNOTATIONS) {
+      TypeElement annotationElement = processingEnv.getElementUtils().getTypeElement(fieldAnnotation);
+      if (annotationElement == null) {
+        continue;
+      }
+
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotationElement)) {
+        if (getMirror(element.getEnclosingElement(), GRAPH_SCHEMA) == null) {
+          error(element, "Models have to be declared in a class annotated with @GraphSchema");
+        }
+      }
+    }
+
+    TypeElement graphSchema = processingEnv.getElementUtils().getTypeElement(GRAPH_SCHEMA);
+    if (graphSchema == null) {
+      return false;
+    }
+
+    for (Element element : roundEnv.getElementsAnnotatedWith(graphSchema)) {
+      try {
+        GraphWriter writer = parseSchema((TypeElement) element);
+        String packageName = getPackageName(element);
+        String className = getClassName((TypeElement) element, packageName, SUFFIX);
+        write((TypeElement) element, packageName, className, writer.brewJava(packageName, className));
+      } catch (ProcessingException e) {
+        error(e.mElement, e.getMessage());
+      } catch (IOException e) {
+        error(element, "Unable to write ModelGraph for " + element + ": " + e.getMessage());
+      }
+    }
+
+    return true;
+  }
+
+  private GraphWriter parseSchema(TypeElement schema) throws ProcessingException {
+    if (schema.getModifiers().contains(Modifier.PRIVATE)) {
+      throw new ProcessingException(schema, "@GraphSchema class cannot be private");
+    }
+
+    AnnotationMirror schemaMirror = getMirror(schema, GRAPH_SCHEMA);
+    TypeMirror modelType = (TypeMirror) getValue(schemaMirror, "model");
+    String defaultIdColumn = (String) getValue(schemaMirror, "defaultIdColumn");
+
+    Map<String, Element> fields = new LinkedHashMap<String, Element>();
+    for (Element element : schema.getEnclosedElements()) {
+      if (element.getKind() == ElementKind.FIELD || element.getKind() == ElementKind.ENUM_CONSTANT) {
+        fields.put(element.getSimpleName().toString(), element);
+      }
+    }
+
+    GraphWriter writer = new GraphWriter(schema.getQualifiedName().toString(), modelType.toString(), defaultIdColumn);
+
+    for (Element field : fields.values()) {
+      if (!hasAnyFieldAnnotation(field)) {
+        continue;
+      }
+
+      Set<Modifier> modifiers = field.getModifiers();
+      if (!modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) {
+        throw new ProcessingException(field, "Models have to be declared in non-private static fields");
+      }
+
+      String model = field.getSimpleName().toString();
+
+      if (getMirror(field, MODEL) != null) {
+        writer.addModel(model);
+      }
+
+      AnnotationMirror references = getMirror(field, REFERENCES);
+      if (references != null) {
+        for (AnnotationMirror link : getMirrors(references, "value")) {
+          String referencedModel = getFieldName(fields, field, link, "model");
+          writer.addOneToMany(model, referencedModel, (String) getValue(link, "idColumn"), (String) getValue(link, "by"));
+        }
+      }
+
+      AnnotationMirror mayHave = getMirror(field, MAY_HAVE);
+      if (mayHave != null) {
+        for (AnnotationMirror link : getMirrors(mayHave, "value")) {
+          String linkedModel = getFieldName(fields, field, link, "model");
+          writer.addOneToOne(model, linkedModel, (String) getValue(link, "idColumn"), (String) getValue(link, "by"));
+        }
+      }
+
+      AnnotationMirror groupsOther = getMirror(field, GROUPS_OTHER);
+      if (groupsOther != null) {
+        writer.addRecursive(model, (String) getValue(groupsOther, "idColumn"), (String) getValue(groupsOther, "by"));
+      }
+
+      AnnotationMirror referencesAny = getMirror(field, REFERENCES_ANY);
+      if (referencesAny != null) {
+        List<String> polymorphicModels = getFieldNames(fields, field, referencesAny, "models");
+        writer.addPolymorphic(model, polymorphicModels, (String) getValue(referencesAny, "idColumn"), (String) getValue(referencesAny, "typeColumn"), (String) getValue(referencesAny, "by"));
+      }
+
+      AnnotationMirror links = getMirror(field, LINKS);
+      if (links != null) {
+        String left = addSide(writer, fields, field, (AnnotationMirror) getValue(links, "left"));
+        String right = addSide(writer, fields, field, (AnnotationMirror) getValue(links, "right"));
+        writer.addManyToMany(model, left, right);
+      }
+    }
+
+    return writer;
+  }
+
+  private String addSide(GraphWriter writer, Map<String, Element> fields, Element field, AnnotationMirror side) throws ProcessingException {
+    String model = field.getSimpleName().toString();
+    List<String> sideModels = getFieldNames(fields, field, side, "models");
+    String typeColumn = (String) getValue(side, "typeColumn");
+    String idColumn = (String) getValue(side, "idColumn");
+    String by = (String) getValue(side, "by");
+
+    if (typeColumn.isEmpty()) {
+      if (sideModels.size() != 1) {
+        throw new ProcessingException(field, "Non-polymorphic side of @Links has to list exactly one model");
+      }
+      return writer.declareOneToMany(model, sideModels.get(0), idColumn, by);
+    } else {
+      return writer.declarePolymorphic(model, sideModels, idColumn, typeColumn, by);
+    }
+  }
+
+  private HydratorWriter parseHydrated(Element element) throws ProcessingException {
+    if (element.getKind() != ElementKind.CLASS) {
+      throw new ProcessingException(element, "@Hydrated can only annotate classes");
+    }
+
+    TypeElement type = (TypeElement) element;
+    Set<Modifier> modifiers = type.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.ABSTRACT)) {
+      throw new ProcessingException(type, "@Hydrated class cannot be private or abstract");
+    }
+    if (type.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)) {
+      throw new ProcessingException(type, "@Hydrated nested class has to be static");
+    }
+    if (!type.getTypeParameters().isEmpty()) {
+      throw new ProcessingException(type, "@Hydrated class cannot be generic");
+    }
+    if (!hasNoArgConstructor(type)) {
+      throw new ProcessingException(type, "@Hydrated class has to have non-private no-arg constructor");
+    }
+
+    String packageName = getPackageName(type);
+    HydratorWriter writer = new HydratorWriter(type.getQualifiedName().toString());
+    for (TypeElement c = type; c != null && !c.getQualifiedName().contentEquals("java.lang.Object"); c = getSuperclass(c)) {
+      boolean samePackage = getPackageName(c).equals(packageName);
+      for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+        Set<Modifier> fieldModifiers = field.getModifiers();
+        String fieldType = field.asType().toString();
+        if (fieldModifiers.contains(Modifier.STATIC) || fieldModifiers.contains(Modifier.TRANSIENT) || !HydratorWriter.isBindable(fieldType)) {
+          continue;
+        }
+
+        if (fieldModifiers.contains(Modifier.PRIVATE) || fieldModifiers.contains(Modifier.FINAL)) {
+          throw new ProcessingException(field, "Hydrated fields cannot be private or final");
+        }
+        if (!samePackage && !fieldModifiers.contains(Modifier.PUBLIC)) {
+          throw new ProcessingException(field, "Hydrated fields inherited from other packages have to be public");
+        }
+        writer.addField(field.getSimpleName().toString(), fieldType);
+      }
+    }
+    return writer;
+  }
+
+  private static boolean hasNoArgConstructor(TypeElement type) {
+    for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static TypeElement getSuperclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+  }
+
+  private String getPackageName(Element element) {
+    return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+  }
+
+  private static String getClassName(TypeElement type, String packageName, String suffix) {
+    String qualifiedName = type.getQualifiedName().toString();
+    return (packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1)).replace('.', '$') + suffix;
+  }
+
+  private void write(TypeElement element, String packageName, String className, String source) throws IOException {
+    JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? className : packageName + "." + className, element);
+    Writer writer = sourceFile.openWriter();
+    try {
+      writer.write(source);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private boolean hasAnyFieldAnnotation(Element element) {
+    for (String annotation : FIELD_ANNOTATIONS) {
+      if (getMirror(element, annotation) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getFieldName(Map<String, Element> fields, Element field, AnnotationMirror mirror, String name) throws ProcessingException {
+    return checkField(fields, field, (String) getValue(mirror, name));
+  }
+
+  private static List<String> getFieldNames(Map<String, Element> fields, Element field, AnnotationMirror mirror, String name) throws ProcessingException {
+    @SuppressWarnings("unchecked")
+    List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) getValue(mirror, name);
+    if (values.isEmpty()) {
+      throw new ProcessingException(field, "At least one model has to be specified");
+    }
+
+    String[] result = new String[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = checkField(fields, field, (String) values.get(i).getValue());
+    }
+    return Arrays.asList(result);
+  }
+
+  private static String checkField(Map<String, Element> fields, Element field, String fieldName) throws ProcessingException {
+    if (!fields.containsKey(fieldName)) {
+      throw new ProcessingException(field, "Unknown model " + fieldName + ", it has to be a static field of the @GraphSchema class");
+    }
+    return fieldName;
+  }
+
+  private static AnnotationMirror getMirror(Element element, String annotation) {
+    if (element == null) {
+      return null;
+    }
+
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+        return mirror;
+      }
+    }
+    return null;
+  }
+
+  private static List<AnnotationMirror> getMirrors(AnnotationMirror mirror, String name) {
+    @SuppressWarnings("unchecked")
+    List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) getValue(mirror, name);
+    if (values.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    AnnotationMirror[] result = new AnnotationMirror[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (AnnotationMirror) values.get(i).getValue();
+    }
+    return Arrays.asList(result);
+  }
+
+  private static Object getValue(AnnotationMirror mirror, String name) {
+    for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+      if (entry.getKey().getSimpleName().contentEquals(name)) {
+        return entry.getValue().getValue();
+      }
+    }
+
+    for (Element element : mirror.getAnnotationType().asElement().getEnclosedElements()) {
+      if (element.getKind() == ElementKind.METHOD && element.getSimpleName().contentEquals(name)) {
+        AnnotationValue defaultValue = ((ExecutableElement) element).getDefaultValue();
+        if (defaultValue != null) {
+          return defaultValue.getValue();
+        }
+      }
+    }
+
+    throw new IllegalArgumentException("Missing value " + name + " in " + mirror);
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(ERROR, message, element);
+  }
+
+  private static class ProcessingException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final Element mElement;
+
+    ProcessingException(Element element, String message) {
+      super(message);
+      mElement = element;
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.compiler.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.compiler.ThneedProcessor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class ThneedProcessorTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  @Rule
+  public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+  private File mSourceDir;
+  private File mOutputDir;
+  private DiagnosticCollector<JavaFileObject> mDiagnostics;
+
+  @Before
+  public void init() throws Exception {
+    mSourceDir = mTemporaryFolder.newFolder("src");
+    mOutputDir = mTemporaryFolder.newFolder("out");
+    mDiagnostics = new DiagnosticCollector<JavaFileObject>();
+  }
+
+  @Test
+  public void shouldGenerateGraphWithFlattenedRelationships() throws Exception {
+    boolean success = compile("test/Schema.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@GraphSchema(model = Schema.DataModel.class, defaultIdColumn = \"_id\")\n" +
+        "public class Schema {\n" +
+        "  public interface DataModel {}\n" +
+        "  @Model static final DataModel ANNOUNCEMENT = new DataModel() {};\n" +
+        "  static final DataModel ROOM = new DataModel() {};\n" +
+        "  static final DataModel SPEAKER = new DataModel() {};\n" +
+        "  @References(@Link(model = \"ROOM\", by = \"room_id\"))\n" +
+        "  static final DataModel SESSION = new DataModel() {};\n" +
+        "  @Links(left = @Side(models = \"SESSION\", by = \"session_id\"), right = @Side(models = \"SPEAKER\", by = \"speaker_id\", idColumn = \"id\"))\n" +
+        "  static final DataModel SESSIONS_SPEAKERS = new DataModel() {};\n" +
+        "}\n");
+
+    assertThat(success).isTrue();
+
+    String generated = read("test/Schema$$ModelGraph.java");
+    assertThat(generated).contains("public final class Schema$$ModelGraph");
+    assertThat(generated).contains("public static final ModelGraph<test.Schema.DataModel> GRAPH = build();");
+    assertThat(generated).contains("models.add(test.Schema.ANNOUNCEMENT);");
+    assertThat(generated).contains("Relationship<test.Schema.DataModel> r0 = Relationships.<test.Schema.DataModel>oneToMany(test.Schema.SESSION, test.Schema.ROOM, \"_id\", \"room_id\");");
+    assertThat(generated).contains("Relationship<test.Schema.DataModel> r2 = Relationships.<test.Schema.DataModel>oneToMany(test.Schema.SESSIONS_SPEAKERS, test.Schema.SPEAKER, \"id\", \"speaker_id\");");
+    assertThat(generated).contains("Relationship<test.Schema.DataModel> r3 = Relationships.<test.Schema.DataModel>manyToMany(test.Schema.SESSIONS_SPEAKERS, r1, r2);");
+    assertThat(generated).contains("" +
+        "    relationships.add(r0);\n" +
+        "    relationships.add(r3);\n" +
+        "    relationships.add(r2);\n" +
+        "    relationships.add(r1);\n");
+  }
+
+  @Test
+  public void shouldGeneratePolymorphicRelationships() throws Exception {
+    boolean success = compile("test/Schema.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@GraphSchema(model = Object.class, defaultIdColumn = \"_id\")\n" +
+        "public class Schema {\n" +
+        "  static final Object CONTACT = new Object();\n" +
+        "  static final Object DEAL = new Object();\n" +
+        "  @ReferencesAny(models = { \"CONTACT\", \"DEAL\" }, typeColumn = \"taskable_type\", by = \"taskable_id\")\n" +
+        "  static final Object TASK = new Object();\n" +
+        "}\n");
+
+    assertThat(success).isTrue();
+    assertThat(read("test/Schema$$ModelGraph.java")).contains("Relationships.<java.lang.Object>polymorphic(test.Schema.TASK, ImmutableList.of(test.Schema.CONTACT, test.Schema.DEAL), \"_id\", \"taskable_type\", \"taskable_id\");");
+  }
+
+  @Test
+  public void shouldFailForUnknownModel() throws Exception {
+    boolean success = compile("test/Schema.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@GraphSchema(model = Object.class, defaultIdColumn = \"_id\")\n" +
+        "public class Schema {\n" +
+        "  @References(@Link(model = \"ROOM\", by = \"room_id\"))\n" +
+        "  static final Object SESSION = new Object();\n" +
+        "}\n");
+
+    assertThat(success).isFalse();
+    assertThat(mDiagnostics.getDiagnostics().get(0).getMessage(null)).contains("Unknown model ROOM");
+  }
+
+  @Test
+  public void shouldFailForModelsOutsideOfSchema() throws Exception {
+    boolean success = compile("test/Schema.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "public class Schema {\n" +
+        "  @Model static final Object SESSION = new Object();\n" +
+        "}\n");
+
+    assertThat(success).isFalse();
+  }
+
+  @Test
+  public void shouldGenerateCompilableGraph() throws Exception {
+    boolean success = compile("test/Schema.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.PolymorphicType;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@GraphSchema(model = Schema.DataModel.class, defaultIdColumn = \"_id\")\n" +
+        "public class Schema {\n" +
+        "  public interface DataModel {}\n" +
+        "  public static abstract class PolyModel implements DataModel, PolymorphicType<PolyModel> {\n" +
+        "    public PolyModel self() { return this; }\n" +
+        "  }\n" +
+        "  static final PolyModel CONTACT = new PolyModel() { public String getModelName() { return \"Contact\"; } };\n" +
+        "  static final PolyModel DEAL = new PolyModel() { public String getModelName() { return \"Deal\"; } };\n" +
+        "  static final DataModel TAG = new DataModel() {};\n" +
+        "  @Links(left = @Side(models = \"TAG\", by = \"tag_id\"), right = @Side(models = { \"CONTACT\", \"DEAL\" }, typeColumn = \"taggable_type\", by = \"taggable_id\"))\n" +
+        "  static final DataModel TAGGING = new DataModel() {};\n" +
+        "  @References(@Link(model = \"CONTACT\", by = \"contact_id\"))\n" +
+        "  @GroupsOther(by = \"parent_id\")\n" +
+        "  static final DataModel TASK = new DataModel() {};\n" +
+        "}\n", false);
+
+    assertThat(success).isTrue();
+
+    ClassLoader classLoader = new URLClassLoader(new URL[] { mOutputDir.toURI().toURL() }, getClass().getClassLoader());
+    ModelGraph<?> graph = (ModelGraph<?>) classLoader.loadClass("test.Schema$$ModelGraph").getField("GRAPH").get(null);
+
+    assertThat(graph.getModels()).hasSize(5);
+    assertThat(graph.getRelationships()).hasSize(5);
+
+    @SuppressWarnings("unchecked")
+    ModelGraph<Object> objectGraph = (ModelGraph<Object>) graph;
+    for (Object model : objectGraph.getModels()) {
+      assertThat(objectGraph.getIdColumn(model)).isEqualTo("_id");
+    }
+  }
+
+  @Test
+  public void shouldGenerateHydratorForAnnotatedClass() throws Exception {
+    boolean success = compile("test/Contact.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "public class Contact {\n" +
+        "  public static class Entity {\n" +
+        "    public long mId;\n" +
+        "    String ignored;\n" +
+        "  }\n" +
+        "  @Hydrated\n" +
+        "  public static class Person extends Entity {\n" +
+        "    long mId;\n" +
+        "    String mFirstName;\n" +
+        "    Boolean active;\n" +
+        "    transient int cached;\n" +
+        "    Contact contact;\n" +
+        "  }\n" +
+        "}\n");
+
+    assertThat(success).isTrue();
+
+    String generated = read("test/Contact$Person$$Hydrator.java");
+    assertThat(generated).contains("public final class Contact$Person$$Hydrator implements Hydrator<test.Contact.Person>");
+    assertThat(generated).contains("" +
+        "    FIELDS.put(\"mId\", 0);\n" +
+        "    FIELDS.put(\"id\", 0);\n" +
+        "    FIELDS.put(\"mFirstName\", 1);\n" +
+        "    FIELDS.put(\"firstName\", 1);\n" +
+        "    FIELDS.put(\"first_name\", 1);\n" +
+        "    FIELDS.put(\"active\", 2);\n" +
+        "    FIELDS.put(\"ignored\", 3);\n" +
+        "  }\n");
+    assertThat(generated).contains("return new test.Contact.Person();");
+    assertThat(generated).contains("object.mId = cursor.getLong(column);");
+    assertThat(generated).contains("object.active = cursor.isNull(column) ? null : cursor.getInt(column) != 0;");
+    assertThat(generated).doesNotContain("cached");
+    assertThat(generated).doesNotContain("contact");
+  }
+
+  @Test
+  public void shouldFailForPrivateHydratedField() throws Exception {
+    boolean success = compile("test/Contact.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@Hydrated\n" +
+        "public class Contact {\n" +
+        "  private String mName;\n" +
+        "}\n");
+
+    assertThat(success).isFalse();
+    assertThat(mDiagnostics.getDiagnostics().get(0).getMessage(null)).contains("Hydrated fields cannot be private or final");
+  }
+
+  @Test
+  public void shouldFailForHydratedClassWithoutNoArgConstructor() throws Exception {
+    boolean success = compile("test/Contact.java", "" +
+        "package test;\n" +
+        "import org.chalup.thneed.annotations.*;\n" +
+        "@Hydrated\n" +
+        "public class Contact {\n" +
+        "  String mName;\n" +
+        "  public Contact(String name) { mName = name; }\n" +
+        "}\n");
+
+    assertThat(success).isFalse();
+    assertThat(mDiagnostics.getDiagnostics().get(0).getMessage(null)).contains("non-private no-arg constructor");
+  }
+
+  private boolean compile(String path, String source) throws IOException {
+    return compile(path, source, true);
+  }
+
+  private boolean compile(String path, String source, boolean processingOnly) throws IOException {
+    File sourceFile = new File(mSourceDir, path);
+    sourceFile.getParentFile().mkdirs();
+    OutputStream outputStream = new FileOutputStream(sourceFile);
+    try {
+      outputStream.write(source.getBytes(UTF_8));
+    } finally {
+      outputStream.close();
+    }
+
+    List<String> options = new ArrayList<String>(Arrays.asList("-s", mOutputDir.getPath(), "-d", mOutputDir.getPath(), "-classpath", System.getProperty("java.class.path")));
+    if (processingOnly) {
+      options.add("-proc:only");
+    }
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    StandardJavaFileManager fileManager = compiler.getStandardFileManager(mDiagnostics, null, UTF_8);
+    try {
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, mDiagnostics,
+          options,
+          null,
+          fileManager.getJavaFileObjects(sourceFile));
+      task.setProcessors(Collections.singletonList(new ThneedProcessor()));
+      return task.call();
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private String read(String path) throws IOException {
+    File file = new File(mOutputDir, path);
+    byte[] bytes = new byte[(int) file.length()];
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      int offset = 0;
+      while (offset < bytes.length) {
+        offset += inputStream.read(bytes, offset, bytes.length - offset);
+      }
+    } finally {
+      inputStream.close();
+    }
+    return new String(bytes, UTF_8);
+  }
+}
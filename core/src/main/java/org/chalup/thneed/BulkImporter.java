@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Imports the rows of all models in the order of the {@link ModelGraph#getDependencyTiers()}, so the referenced rows
+ * are inserted before the rows referencing them.
+ * <p/>
+ * The rows of every tier are parsed concurrently on the worker pool, while the calling thread inserts the rows of the
+ * previous tier; it's the only thread using the {@link ImportWriter}. The inserts are committed in transactions of
+ * configurable number of rows. The rows committed before a failure stay in the database.
+ * <p/>
+ * The column referencing the parent row through the {@link RecursiveModelRelationship} is inserted as NULL, and set
+ * after all rows are inserted, so the rows of the model may come in any order.
+ */
+public class BulkImporter<TModel extends DatabaseModel> {
+  public static final int DEFAULT_TRANSACTION_SIZE = 1000;
+
+  private final ModelGraph<TModel> mGraph;
+  private final int mTransactionSize;
+  private final ImmutableMap<TModel, RecursiveModelRelationship<? extends TModel>> mRecursiveRelationships;
+
+  private BulkImporter(ModelGraph<TModel> graph, int transactionSize) {
+    Preconditions.checkArgument(transactionSize > 0, "Transaction size has to be positive");
+
+    mGraph = graph;
+    mTransactionSize = transactionSize;
+
+    final Map<TModel, RecursiveModelRelationship<? extends TModel>> recursiveRelationships = Maps.newLinkedHashMap();
+    graph.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        Preconditions.checkArgument(!recursiveRelationships.containsKey(relationship.mModel), "Model %s has more than one recursive relationship", relationship.mModel);
+        recursiveRelationships.put(relationship.mModel, relationship);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      }
+    });
+    mRecursiveRelationships = ImmutableMap.copyOf(recursiveRelationships);
+  }
+
+  public static <TModel extends DatabaseModel> BulkImporter<TModel> from(ModelGraph<TModel> graph) {
+    return new BulkImporter<TModel>(graph, DEFAULT_TRANSACTION_SIZE);
+  }
+
+  public BulkImporter<TModel> withTransactionSize(int transactionSize) {
+    return new BulkImporter<TModel>(mGraph, transactionSize);
+  }
+
+  public <TRow> void run(RowParser<TModel, TRow> parser, ExecutorService executor, ImportWriter<TModel, TRow> writer) throws InterruptedException, ExecutionException {
+    ImmutableList<ImmutableSet<TModel>> tiers = mGraph.getDependencyTiers();
+
+    Map<TModel, Future<List<TRow>>> parsedRows = Maps.newHashMap();
+    Transaction transaction = new Transaction(writer);
+    try {
+      if (!tiers.isEmpty()) {
+        parse(tiers.get(0), parser, executor, parsedRows);
+      }
+
+      DeferredUpdates deferredUpdates = new DeferredUpdates();
+      for (int i = 0; i != tiers.size(); ++i) {
+        if (i + 1 != tiers.size()) {
+          parse(tiers.get(i + 1), parser, executor, parsedRows);
+        }
+
+        for (TModel model : tiers.get(i)) {
+          List<TRow> rows = parsedRows.remove(model).get();
+          insert(model, rows, writer, transaction, deferredUpdates);
+        }
+      }
+
+      deferredUpdates.apply(writer, transaction);
+      transaction.commit();
+    } finally {
+      transaction.abort();
+      for (Future<List<TRow>> future : parsedRows.values()) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private <TRow> void parse(ImmutableSet<TModel> tier, final RowParser<TModel, TRow> parser, ExecutorService executor, Map<TModel, Future<List<TRow>>> parsedRows) {
+    for (final TModel model : tier) {
+      parsedRows.put(model, executor.submit(new Callable<List<TRow>>() {
+        @Override
+        public List<TRow> call() throws Exception {
+          return parser.parse(model);
+        }
+      }));
+    }
+  }
+
+  private <TRow> void insert(TModel model, List<TRow> rows, ImportWriter<TModel, TRow> writer, Transaction transaction, DeferredUpdates deferredUpdates) {
+    RecursiveModelRelationship<? extends TModel> recursiveRelationship = mRecursiveRelationships.get(model);
+    String deferredColumn = recursiveRelationship != null ? recursiveRelationship.mGroupByColumn : null;
+
+    for (TRow row : rows) {
+      transaction.beforeWrite();
+      long rowId = writer.insert(model, row, deferredColumn);
+
+      if (deferredColumn != null && !writer.isNull(row, deferredColumn)) {
+        String idColumn = recursiveRelationship.mModelIdColumn;
+        long id = writer.isNull(row, idColumn) ? rowId : writer.getLong(row, idColumn);
+        deferredUpdates.add(recursiveRelationship, id, writer.getLong(row, deferredColumn));
+      }
+    }
+  }
+
+  private class Transaction {
+    private final ImportWriter<TModel, ?> mWriter;
+    private boolean mInTransaction;
+    private int mWrites;
+
+    Transaction(ImportWriter<TModel, ?> writer) {
+      mWriter = writer;
+    }
+
+    void beforeWrite() {
+      if (mInTransaction && mWrites == mTransactionSize) {
+        commit();
+      }
+      if (!mInTransaction) {
+        mWriter.beginTransaction();
+        mInTransaction = true;
+        mWrites = 0;
+      }
+      mWrites++;
+    }
+
+    void commit() {
+      if (mInTransaction) {
+        mWriter.setTransactionSuccessful();
+        mWriter.endTransaction();
+        mInTransaction = false;
+      }
+    }
+
+    void abort() {
+      if (mInTransaction) {
+        mWriter.endTransaction();
+        mInTransaction = false;
+      }
+    }
+  }
+
+  private class DeferredUpdates {
+    private final Map<RecursiveModelRelationship<? extends TModel>, LongPairs> mUpdates = Maps.newLinkedHashMap();
+
+    void add(RecursiveModelRelationship<? extends TModel> relationship, long id, long parentId) {
+      LongPairs updates = mUpdates.get(relationship);
+      if (updates == null) {
+        updates = new LongPairs();
+        mUpdates.put(relationship, updates);
+      }
+      updates.add(id, parentId);
+    }
+
+    void apply(ImportWriter<TModel, ?> writer, Transaction transaction) {
+      for (Map.Entry<RecursiveModelRelationship<? extends TModel>, LongPairs> entry : mUpdates.entrySet()) {
+        RecursiveModelRelationship<? extends TModel> relationship = entry.getKey();
+        LongPairs updates = entry.getValue();
+        for (int i = 0; i != updates.mSize; ++i) {
+          transaction.beforeWrite();
+          writer.update(relationship.mModel, relationship.mModelIdColumn, updates.mValues[2 * i], relationship.mGroupByColumn, updates.mValues[2 * i + 1]);
+        }
+      }
+    }
+  }
+
+  private static class LongPairs {
+    private long[] mValues = new long[32];
+    private int mSize;
+
+    void add(long first, long second) {
+      if (2 * mSize + 2 > mValues.length) {
+        mValues = Arrays.copyOf(mValues, mValues.length * 2);
+      }
+      mValues[2 * mSize] = first;
+      mValues[2 * mSize + 1] = second;
+      mSize++;
+    }
+  }
+}
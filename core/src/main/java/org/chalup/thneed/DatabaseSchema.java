@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.chalup.thneed.models.DatabaseModel;
+import org.chalup.thneed.models.SchemaModel;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * All DDL statements needed to create the database of the {@link ModelGraph}: the tables in the order of the
+ * {@link ModelGraph#getDependencyTiers()} and by name within each tier, the foreign key indexes from the
+ * {@link IndexAdvisor} and, if requested, the closure tables with their triggers for the
+ * {@link RecursiveModelRelationship}s. Duplicated statements are executed once.
+ */
+public class DatabaseSchema<TModel extends DatabaseModel & SchemaModel> {
+  private final ModelGraph<TModel> mGraph;
+  private final boolean mWithClosureTables;
+  private final ImmutableList<String> mStatements;
+
+  private DatabaseSchema(ModelGraph<TModel> graph, boolean withClosureTables) {
+    mGraph = graph;
+    mWithClosureTables = withClosureTables;
+
+    final Set<String> statements = Sets.newLinkedHashSet();
+    for (ImmutableSet<TModel> tier : graph.getDependencyTiers()) {
+      for (TModel model : byTableName(tier)) {
+        statements.add(model.getCreateTableStatement());
+      }
+    }
+
+    statements.addAll(IndexAdvisor.from(graph).getCreateStatements());
+
+    if (withClosureTables) {
+      graph.accept(new RelationshipVisitor<TModel>() {
+        @Override
+        public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+          statements.addAll(HierarchyQueries.<TModel>of(relationship).getClosureTableStatements());
+        }
+
+        @Override
+        public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        }
+      });
+    }
+
+    mStatements = ImmutableList.copyOf(statements);
+  }
+
+  public static <TModel extends DatabaseModel & SchemaModel> DatabaseSchema<TModel> from(ModelGraph<TModel> graph) {
+    return new DatabaseSchema<TModel>(graph, false);
+  }
+
+  public DatabaseSchema<TModel> withClosureTables() {
+    return mWithClosureTables ? this : new DatabaseSchema<TModel>(mGraph, true);
+  }
+
+  public ImmutableList<String> getStatements() {
+    return mStatements;
+  }
+
+  /**
+   * Orders the models of the dependency tier by the table names, so the generated statements are reproducible.
+   */
+  static <TModel extends DatabaseModel> List<TModel> byTableName(Set<TModel> tier) {
+    List<TModel> models = Lists.newArrayList(tier);
+    Collections.sort(models, new Comparator<TModel>() {
+      @Override
+      public int compare(TModel lhs, TModel rhs) {
+        return lhs.getTableName().compareTo(rhs.getTableName());
+      }
+    });
+    return models;
+  }
+}
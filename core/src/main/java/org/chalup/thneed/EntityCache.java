@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.collect.LongClockCache;
+
+import java.util.Map;
+
+/**
+ * Identity map of the entities keyed by the value of their model's id column, see
+ * {@link ModelGraph#getIdColumn(Object)}. Every model has its own region of separately configured capacity, so the
+ * frequently loaded small models are not evicted by the large ones. The regions are {@link LongClockCache}s guarded
+ * by their own locks.
+ * <p/>
+ * The writes have to evict the modified entities, either explicitly or by writing through the
+ * {@link #evictingOn(ImportWriter)} decorator.
+ */
+public class EntityCache<TModel, V> {
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private final ModelGraph<TModel> mGraph;
+  private final ImmutableMap<TModel, LongClockCache<V>> mRegions;
+
+  private EntityCache(ModelGraph<TModel> graph, ImmutableMap<TModel, LongClockCache<V>> regions) {
+    mGraph = graph;
+    mRegions = regions;
+  }
+
+  public static <TModel, V> Builder<TModel, V> builder(ModelGraph<TModel> graph) {
+    return new Builder<TModel, V>(graph);
+  }
+
+  public String getIdColumn(TModel model) {
+    return mGraph.getIdColumn(model);
+  }
+
+  public V get(TModel model, long id) {
+    LongClockCache<V> region = region(model);
+    synchronized (region) {
+      return region.get(id);
+    }
+  }
+
+  public void put(TModel model, long id, V entity) {
+    LongClockCache<V> region = region(model);
+    synchronized (region) {
+      region.put(id, entity);
+    }
+  }
+
+  public void evict(TModel model, long id) {
+    LongClockCache<V> region = region(model);
+    synchronized (region) {
+      region.remove(id);
+    }
+  }
+
+  public void evictAll(TModel model) {
+    LongClockCache<V> region = region(model);
+    synchronized (region) {
+      region.clear();
+    }
+  }
+
+  public void evictAll() {
+    for (TModel model : mRegions.keySet()) {
+      evictAll(model);
+    }
+  }
+
+  public int size(TModel model) {
+    LongClockCache<V> region = region(model);
+    synchronized (region) {
+      return region.size();
+    }
+  }
+
+  /**
+   * Returns the {@link ImportWriter} evicting the inserted and updated rows from this cache.
+   */
+  public <TRow> ImportWriter<TModel, TRow> evictingOn(final ImportWriter<TModel, TRow> writer) {
+    return new ImportWriter<TModel, TRow>() {
+      @Override
+      public void beginTransaction() {
+        writer.beginTransaction();
+      }
+
+      @Override
+      public void setTransactionSuccessful() {
+        writer.setTransactionSuccessful();
+      }
+
+      @Override
+      public void endTransaction() {
+        writer.endTransaction();
+      }
+
+      @Override
+      public long insert(TModel model, TRow row, String deferredColumn) {
+        long rowId = writer.insert(model, row, deferredColumn);
+
+        String idColumn = getIdColumn(model);
+        if (idColumn != null && !writer.isNull(row, idColumn)) {
+          evict(model, writer.getLong(row, idColumn));
+        } else {
+          evict(model, rowId);
+        }
+        return rowId;
+      }
+
+      @Override
+      public void update(TModel model, String idColumn, long id, String column, long value) {
+        writer.update(model, idColumn, id, column, value);
+
+        if (idColumn.equals(getIdColumn(model))) {
+          evict(model, id);
+        } else {
+          evictAll(model);
+        }
+      }
+
+      @Override
+      public boolean isNull(TRow row, String column) {
+        return writer.isNull(row, column);
+      }
+
+      @Override
+      public long getLong(TRow row, String column) {
+        return writer.getLong(row, column);
+      }
+    };
+  }
+
+  private LongClockCache<V> region(TModel model) {
+    LongClockCache<V> region = mRegions.get(model);
+    Preconditions.checkArgument(region != null, "Model %s is not a part of the graph", model);
+    return region;
+  }
+
+  public static class Builder<TModel, V> {
+    private final ModelGraph<TModel> mGraph;
+    private final Map<TModel, Integer> mCapacities = Maps.newHashMap();
+    private int mDefaultCapacity = DEFAULT_CAPACITY;
+
+    private Builder(ModelGraph<TModel> graph) {
+      mGraph = graph;
+    }
+
+    public Builder<TModel, V> defaultCapacity(int capacity) {
+      Preconditions.checkArgument(capacity > 0, "Capacity has to be positive");
+      mDefaultCapacity = capacity;
+      return this;
+    }
+
+    public Builder<TModel, V> capacity(TModel model, int capacity) {
+      Preconditions.checkArgument(capacity > 0, "Capacity has to be positive");
+      Preconditions.checkArgument(mGraph.getModels().contains(model), "Model %s is not a part of the graph", model);
+      mCapacities.put(model, capacity);
+      return this;
+    }
+
+    public EntityCache<TModel, V> build() {
+      ImmutableMap.Builder<TModel, LongClockCache<V>> regions = ImmutableMap.builder();
+      for (TModel model : mGraph.getModels()) {
+        Integer capacity = mCapacities.get(model);
+        regions.put(model, new LongClockCache<V>(capacity != null ? capacity : mDefaultCapacity));
+      }
+      return new EntityCache<TModel, V>(mGraph, regions.build());
+    }
+  }
+}
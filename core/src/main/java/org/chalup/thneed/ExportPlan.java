@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Queries exporting the root model row with its subgraph: the rows referencing it, transitively, and the rows
+ * referenced by any exported row, e.g. the deal with its tasks, taggings and their tags, and the deal's contact, but
+ * not the other deals of that contact. The contact exports the tasks and taggings of its deals as well as its own.
+ * Recursive relationships are not followed, and neither is the relationship through which the model was reached.
+ * <p/>
+ * The ids of the rows reached by following a relationship to a model are selected once into a temporary table by the
+ * {@link #getSetupStatements()}, from the temporary tables of the models it was reached from, so the statements grow
+ * linearly with the number of relationships no matter how many paths lead to the model. A relationship leading back to
+ * the model which is still being resolved closes the dependency cycle and is not followed. The temporary tables exist
+ * only in the connection which created them, so the whole export should be done in a single transaction.
+ * <p/>
+ * Every model is exported by a single step, which selects the rows reached by any of the relationships, so every row is
+ * exported once. The rows are read in pages ordered by the model's id column, so the export needs constant memory and
+ * doesn't depend on the row offsets. The page query takes two parameters: the root row id and the last id of the
+ * previous page.
+ */
+public class ExportPlan<TModel extends DatabaseModel> {
+  private static final String TEMPORARY_TABLE_PREFIX = "thneed_export_";
+
+  private final ImmutableList<String> mSetupStatements;
+  private final ImmutableList<String> mCleanupStatements;
+  private final ImmutableList<Step<TModel>> mSteps;
+
+  private ExportPlan(ModelGraph<TModel> graph, TModel root) {
+    Preconditions.checkArgument(graph.getModels().contains(root), "Model %s is not a part of the graph", root);
+
+    Reach<TModel> rootReach = new Reach<TModel>(root, true, null);
+    Map<Reach<TModel>, List<Arrival<TModel>>> arrivals = arrivals(graph, rootReach);
+
+    String rootSelection = qualified(root, idColumn(graph, root)) + " = ?1";
+    Resolver<TModel> resolver = new Resolver<TModel>(graph, rootReach, rootSelection, arrivals);
+    for (Reach<TModel> reach : arrivals.keySet()) {
+      resolver.resolve(reach);
+    }
+
+    ImmutableList.Builder<Step<TModel>> steps = ImmutableList.builder();
+    steps.add(new Step<TModel>(root, idColumn(graph, root), rootSelection));
+
+    Map<TModel, List<Reach<TModel>>> reachesByModel = Maps.newLinkedHashMap();
+    for (Reach<TModel> reach : arrivals.keySet()) {
+      if (reach != rootReach && resolver.mSelections.containsKey(reach)) {
+        List<Reach<TModel>> modelReaches = reachesByModel.get(reach.mModel);
+        if (modelReaches == null) {
+          modelReaches = Lists.newArrayList();
+          reachesByModel.put(reach.mModel, modelReaches);
+        }
+        modelReaches.add(reach);
+      }
+    }
+
+    for (Map.Entry<TModel, List<Reach<TModel>>> modelReaches : reachesByModel.entrySet()) {
+      List<String> selections = Lists.newArrayList();
+      for (Reach<TModel> reach : modelReaches.getValue()) {
+        selections.addAll(resolver.mSelections.get(reach));
+      }
+
+      TModel model = modelReaches.getKey();
+      steps.add(new Step<TModel>(model, idColumn(graph, model), selections.size() == 1
+          ? selections.get(0)
+          : "(" + Joiner.on(" OR ").join(selections) + ")"));
+    }
+
+    mSteps = steps.build();
+    mSetupStatements = resolver.getSetupStatements();
+    mCleanupStatements = resolver.getCleanupStatements();
+  }
+
+  public static <TModel extends DatabaseModel> ExportPlan<TModel> from(ModelGraph<TModel> graph, TModel root) {
+    return new ExportPlan<TModel>(graph, root);
+  }
+
+  /**
+   * Returns the statements creating the temporary tables used by the steps. Only the first statement takes the root
+   * row id parameter {@code ?1}.
+   */
+  public ImmutableList<String> getSetupStatements() {
+    return mSetupStatements;
+  }
+
+  /**
+   * Returns the statements dropping the temporary tables created by the {@link #getSetupStatements()}.
+   */
+  public ImmutableList<String> getCleanupStatements() {
+    return mCleanupStatements;
+  }
+
+  /**
+   * Returns the steps in the order of the discovery of their models, starting with the root model.
+   */
+  public ImmutableList<Step<TModel>> getSteps() {
+    return mSteps;
+  }
+
+  public static final class Step<TModel extends DatabaseModel> {
+    public final TModel mModel;
+    public final String mIdColumn;
+
+    /**
+     * Condition selecting the exported rows, with the root row id parameter {@code ?1}, reading the temporary tables
+     * created by the {@link ExportPlan#getSetupStatements()}.
+     */
+    public final String mSelection;
+
+    Step(TModel model, String idColumn, String selection) {
+      mModel = model;
+      mIdColumn = idColumn;
+      mSelection = selection;
+    }
+
+    /**
+     * Returns the query of the page of rows with the id greater than the second parameter.
+     */
+    public String getPageQuery(int pageSize) {
+      Preconditions.checkArgument(pageSize > 0, "Page size has to be positive");
+
+      String idColumn = qualified(mModel, mIdColumn);
+      return "SELECT * FROM " + mModel.getTableName() +
+          " WHERE " + mSelection + " AND " + idColumn + " > ?2" +
+          " ORDER BY " + idColumn +
+          " LIMIT " + pageSize;
+    }
+
+    @Override
+    public String toString() {
+      return "Step{" + mModel + "}";
+    }
+  }
+
+  /**
+   * Relationships followed to every reach of the exported models, in the breadth first order.
+   */
+  private static <TModel extends DatabaseModel> Map<Reach<TModel>, List<Arrival<TModel>>> arrivals(ModelGraph<TModel> graph, Reach<TModel> rootReach) {
+    PrefetchPlanner<TModel> planner = PrefetchPlanner.from(graph);
+
+    Map<Reach<TModel>, List<Arrival<TModel>>> arrivals = Maps.newLinkedHashMap();
+    Deque<Reach<TModel>> queue = new ArrayDeque<Reach<TModel>>();
+    arrivals.put(rootReach, Lists.<Arrival<TModel>>newArrayList());
+    queue.add(rootReach);
+
+    while (!queue.isEmpty()) {
+      Reach<TModel> reach = queue.poll();
+      TModel model = reach.mModel;
+
+      for (Relationship<? extends TModel> relationship : Iterables.concat(graph.getOutgoingRelationships(model), graph.getIncomingRelationships(model))) {
+        // e.g. the tasks of the deal don't lead to the leads
+        if (relationship == reach.mRelationship) {
+          continue;
+        }
+
+        OwnershipVisitor<TModel> ownership = new OwnershipVisitor<TModel>(model);
+        relationship.accept(ownership);
+
+        List<TModel> next = Lists.newArrayList(ownership.mParents);
+        if (reach.mDescending) {
+          next.addAll(ownership.mChildren);
+        }
+        for (TModel nextModel : next) {
+          if (nextModel.equals(rootReach.mModel)) {
+            continue;
+          }
+
+          Reach<TModel> nextReach = new Reach<TModel>(nextModel, ownership.mChildren.contains(nextModel), relationship);
+          List<Arrival<TModel>> nextArrivals = arrivals.get(nextReach);
+          if (nextArrivals == null) {
+            nextArrivals = Lists.newArrayList();
+            arrivals.put(nextReach, nextArrivals);
+            queue.add(nextReach);
+          }
+          nextArrivals.add(new Arrival<TModel>(reach, planner.hop(model, nextModel, relationship)));
+        }
+      }
+    }
+    return arrivals;
+  }
+
+  /**
+   * Builds the selections of the reaches after the selections of the reaches they are reached from. The ids of the
+   * rows of every reach used by the other selections are selected into a temporary table.
+   */
+  private static class Resolver<TModel extends DatabaseModel> {
+    private final ModelGraph<TModel> mGraph;
+    private final Map<Reach<TModel>, List<Arrival<TModel>>> mArrivals;
+    private final Set<Reach<TModel>> mResolving = Sets.newHashSet();
+    private final Set<Reach<TModel>> mResolved = Sets.newLinkedHashSet();
+    private final Map<Reach<TModel>, String> mTables = Maps.newHashMap();
+
+    /**
+     * Conditions selecting the rows of each reach, one per followed relationship. Reaches without any followed
+     * relationship are not exported.
+     */
+    final Map<Reach<TModel>, List<String>> mSelections = Maps.newHashMap();
+
+    Resolver(ModelGraph<TModel> graph, Reach<TModel> rootReach, String rootSelection, Map<Reach<TModel>, List<Arrival<TModel>>> arrivals) {
+      mGraph = graph;
+      mArrivals = arrivals;
+      mResolved.add(rootReach);
+      mSelections.put(rootReach, ImmutableList.of(rootSelection));
+    }
+
+    void resolve(Reach<TModel> reach) {
+      if (mResolved.contains(reach)) {
+        return;
+      }
+      mResolving.add(reach);
+
+      List<String> selections = Lists.newArrayList();
+      for (Arrival<TModel> arrival : mArrivals.get(reach)) {
+        Reach<TModel> source = arrival.mSource;
+        if (mResolving.contains(source)) {
+          continue;
+        }
+        resolve(source);
+        if (mSelections.containsKey(source)) {
+          selections.add(selection(arrival.mHop, table(source)));
+        }
+      }
+
+      mResolving.remove(reach);
+      mResolved.add(reach);
+      if (!selections.isEmpty()) {
+        mSelections.put(reach, selections);
+      }
+    }
+
+    private String table(Reach<TModel> reach) {
+      String table = mTables.get(reach);
+      if (table == null) {
+        table = TEMPORARY_TABLE_PREFIX + mTables.size();
+        mTables.put(reach, table);
+      }
+      return table;
+    }
+
+    ImmutableList<String> getSetupStatements() {
+      ImmutableList.Builder<String> statements = ImmutableList.builder();
+      for (Reach<TModel> reach : mResolved) {
+        String table = mTables.get(reach);
+        if (table != null) {
+          statements.add("CREATE TEMP TABLE " + table + " AS SELECT " + qualified(reach.mModel, idColumn(mGraph, reach.mModel)) +
+              " FROM " + reach.mModel.getTableName() +
+              " WHERE " + Joiner.on(" OR ").join(mSelections.get(reach)));
+        }
+      }
+      return statements.build();
+    }
+
+    ImmutableList<String> getCleanupStatements() {
+      ImmutableList.Builder<String> statements = ImmutableList.builder();
+      for (Reach<TModel> reach : mResolved) {
+        String table = mTables.get(reach);
+        if (table != null) {
+          statements.add("DROP TABLE IF EXISTS temp." + table);
+        }
+      }
+      return statements.build();
+    }
+
+    private String selection(PrefetchPlan.Hop<TModel> hop, String sourceTable) {
+      StringBuilder selection = new StringBuilder();
+      if (hop.mTargetTypeColumn != null) {
+        selection.append(qualified(hop.mTargetModel, hop.mTargetTypeColumn)).append(" = ").append(literal(hop.mTypeName)).append(" AND ");
+      }
+      selection.append(qualified(hop.mTargetModel, hop.mTargetColumn)).append(" IN ");
+
+      String sourceIdColumn = idColumn(mGraph, hop.mSourceModel);
+      if (hop.mSourceTypeColumn == null && hop.mSourceColumn.equals(sourceIdColumn)) {
+        return selection.append(sourceTable).toString();
+      }
+
+      selection.append("(SELECT ").append(qualified(hop.mSourceModel, hop.mSourceColumn))
+          .append(" FROM ").append(hop.mSourceModel.getTableName())
+          .append(" WHERE ");
+      if (hop.mSourceTypeColumn != null) {
+        selection.append(qualified(hop.mSourceModel, hop.mSourceTypeColumn)).append(" = ").append(literal(hop.mTypeName)).append(" AND ");
+      }
+      return selection.append(qualified(hop.mSourceModel, sourceIdColumn)).append(" IN ").append(sourceTable).append(")").toString();
+    }
+  }
+
+  /**
+   * Model reached by following the relationship, either descending from the root row through the models referencing
+   * it, or through the references of the exported rows.
+   */
+  private static final class Reach<TModel> {
+    final TModel mModel;
+    final boolean mDescending;
+    final Relationship<? extends TModel> mRelationship;
+
+    Reach(TModel model, boolean descending, Relationship<? extends TModel> relationship) {
+      mModel = model;
+      mDescending = descending;
+      mRelationship = relationship;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Reach<?> that = (Reach<?>) o;
+
+      return mDescending == that.mDescending &&
+          mModel.equals(that.mModel) &&
+          Objects.equal(mRelationship, that.mRelationship);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mModel, mDescending, mRelationship);
+    }
+  }
+
+  private static final class Arrival<TModel extends DatabaseModel> {
+    final Reach<TModel> mSource;
+    final PrefetchPlan.Hop<TModel> mHop;
+
+    Arrival(Reach<TModel> source, PrefetchPlan.Hop<TModel> hop) {
+      mSource = source;
+      mHop = hop;
+    }
+  }
+
+  private static <TModel extends DatabaseModel> String idColumn(ModelGraph<TModel> graph, TModel model) {
+    String idColumn = graph.getIdColumn(model);
+    Preconditions.checkArgument(idColumn != null, "Id column of %s is unknown", model);
+    return idColumn;
+  }
+
+  private static String qualified(DatabaseModel model, String column) {
+    return model.getTableName() + "." + column;
+  }
+
+  private static String literal(String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+
+  /**
+   * Collects the models referenced by the model and the models referencing it.
+   */
+  private static class OwnershipVisitor<TModel> implements RelationshipVisitor<TModel> {
+    private final TModel mModel;
+    final Set<TModel> mParents = Sets.newLinkedHashSet();
+    final Set<TModel> mChildren = Sets.newLinkedHashSet();
+
+    OwnershipVisitor(TModel model) {
+      mModel = model;
+    }
+
+    private void add(TModel child, TModel parent) {
+      if (child.equals(parent)) {
+        return;
+      }
+      if (child.equals(mModel)) {
+        mParents.add(parent);
+      } else if (parent.equals(mModel)) {
+        mChildren.add(child);
+      }
+    }
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      add(relationship.mModel, relationship.mReferencedModel);
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      add(relationship.mLinkedModel, relationship.mModel);
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      // sides of the many-to-many relationship are followed separately
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      for (TModel polymorphicModel : relationship.mPolymorphicModels.values()) {
+        add(relationship.mModel, polymorphicModel);
+      }
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+/**
+ * SQL for reading the trees defined by the {@link RecursiveModelRelationship} with a single query.
+ * <p/>
+ * The subtree and ancestors queries use {@code WITH RECURSIVE}, which requires SQLite 3.8.3 (Android 5.0). For older
+ * SQLite versions the closure table, which stores every ancestor-descendant pair with the distance between them, can be
+ * maintained by the triggers and queried with the plain indexed joins. All queries take the id of the row as their
+ * only argument and expect the hierarchy to be acyclic.
+ */
+public class HierarchyQueries<TModel extends DatabaseModel> {
+  private final String mTable;
+  private final String mIdColumn;
+  private final String mParentColumn;
+  private final String mClosureTable;
+
+  private HierarchyQueries(RecursiveModelRelationship<? extends TModel> relationship) {
+    mTable = relationship.mModel.getTableName();
+    mIdColumn = relationship.mModelIdColumn;
+    mParentColumn = relationship.mGroupByColumn;
+    mClosureTable = mTable + "_closure";
+  }
+
+  public static <TModel extends DatabaseModel> HierarchyQueries<TModel> of(RecursiveModelRelationship<? extends TModel> relationship) {
+    return new HierarchyQueries<TModel>(relationship);
+  }
+
+  /**
+   * Selects the row and all its descendants, ordered by the depth.
+   */
+  public String getSubtreeQuery() {
+    return "WITH RECURSIVE subtree(id, depth) AS (" +
+        "SELECT " + mIdColumn + ", 0 FROM " + mTable + " WHERE " + mIdColumn + " = ?" +
+        " UNION ALL " +
+        "SELECT " + mTable + "." + mIdColumn + ", subtree.depth + 1 FROM " + mTable +
+        " JOIN subtree ON " + mTable + "." + mParentColumn + " = subtree.id" +
+        ") " +
+        "SELECT " + mTable + ".* FROM " + mTable +
+        " JOIN subtree ON " + mTable + "." + mIdColumn + " = subtree.id" +
+        " ORDER BY subtree.depth";
+  }
+
+  /**
+   * Selects all ancestors of the row, starting with its parent.
+   */
+  public String getAncestorsQuery() {
+    return "WITH RECURSIVE ancestors(id, depth) AS (" +
+        "SELECT " + mParentColumn + ", 1 FROM " + mTable + " WHERE " + mIdColumn + " = ?" +
+        " UNION ALL " +
+        "SELECT " + mTable + "." + mParentColumn + ", ancestors.depth + 1 FROM " + mTable +
+        " JOIN ancestors ON " + mTable + "." + mIdColumn + " = ancestors.id" +
+        ") " +
+        "SELECT " + mTable + ".* FROM " + mTable +
+        " JOIN ancestors ON " + mTable + "." + mIdColumn + " = ancestors.id" +
+        " ORDER BY ancestors.depth";
+  }
+
+  public String getClosureTableName() {
+    return mClosureTable;
+  }
+
+  /**
+   * Creates the closure table, its index and the triggers keeping it up to date when the rows are inserted, deleted
+   * or moved to another parent.
+   */
+  public ImmutableList<String> getClosureTableStatements() {
+    return ImmutableList.<String>builder()
+        .add("CREATE TABLE " + mClosureTable + " (" +
+            "ancestor_id INTEGER NOT NULL, " +
+            "descendant_id INTEGER NOT NULL, " +
+            "depth INTEGER NOT NULL, " +
+            "PRIMARY KEY (ancestor_id, descendant_id))")
+        .add("CREATE INDEX " + mClosureTable + "_descendant ON " + mClosureTable + " (descendant_id, depth)")
+        .addAll(getClosureTriggerStatements())
+        .build();
+  }
+
+  /**
+   * Creates only the triggers maintaining the closure table, e.g. after the model's table was rebuilt, which drops
+   * the triggers defined on it.
+   */
+  public ImmutableList<String> getClosureTriggerStatements() {
+    String pathsThroughOld = " WHERE descendant_id IN (SELECT descendant_id FROM " + mClosureTable + " WHERE ancestor_id = OLD." + mIdColumn + ")" +
+        " AND ancestor_id IN (SELECT ancestor_id FROM " + mClosureTable + " WHERE descendant_id = OLD." + mIdColumn;
+
+    return ImmutableList.of(
+        "CREATE TRIGGER " + mClosureTable + "_insert AFTER INSERT ON " + mTable + " BEGIN " +
+            "INSERT INTO " + mClosureTable + " (ancestor_id, descendant_id, depth) VALUES (NEW." + mIdColumn + ", NEW." + mIdColumn + ", 0); " +
+            "INSERT INTO " + mClosureTable + " (ancestor_id, descendant_id, depth) " +
+            "SELECT ancestor_id, NEW." + mIdColumn + ", depth + 1 FROM " + mClosureTable + " WHERE descendant_id = NEW." + mParentColumn + "; " +
+            "END",
+
+        "CREATE TRIGGER " + mClosureTable + "_move AFTER UPDATE OF " + mParentColumn + " ON " + mTable +
+            " WHEN OLD." + mParentColumn + " IS NOT NEW." + mParentColumn + " BEGIN " +
+            "DELETE FROM " + mClosureTable + pathsThroughOld + " AND ancestor_id != OLD." + mIdColumn + "); " +
+            "INSERT INTO " + mClosureTable + " (ancestor_id, descendant_id, depth) " +
+            "SELECT ancestors.ancestor_id, descendants.descendant_id, ancestors.depth + descendants.depth + 1 " +
+            "FROM " + mClosureTable + " ancestors, " + mClosureTable + " descendants " +
+            "WHERE ancestors.descendant_id = NEW." + mParentColumn + " AND descendants.ancestor_id = NEW." + mIdColumn + "; " +
+            "END",
+
+        "CREATE TRIGGER " + mClosureTable + "_delete AFTER DELETE ON " + mTable + " BEGIN " +
+            "DELETE FROM " + mClosureTable + pathsThroughOld + "); " +
+            "END"
+    );
+  }
+
+  /**
+   * Drops the triggers and the closure table.
+   */
+  public ImmutableList<String> getClosureTableDropStatements() {
+    return ImmutableList.of(
+        "DROP TRIGGER IF EXISTS " + mClosureTable + "_insert",
+        "DROP TRIGGER IF EXISTS " + mClosureTable + "_move",
+        "DROP TRIGGER IF EXISTS " + mClosureTable + "_delete",
+        "DROP TABLE IF EXISTS " + mClosureTable
+    );
+  }
+
+  /**
+   * Fills the closure table with the rows existing before the triggers were created. Uses {@code WITH RECURSIVE}.
+   */
+  public String getClosureTablePopulateStatement() {
+    return "WITH RECURSIVE paths(ancestor_id, descendant_id, depth) AS (" +
+        "SELECT " + mIdColumn + ", " + mIdColumn + ", 0 FROM " + mTable +
+        " UNION ALL " +
+        "SELECT paths.ancestor_id, " + mTable + "." + mIdColumn + ", paths.depth + 1 FROM " + mTable +
+        " JOIN paths ON " + mTable + "." + mParentColumn + " = paths.descendant_id" +
+        ") " +
+        "INSERT OR IGNORE INTO " + mClosureTable + " (ancestor_id, descendant_id, depth) " +
+        "SELECT ancestor_id, descendant_id, depth FROM paths";
+  }
+
+  /**
+   * Selects the row and all its descendants using the closure table, ordered by the depth.
+   */
+  public String getClosureSubtreeQuery() {
+    return "SELECT " + mTable + ".* FROM " + mClosureTable +
+        " JOIN " + mTable + " ON " + mTable + "." + mIdColumn + " = " + mClosureTable + ".descendant_id" +
+        " WHERE " + mClosureTable + ".ancestor_id = ?" +
+        " ORDER BY " + mClosureTable + ".depth";
+  }
+
+  /**
+   * Selects all ancestors of the row using the closure table, starting with its parent.
+   */
+  public String getClosureAncestorsQuery() {
+    return "SELECT " + mTable + ".* FROM " + mClosureTable +
+        " JOIN " + mTable + " ON " + mTable + "." + mIdColumn + " = " + mClosureTable + ".ancestor_id" +
+        " WHERE " + mClosureTable + ".descendant_id = ? AND " + mClosureTable + ".depth > 0" +
+        " ORDER BY " + mClosureTable + ".depth";
+  }
+}
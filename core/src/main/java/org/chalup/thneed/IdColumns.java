@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Id columns of the models which differ from the default id column, as declared by the relationships: the referenced
+ * model's id column of one-to-many and polymorphic relationships, and the model's own id column of one-to-one and
+ * recursive relationships. The first declaration wins.
+ */
+final class IdColumns<TModel> implements RelationshipVisitor<TModel> {
+  private final String mDefaultIdColumn;
+  private final Map<TModel, String> mIdColumns = Maps.newHashMap();
+
+  private IdColumns(String defaultIdColumn) {
+    mDefaultIdColumn = defaultIdColumn;
+  }
+
+  static <TModel> ImmutableMap<TModel, String> of(ModelGraph<TModel> graph, String defaultIdColumn) {
+    IdColumns<TModel> idColumns = new IdColumns<TModel>(defaultIdColumn);
+    graph.accept(idColumns);
+    return ImmutableMap.copyOf(idColumns.mIdColumns);
+  }
+
+  private void add(TModel model, String idColumn) {
+    if (!Objects.equal(idColumn, mDefaultIdColumn) && !mIdColumns.containsKey(model)) {
+      mIdColumns.put(model, idColumn);
+    }
+  }
+
+  @Override
+  public void visit(OneToManyRelationship<? extends TModel> relationship) {
+    add(relationship.mReferencedModel, relationship.mReferencedModelIdColumn);
+  }
+
+  @Override
+  public void visit(OneToOneRelationship<? extends TModel> relationship) {
+    add(relationship.mModel, relationship.mParentModelIdColumn);
+  }
+
+  @Override
+  public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    add(relationship.mModel, relationship.mModelIdColumn);
+  }
+
+  @Override
+  public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+    // sides of the many-to-many relationship are visited separately
+  }
+
+  @Override
+  public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+    for (TModel model : relationship.mPolymorphicModels.values()) {
+      add(model, relationship.mPolymorphicModelIdColumn);
+    }
+  }
+}
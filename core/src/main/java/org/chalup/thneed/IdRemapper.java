@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.collect.LongLongHashMap;
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Rewrites the remote ids in the referencing columns of the imported rows to the local ids of the referenced rows.
+ * The remote to local id mappings of every model are kept in {@link LongLongHashMap}s, so the rows streamed after
+ * their parents can be resolved in memory with {@link #getLocalId(Object, long, long)}. The rows streamed before their
+ * parents are fixed afterwards by {@link #remap(RemapWriter)}: the pending references are copied to the temporary
+ * table and every referencing column is rewritten with a single {@code UPDATE} joined with it, instead of the update
+ * per row.
+ * <p>
+ * Only the references registered with {@link #reference(Object, long, String, long)} are rewritten, and each of them
+ * only once, after its row is mapped; the local and remote ids may overlap, so the columns are never matched by their
+ * values. Not thread safe.
+ */
+public class IdRemapper<TModel extends DatabaseModel> {
+  static final String ID_TABLE = "thneed_ids";
+
+  private final ModelGraph<TModel> mGraph;
+  private final ImmutableListMultimap<TModel, Reference<TModel>> mReferences;
+  private final Map<TModel, LongLongHashMap> mLocalIds = Maps.newHashMap();
+
+  private IdRemapper(ModelGraph<TModel> graph) {
+    mGraph = graph;
+
+    final ImmutableListMultimap.Builder<TModel, Reference<TModel>> references = ImmutableListMultimap.builder();
+    graph.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        add(new Reference<TModel>(relationship.mModel, relationship.mLinkedByColumn, relationship.mReferencedModel, null, null));
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        add(new Reference<TModel>(relationship.mLinkedModel, relationship.mLinkedByColumn, relationship.mModel, null, null));
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        add(new Reference<TModel>(relationship.mModel, relationship.mGroupByColumn, relationship.mModel, null, null));
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        // both sides of the join model are visited as separate relationships
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        for (Entry<String, ? extends TModel> entry : relationship.mPolymorphicModels.entrySet()) {
+          add(new Reference<TModel>(relationship.mModel, relationship.mIdColumnName, entry.getValue(), relationship.mTypeColumnName, entry.getKey()));
+        }
+      }
+
+      private void add(Reference<TModel> reference) {
+        references.put(reference.mModel, reference);
+      }
+    });
+
+    mReferences = references.build();
+  }
+
+  public static <TModel extends DatabaseModel> IdRemapper<TModel> from(ModelGraph<TModel> graph) {
+    return new IdRemapper<TModel>(graph);
+  }
+
+  /**
+   * Records the local id of the imported row identified by the remote id.
+   */
+  public void map(TModel model, long remoteId, long localId) {
+    checkModel(model);
+
+    LongLongHashMap localIds = mLocalIds.get(model);
+    if (localIds == null) {
+      localIds = new LongLongHashMap();
+      mLocalIds.put(model, localIds);
+    }
+    localIds.put(remoteId, localId);
+  }
+
+  /**
+   * Records that the referencing column of the imported row still holds the remote id of the referenced row, so the
+   * {@link #remap(RemapWriter)} rewrites it. The columns resolved in memory shouldn't be recorded.
+   */
+  public void reference(TModel model, long localId, String column, long remoteId) {
+    checkModel(model);
+
+    boolean found = false;
+    for (Reference<TModel> reference : mReferences.get(model)) {
+      if (reference.mColumn.equals(column)) {
+        reference.mPending.add(localId, remoteId);
+        found = true;
+      }
+    }
+    Preconditions.checkArgument(found, "Column %s of %s doesn't reference any model", column, model);
+  }
+
+  /**
+   * Returns the local id of the row identified by the remote id, or the default id if the row wasn't mapped.
+   */
+  public long getLocalId(TModel model, long remoteId, long defaultId) {
+    LongLongHashMap localIds = mLocalIds.get(model);
+    return localIds != null ? localIds.get(remoteId, defaultId) : defaultId;
+  }
+
+  public void clear() {
+    mLocalIds.clear();
+    for (Reference<TModel> reference : mReferences.values()) {
+      reference.mPending.clear();
+    }
+  }
+
+  /**
+   * Rewrites the pending references to the mapped rows in a single transaction, with one {@code UPDATE} per
+   * relationship. The references to the rows which weren't mapped yet stay pending, so the method can be called again
+   * after importing more rows.
+   */
+  public void remap(RemapWriter writer) {
+    writer.beginTransaction();
+    try {
+      writer.execute("DROP TABLE IF EXISTS temp." + ID_TABLE);
+      writer.execute("CREATE TEMP TABLE " + ID_TABLE + " (row_id INTEGER PRIMARY KEY, local_id INTEGER NOT NULL)");
+
+      String insert = "INSERT OR REPLACE INTO " + ID_TABLE + " (row_id, local_id) VALUES (?, ?)";
+      for (Reference<TModel> reference : mReferences.values()) {
+        LongLongHashMap localIds = mLocalIds.get(reference.mReferencedModel);
+        if (localIds == null) {
+          continue;
+        }
+
+        PendingReferences pending = reference.mPending;
+        boolean resolved = false;
+        for (int i = 0; i != pending.mCount; ++i) {
+          long remoteId = pending.mValues[2 * i + 1];
+          if (localIds.containsKey(remoteId)) {
+            writer.execute(insert, pending.mValues[2 * i], localIds.get(remoteId, 0));
+            resolved = true;
+          }
+        }
+
+        if (resolved) {
+          String idColumn = mGraph.getIdColumn(reference.mModel);
+          writer.execute(reference.getUpdateStatement(idColumn != null ? idColumn : "rowid"));
+          writer.execute("DELETE FROM " + ID_TABLE);
+        }
+      }
+
+      writer.execute("DROP TABLE temp." + ID_TABLE);
+      writer.setTransactionSuccessful();
+    } finally {
+      writer.endTransaction();
+    }
+
+    for (Reference<TModel> reference : mReferences.values()) {
+      LongLongHashMap localIds = mLocalIds.get(reference.mReferencedModel);
+      if (localIds != null) {
+        reference.mPending.removeResolved(localIds);
+      }
+    }
+  }
+
+  /**
+   * Wraps the writer, so the rows inserted through it are recorded with the remote id read from the remote id column,
+   * if it's not null, and their referencing columns are recorded as pending references. The local id is read from the
+   * id column of the model, or is the row id returned by the insert. The referencing columns of the inserted rows have
+   * to hold the remote ids.
+   */
+  public <TRow> ImportWriter<TModel, TRow> recordingOn(final ImportWriter<TModel, TRow> writer, final String remoteIdColumn) {
+    Preconditions.checkNotNull(remoteIdColumn);
+
+    return new ImportWriter<TModel, TRow>() {
+      @Override
+      public void beginTransaction() {
+        writer.beginTransaction();
+      }
+
+      @Override
+      public void setTransactionSuccessful() {
+        writer.setTransactionSuccessful();
+      }
+
+      @Override
+      public void endTransaction() {
+        writer.endTransaction();
+      }
+
+      @Override
+      public long insert(TModel model, TRow row, String deferredColumn) {
+        long rowId = writer.insert(model, row, deferredColumn);
+
+        String idColumn = mGraph.getIdColumn(model);
+        long localId = idColumn != null && !writer.isNull(row, idColumn) ? writer.getLong(row, idColumn) : rowId;
+        if (!writer.isNull(row, remoteIdColumn)) {
+          map(model, writer.getLong(row, remoteIdColumn), localId);
+        }
+
+        String previousColumn = null;
+        for (Reference<TModel> reference : mReferences.get(model)) {
+          // the polymorphic relationship adds the reference per type, all with the same column
+          if (!reference.mColumn.equals(previousColumn) && !writer.isNull(row, reference.mColumn)) {
+            reference(model, localId, reference.mColumn, writer.getLong(row, reference.mColumn));
+          }
+          previousColumn = reference.mColumn;
+        }
+        return rowId;
+      }
+
+      @Override
+      public void update(TModel model, String idColumn, long id, String column, long value) {
+        writer.update(model, idColumn, id, column, value);
+      }
+
+      @Override
+      public boolean isNull(TRow row, String column) {
+        return writer.isNull(row, column);
+      }
+
+      @Override
+      public long getLong(TRow row, String column) {
+        return writer.getLong(row, column);
+      }
+    };
+  }
+
+  private void checkModel(TModel model) {
+    Preconditions.checkArgument(mGraph.getModels().contains(model), "Model %s is not a part of the graph", model);
+  }
+
+  /**
+   * Referencing column of the model and the referenced model, with the type column and type name of the polymorphic
+   * relationship, and the references of the imported rows which weren't rewritten yet.
+   */
+  private static final class Reference<TModel extends DatabaseModel> {
+    final TModel mModel;
+    final String mColumn;
+    final TModel mReferencedModel;
+    final String mTypeColumn;
+    final String mTypeName;
+    final PendingReferences mPending = new PendingReferences();
+
+    Reference(TModel model, String column, TModel referencedModel, String typeColumn, String typeName) {
+      mModel = model;
+      mColumn = column;
+      mReferencedModel = referencedModel;
+      mTypeColumn = typeColumn;
+      mTypeName = typeName;
+    }
+
+    String getUpdateStatement(String idColumn) {
+      String table = mModel.getTableName();
+
+      StringBuilder builder = new StringBuilder()
+          .append("UPDATE ").append(table)
+          .append(" SET ").append(mColumn).append(" = (SELECT local_id FROM ").append(ID_TABLE)
+          .append(" WHERE row_id = ").append(table).append(".").append(idColumn).append(")")
+          .append(" WHERE ").append(idColumn).append(" IN (SELECT row_id FROM ").append(ID_TABLE).append(")");
+      if (mTypeColumn != null) {
+        builder.append(" AND ").append(mTypeColumn).append(" = '").append(mTypeName.replace("'", "''")).append("'");
+      }
+      return builder.toString();
+    }
+  }
+
+  /**
+   * Local ids of the imported rows paired with the remote ids they reference.
+   */
+  private static final class PendingReferences {
+    long[] mValues = new long[32];
+    int mCount;
+
+    void add(long localId, long remoteId) {
+      if (2 * mCount == mValues.length) {
+        mValues = Arrays.copyOf(mValues, mValues.length * 2);
+      }
+      mValues[2 * mCount] = localId;
+      mValues[2 * mCount + 1] = remoteId;
+      mCount++;
+    }
+
+    void removeResolved(LongLongHashMap localIds) {
+      int count = 0;
+      for (int i = 0; i != mCount; ++i) {
+        if (!localIds.containsKey(mValues[2 * i + 1])) {
+          mValues[2 * count] = mValues[2 * i];
+          mValues[2 * count + 1] = mValues[2 * i + 1];
+          count++;
+        }
+      }
+      mCount = count;
+    }
+
+    void clear() {
+      mCount = 0;
+    }
+  }
+}
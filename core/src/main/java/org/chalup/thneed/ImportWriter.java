@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+/**
+ * Database access used by the {@link BulkImporter}. All methods are called on the single writer thread.
+ */
+public interface ImportWriter<TModel, TRow> {
+  void beginTransaction();
+
+  void setTransactionSuccessful();
+
+  void endTransaction();
+
+  /**
+   * Inserts the row into the model's table, with the deferred column, if not null, set to NULL. Returns the row id.
+   */
+  long insert(TModel model, TRow row, String deferredColumn);
+
+  /**
+   * Sets the column of the row identified by the id column value.
+   */
+  void update(TModel model, String idColumn, long id, String column, long value);
+
+  boolean isNull(TRow row, String column);
+
+  long getLong(TRow row, String column);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Advises the indexes for the foreign key columns of every relationship in the {@link ModelGraph}: the referencing
+ * columns of one-to-many, one-to-one and recursive relationships, the (type, id) pairs of polymorphic relationships,
+ * and the covering indexes in both directions for the join models of many-to-many relationships. The indexes covered
+ * by other advised indexes are skipped.
+ */
+public class IndexAdvisor<TModel extends DatabaseModel> {
+  private final ImmutableList<TableIndex> mIndexes;
+
+  private IndexAdvisor(ModelGraph<TModel> graph) {
+    final List<TableIndex> indexes = Lists.newArrayList();
+
+    graph.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        indexes.add(TableIndex.on(relationship.mModel.getTableName(), referencingColumns(relationship)));
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        indexes.add(TableIndex.on(relationship.mLinkedModel.getTableName(), referencingColumns(relationship)));
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        indexes.add(TableIndex.on(relationship.mModel.getTableName(), referencingColumns(relationship)));
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        List<String> leftColumns = referencingColumns(relationship.mLeftRelationship);
+        List<String> rightColumns = referencingColumns(relationship.mRightRelationship);
+
+        String table = relationship.mModel.getTableName();
+        indexes.add(TableIndex.on(table, concat(leftColumns, rightColumns)));
+        indexes.add(TableIndex.on(table, concat(rightColumns, leftColumns)));
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        indexes.add(TableIndex.on(relationship.mModel.getTableName(), referencingColumns(relationship)));
+      }
+    });
+
+    mIndexes = withoutCovered(indexes);
+  }
+
+  public static <TModel extends DatabaseModel> IndexAdvisor<TModel> from(ModelGraph<TModel> graph) {
+    return new IndexAdvisor<TModel>(graph);
+  }
+
+  public ImmutableList<TableIndex> getIndexes() {
+    return mIndexes;
+  }
+
+  public ImmutableList<String> getCreateStatements() {
+    ImmutableList.Builder<String> statements = ImmutableList.builder();
+    for (TableIndex index : mIndexes) {
+      statements.add(index.getCreateStatement());
+    }
+    return statements.build();
+  }
+
+  /**
+   * Compares the advised indexes with the existing ones.
+   */
+  public Report compare(Collection<TableIndex> existingIndexes) {
+    ImmutableList.Builder<TableIndex> missing = ImmutableList.builder();
+    for (TableIndex index : mIndexes) {
+      if (!isCovered(index, existingIndexes)) {
+        missing.add(index);
+      }
+    }
+
+    ImmutableList.Builder<TableIndex> redundant = ImmutableList.builder();
+    List<TableIndex> kept = Lists.newArrayList();
+    for (TableIndex index : existingIndexes) {
+      // unique indexes enforce the constraints, so they are never redundant
+      if (!index.mUnique && (isCoveredByOther(index, existingIndexes) || isCovered(index, kept))) {
+        redundant.add(index);
+      } else {
+        kept.add(index);
+      }
+    }
+
+    return new Report(missing.build(), redundant.build());
+  }
+
+  public static class Report {
+    /**
+     * Advised indexes not covered by any existing index.
+     */
+    public final ImmutableList<TableIndex> mMissing;
+
+    /**
+     * Existing indexes covered by other existing indexes.
+     */
+    public final ImmutableList<TableIndex> mRedundant;
+
+    private Report(ImmutableList<TableIndex> missing, ImmutableList<TableIndex> redundant) {
+      mMissing = missing;
+      mRedundant = redundant;
+    }
+  }
+
+  private static ImmutableList<TableIndex> withoutCovered(List<TableIndex> indexes) {
+    ImmutableList.Builder<TableIndex> result = ImmutableList.builder();
+    List<TableIndex> kept = Lists.newArrayList();
+    for (TableIndex index : indexes) {
+      if (!isCoveredByOther(index, indexes) && !isCovered(index, kept)) {
+        kept.add(index);
+        result.add(index);
+      }
+    }
+    return result.build();
+  }
+
+  private static boolean isCovered(TableIndex index, Collection<TableIndex> indexes) {
+    for (TableIndex other : indexes) {
+      if (other.covers(index)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the index is covered by a longer index from the collection.
+   */
+  private static boolean isCoveredByOther(TableIndex index, Collection<TableIndex> indexes) {
+    for (TableIndex other : indexes) {
+      if (other.mColumns.size() > index.mColumns.size() && other.covers(index)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static List<String> concat(List<String> first, List<String> second) {
+    List<String> columns = Lists.newArrayList(first);
+    for (String column : second) {
+      if (!columns.contains(column)) {
+        columns.add(column);
+      }
+    }
+    return columns;
+  }
+
+  private static <TModel> List<String> referencingColumns(Relationship<? extends TModel> relationship) {
+    final List<String> columns = Lists.newArrayList();
+    relationship.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        columns.add(relationship.mLinkedByColumn);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        columns.add(relationship.mLinkedByColumn);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        columns.add(relationship.mGroupByColumn);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        columns.add(relationship.mTypeColumnName);
+        columns.add(relationship.mIdColumnName);
+      }
+    });
+    return columns;
+  }
+}
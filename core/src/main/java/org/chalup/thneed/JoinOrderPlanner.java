@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Orders the tables of a multi-table query using the {@link ModelStatistics}. For each model as the driving table the
+ * planner greedily appends the model producing the smallest intermediate result, and picks the order with the lowest
+ * sum of the intermediate results sizes.
+ * <p/>
+ * The join selectivity is estimated as 1 / max(distinct values of the joined columns), the type condition of the
+ * polymorphic relationship divides it further by the number of distinct types. The tables without statistics are
+ * assumed to have {@link #DEFAULT_ROW_COUNT} rows, and the columns without statistics are assumed to be unique.
+ * <p/>
+ * Only the direct relationships are considered, so the join models of the many-to-many relationships have to be on
+ * the list, like on the paths returned by {@link ModelGraph#findJoinPath(Object, Object)}. The returned order can be
+ * passed to {@link TableJoiner#withFixedJoinOrder(ModelGraph)}, which joins every model with the nearest preceding
+ * related model, the same one the planner used for the estimates.
+ */
+public class JoinOrderPlanner<TModel extends DatabaseModel> {
+  public static final long DEFAULT_ROW_COUNT = 1000;
+
+  private final ModelGraph<TModel> mGraph;
+  private final ModelStatistics<TModel> mStatistics;
+
+  private JoinOrderPlanner(ModelGraph<TModel> graph, ModelStatistics<TModel> statistics) {
+    mGraph = graph;
+    mStatistics = statistics;
+  }
+
+  public static <TModel extends DatabaseModel> JoinOrderPlanner<TModel> from(ModelGraph<TModel> graph, ModelStatistics<TModel> statistics) {
+    return new JoinOrderPlanner<TModel>(graph, statistics);
+  }
+
+  public ImmutableList<TModel> plan(List<? extends TModel> models) {
+    Preconditions.checkArgument(!models.isEmpty(), "Cannot plan the join of empty list of models");
+    Preconditions.checkArgument(Sets.newHashSet(models).size() == models.size(), "Every model may be joined only once: %s", models);
+
+    List<TModel> bestOrder = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+
+    for (TModel drivingModel : models) {
+      List<TModel> order = Lists.newArrayListWithCapacity(models.size());
+      order.add(drivingModel);
+
+      List<TModel> remaining = Lists.newArrayList(models);
+      remaining.remove(drivingModel);
+
+      double size = rowCount(drivingModel);
+      double cost = size;
+      while (!remaining.isEmpty() && cost < bestCost) {
+        TModel next = null;
+        double nextSize = Double.POSITIVE_INFINITY;
+        for (TModel candidate : remaining) {
+          double selectivity = selectivity(order, candidate);
+          if (selectivity > 0 && size * rowCount(candidate) * selectivity < nextSize) {
+            next = candidate;
+            nextSize = size * rowCount(candidate) * selectivity;
+          }
+        }
+
+        if (next == null) {
+          break;
+        }
+
+        order.add(next);
+        remaining.remove(next);
+        size = nextSize;
+        cost += size;
+      }
+
+      if (remaining.isEmpty() && cost < bestCost) {
+        bestOrder = order;
+        bestCost = cost;
+      }
+    }
+
+    if (bestOrder == null) {
+      throw new IllegalArgumentException("Models " + models + " cannot be joined using direct relationships");
+    }
+    return ImmutableList.copyOf(bestOrder);
+  }
+
+  /**
+   * Estimated selectivity of joining the model with the nearest preceding related model, or 0 if there is no such
+   * model.
+   */
+  private double selectivity(List<TModel> joinedModels, TModel model) {
+    for (TModel joinedModel : Lists.reverse(joinedModels)) {
+      for (Relationship<? extends TModel> relationship : Iterables.concat(mGraph.getOutgoingRelationships(joinedModel), mGraph.getIncomingRelationships(joinedModel))) {
+        Selectivity selectivity = new Selectivity(joinedModel, model);
+        relationship.accept(selectivity);
+        if (selectivity.mSelectivity > 0) {
+          return selectivity.mSelectivity;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private double rowCount(TModel model) {
+    long rowCount = mStatistics.getRowCount(model);
+    return Math.max(1, rowCount != ModelStatistics.UNKNOWN ? rowCount : DEFAULT_ROW_COUNT);
+  }
+
+  private double distinctValues(TModel model, String column, double defaultValue) {
+    long distinctValues = mStatistics.getDistinctValues(model, column);
+    return Math.max(1, distinctValues != ModelStatistics.UNKNOWN ? distinctValues : defaultValue);
+  }
+
+  private double equalitySelectivity(TModel model, String column, TModel otherModel, String otherColumn) {
+    return 1.0 / Math.max(distinctValues(model, column, rowCount(model)), distinctValues(otherModel, otherColumn, rowCount(otherModel)));
+  }
+
+  private class Selectivity implements RelationshipVisitor<TModel> {
+    private final TModel mFirst;
+    private final TModel mSecond;
+    double mSelectivity;
+
+    Selectivity(TModel first, TModel second) {
+      mFirst = first;
+      mSecond = second;
+    }
+
+    private boolean links(TModel model, TModel otherModel) {
+      return (mFirst.equals(model) && mSecond.equals(otherModel)) || (mFirst.equals(otherModel) && mSecond.equals(model));
+    }
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      if (links(relationship.mModel, relationship.mReferencedModel)) {
+        mSelectivity = equalitySelectivity(relationship.mModel, relationship.mLinkedByColumn, relationship.mReferencedModel, relationship.mReferencedModelIdColumn);
+      }
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      if (links(relationship.mModel, relationship.mLinkedModel)) {
+        mSelectivity = equalitySelectivity(relationship.mLinkedModel, relationship.mLinkedByColumn, relationship.mModel, relationship.mParentModelIdColumn);
+      }
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      for (Entry<String, ? extends TModel> entry : relationship.mPolymorphicModels.entrySet()) {
+        TModel polymorphicModel = entry.getValue();
+        if (links(relationship.mModel, polymorphicModel)) {
+          double typeSelectivity = 1.0 / distinctValues(relationship.mModel, relationship.mTypeColumnName, relationship.mPolymorphicModels.size());
+          mSelectivity = typeSelectivity * equalitySelectivity(relationship.mModel, relationship.mIdColumnName, polymorphicModel, relationship.mPolymorphicModelIdColumn);
+          return;
+        }
+      }
+    }
+  }
+}
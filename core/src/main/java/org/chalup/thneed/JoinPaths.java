@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Ints;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cheapest paths for joining the tables of two models. Each one-to-many and one-to-one relationship costs 1,
+ * polymorphic relationship costs 2, because of the additional type condition. Many-to-many relationships are
+ * traversed through the join model, i.e. they cost as much as both their sides. Recursive relationships are ignored.
+ * <p/>
+ * The shortest paths tree of each source model is computed on the first query and kept as an array of predecessors.
+ */
+final class JoinPaths<TModel> {
+  private static final int DIRECT_JOIN_COST = 1;
+  private static final int POLYMORPHIC_JOIN_COST = 2;
+
+  private static final int NO_PREDECESSOR = -1;
+
+  private final ImmutableMap<TModel, Integer> mIds;
+  private final Object[] mModels;
+
+  private final int[][] mNeighbours;
+  private final int[][] mCosts;
+
+  private final AtomicReferenceArray<int[]> mPredecessors;
+
+  private JoinPaths(ImmutableMap<TModel, Integer> ids, Object[] models, int[][] neighbours, int[][] costs) {
+    mIds = ids;
+    mModels = models;
+    mNeighbours = neighbours;
+    mCosts = costs;
+    mPredecessors = new AtomicReferenceArray<int[]>(models.length);
+  }
+
+  static <TModel> JoinPaths<TModel> of(ModelGraph<TModel> graph) {
+    ImmutableMap.Builder<TModel, Integer> idsBuilder = ImmutableMap.builder();
+    Object[] models = new Object[graph.getModels().size()];
+    int id = 0;
+    for (TModel model : graph.getModels()) {
+      idsBuilder.put(model, id);
+      models[id++] = model;
+    }
+    ImmutableMap<TModel, Integer> ids = idsBuilder.build();
+
+    EdgesCollector<TModel> edges = new EdgesCollector<TModel>(ids);
+    graph.accept(edges);
+
+    int[][] neighbours = new int[models.length][];
+    int[][] costs = new int[models.length][];
+    for (int i = 0; i != models.length; ++i) {
+      neighbours[i] = Ints.toArray(edges.mNeighbours.get(i));
+      costs[i] = Ints.toArray(edges.mCosts.get(i));
+    }
+
+    return new JoinPaths<TModel>(ids, models, neighbours, costs);
+  }
+
+  /**
+   * Returns the models on the cheapest path, starting with the first model and ending with the second one, or an empty
+   * list if the models are not related.
+   */
+  @SuppressWarnings("unchecked")
+  ImmutableList<TModel> find(TModel from, TModel to) {
+    int source = idOf(from);
+    int target = idOf(to);
+
+    int[] predecessors = predecessors(source);
+    if (predecessors[target] == NO_PREDECESSOR) {
+      return ImmutableList.of();
+    }
+
+    int length = 1;
+    for (int model = target; model != source; model = predecessors[model]) {
+      length++;
+    }
+
+    Object[] path = new Object[length];
+    for (int model = target; length > 0; model = predecessors[model]) {
+      path[--length] = mModels[model];
+    }
+    return (ImmutableList<TModel>) ImmutableList.copyOf(path);
+  }
+
+  private int idOf(TModel model) {
+    Integer id = mIds.get(model);
+    Preconditions.checkArgument(id != null, "Model %s is not part of the graph", model);
+    return id;
+  }
+
+  private int[] predecessors(int source) {
+    int[] predecessors = mPredecessors.get(source);
+    if (predecessors == null) {
+      predecessors = shortestPathsTree(source);
+      mPredecessors.compareAndSet(source, null, predecessors);
+    }
+    return predecessors;
+  }
+
+  private int[] shortestPathsTree(int source) {
+    int[] distances = new int[mModels.length];
+    int[] predecessors = new int[mModels.length];
+    Arrays.fill(distances, Integer.MAX_VALUE);
+    Arrays.fill(predecessors, NO_PREDECESSOR);
+
+    distances[source] = 0;
+    predecessors[source] = source;
+
+    // entries encode the distance in the upper and the model id in the lower half
+    PriorityQueue<Long> queue = new PriorityQueue<Long>();
+    queue.add((long) source);
+    while (!queue.isEmpty()) {
+      long entry = queue.poll();
+      int model = (int) entry;
+      int distance = (int) (entry >>> 32);
+      if (distance > distances[model]) {
+        continue;
+      }
+
+      int[] neighbours = mNeighbours[model];
+      int[] costs = mCosts[model];
+      for (int i = 0; i != neighbours.length; ++i) {
+        int neighbour = neighbours[i];
+        int neighbourDistance = distance + costs[i];
+        if (neighbourDistance < distances[neighbour]) {
+          distances[neighbour] = neighbourDistance;
+          predecessors[neighbour] = model;
+          queue.add(((long) neighbourDistance << 32) | neighbour);
+        }
+      }
+    }
+
+    return predecessors;
+  }
+
+  private static class EdgesCollector<TModel> implements RelationshipVisitor<TModel> {
+    private final ImmutableMap<TModel, Integer> mIds;
+    final List<List<Integer>> mNeighbours;
+    final List<List<Integer>> mCosts;
+
+    EdgesCollector(ImmutableMap<TModel, Integer> ids) {
+      mIds = ids;
+      mNeighbours = new ArrayList<List<Integer>>(ids.size());
+      mCosts = new ArrayList<List<Integer>>(ids.size());
+      for (int i = 0; i != ids.size(); ++i) {
+        mNeighbours.add(new ArrayList<Integer>());
+        mCosts.add(new ArrayList<Integer>());
+      }
+    }
+
+    private void addEdge(TModel model, TModel otherModel, int cost) {
+      Integer id = mIds.get(model);
+      Integer otherId = mIds.get(otherModel);
+      if (id == null || otherId == null || id.equals(otherId)) {
+        return;
+      }
+
+      mNeighbours.get(id).add(otherId);
+      mCosts.get(id).add(cost);
+      mNeighbours.get(otherId).add(id);
+      mCosts.get(otherId).add(cost);
+    }
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      addEdge(relationship.mModel, relationship.mReferencedModel, DIRECT_JOIN_COST);
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      addEdge(relationship.mModel, relationship.mLinkedModel, DIRECT_JOIN_COST);
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      // sides of the many-to-many relationship are visited separately
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      for (TModel polymorphicModel : relationship.mPolymorphicModels.values()) {
+        addEdge(relationship.mModel, polymorphicModel, POLYMORPHIC_JOIN_COST);
+      }
+    }
+  }
+}
@@ -24,10 +24,14 @@ public class ManyToManyRelationship<TModel> implements Relationship<TModel> {
   public final Relationship<TModel> mLeftRelationship;
   public final Relationship<TModel> mRightRelationship;
 
+  private final int mHashCode;
+
   ManyToManyRelationship(TModel model, Relationship<TModel> leftRelationship, Relationship<TModel> rightRelationship) {
     mModel = model;
     mLeftRelationship = leftRelationship;
     mRightRelationship = rightRelationship;
+
+    mHashCode = Objects.hashCode(mModel, mLeftRelationship, mRightRelationship);
   }
 
   @Override
@@ -37,7 +41,7 @@ public class ManyToManyRelationship<TModel> implements Relationship<TModel> {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(mModel, mLeftRelationship, mRightRelationship);
+    return mHashCode;
   }
 
   @Override
@@ -45,7 +49,8 @@ public class ManyToManyRelationship<TModel> implements Relationship<TModel> {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
 
-    ManyToManyRelationship that = (ManyToManyRelationship) o;
+    ManyToManyRelationship<?> that = (ManyToManyRelationship<?>) o;
+    if (that.mHashCode != mHashCode) return false;
 
     return Objects.equal(that.mLeftRelationship, mLeftRelationship) &&
         Objects.equal(that.mRightRelationship, mRightRelationship) &&
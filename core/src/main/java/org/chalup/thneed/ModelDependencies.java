@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Models referenced by each model, i.e. the ones which rows have to exist before the rows of the referencing model
+ * can be created. Recursive relationships don't introduce any dependencies.
+ */
+final class ModelDependencies<TModel> implements RelationshipVisitor<TModel> {
+  private final ImmutableSetMultimap.Builder<TModel, TModel> mDependencies = ImmutableSetMultimap.builder();
+
+  private ModelDependencies() {
+  }
+
+  static <TModel> ImmutableSetMultimap<TModel, TModel> of(ModelGraph<TModel> graph) {
+    ModelDependencies<TModel> dependencies = new ModelDependencies<TModel>();
+    graph.accept(dependencies);
+    return dependencies.mDependencies.build();
+  }
+
+  /**
+   * Splits the strongly connected components of the dependency graph into tiers, where each component depends only
+   * on the components from the previous tiers. The models of a dependency cycle always end up in the same component,
+   * and the models depending on them in the later tiers.
+   */
+  static <TModel> ImmutableList<ImmutableList<ImmutableSet<TModel>>> componentTiers(ImmutableSet<TModel> models, SetMultimap<TModel, TModel> dependencies) {
+    List<ImmutableSet<TModel>> components = components(models, dependencies);
+
+    Map<TModel, Integer> componentTiers = Maps.newHashMap();
+    int tiersCount = 0;
+    for (ImmutableSet<TModel> component : components) {
+      int tier = 0;
+      for (TModel model : component) {
+        for (TModel dependency : dependencies.get(model)) {
+          Integer dependencyTier = componentTiers.get(dependency);
+          if (dependencyTier != null) {
+            tier = Math.max(tier, dependencyTier + 1);
+          }
+        }
+      }
+      for (TModel model : component) {
+        componentTiers.put(model, tier);
+      }
+      tiersCount = Math.max(tiersCount, tier + 1);
+    }
+
+    List<ImmutableList.Builder<ImmutableSet<TModel>>> tierBuilders = Lists.newArrayListWithCapacity(tiersCount);
+    for (int i = 0; i != tiersCount; ++i) {
+      tierBuilders.add(ImmutableList.<ImmutableSet<TModel>>builder());
+    }
+    Map<TModel, ImmutableSet<TModel>> componentOf = Maps.newHashMap();
+    for (ImmutableSet<TModel> component : components) {
+      for (TModel model : component) {
+        componentOf.put(model, component);
+      }
+    }
+    for (TModel model : models) {
+      ImmutableSet<TModel> component = componentOf.get(model);
+      if (component.iterator().next().equals(model)) {
+        tierBuilders.get(componentTiers.get(model)).add(component);
+      }
+    }
+
+    ImmutableList.Builder<ImmutableList<ImmutableSet<TModel>>> tiers = ImmutableList.builder();
+    for (ImmutableList.Builder<ImmutableSet<TModel>> tierBuilder : tierBuilders) {
+      tiers.add(tierBuilder.build());
+    }
+    return tiers.build();
+  }
+
+  /**
+   * Tarjan's algorithm with an explicit stack, so the long reference chains don't overflow the call stack. The
+   * components are returned in the order in which each one follows all the components it depends on, and the models
+   * inside each component keep the order of the given models set.
+   */
+  private static <TModel> List<ImmutableSet<TModel>> components(ImmutableSet<TModel> models, SetMultimap<TModel, TModel> dependencies) {
+    Map<TModel, Integer> indices = Maps.newHashMap();
+    Map<TModel, Integer> lowLinks = Maps.newHashMap();
+    Deque<TModel> stack = new ArrayDeque<TModel>();
+    Set<TModel> onStack = Sets.newHashSet();
+    List<ImmutableSet<TModel>> components = Lists.newArrayList();
+
+    Deque<TModel> path = new ArrayDeque<TModel>();
+    Deque<Iterator<TModel>> pendingDependencies = new ArrayDeque<Iterator<TModel>>();
+    for (TModel root : models) {
+      if (indices.containsKey(root)) {
+        continue;
+      }
+
+      indices.put(root, indices.size());
+      lowLinks.put(root, indices.get(root));
+      stack.push(root);
+      onStack.add(root);
+      path.push(root);
+      pendingDependencies.push(dependencies.get(root).iterator());
+
+      while (!path.isEmpty()) {
+        TModel model = path.peek();
+        Iterator<TModel> iterator = pendingDependencies.peek();
+        if (iterator.hasNext()) {
+          TModel dependency = iterator.next();
+          if (dependency.equals(model) || !models.contains(dependency)) {
+            continue;
+          }
+          if (!indices.containsKey(dependency)) {
+            indices.put(dependency, indices.size());
+            lowLinks.put(dependency, indices.get(dependency));
+            stack.push(dependency);
+            onStack.add(dependency);
+            path.push(dependency);
+            pendingDependencies.push(dependencies.get(dependency).iterator());
+          } else if (onStack.contains(dependency)) {
+            lowLinks.put(model, Math.min(lowLinks.get(model), indices.get(dependency)));
+          }
+          continue;
+        }
+
+        path.pop();
+        pendingDependencies.pop();
+        if (!path.isEmpty()) {
+          TModel parent = path.peek();
+          lowLinks.put(parent, Math.min(lowLinks.get(parent), lowLinks.get(model)));
+        }
+
+        if (lowLinks.get(model).equals(indices.get(model))) {
+          Set<TModel> members = Sets.newHashSet();
+          TModel member;
+          do {
+            member = stack.pop();
+            onStack.remove(member);
+            members.add(member);
+          } while (!member.equals(model));
+
+          components.add(members.size() == 1
+              ? ImmutableSet.of(model)
+              : ImmutableSet.copyOf(Sets.filter(models, Predicates.in(members))));
+        }
+      }
+    }
+
+    return components;
+  }
+
+  @Override
+  public void visit(OneToManyRelationship<? extends TModel> relationship) {
+    mDependencies.put(relationship.mModel, relationship.mReferencedModel);
+  }
+
+  @Override
+  public void visit(OneToOneRelationship<? extends TModel> relationship) {
+    mDependencies.put(relationship.mLinkedModel, relationship.mModel);
+  }
+
+  @Override
+  public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+  }
+
+  @Override
+  public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+    // sides of the many-to-many relationship are visited separately
+  }
+
+  @Override
+  public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+    mDependencies.putAll(relationship.mModel, relationship.mPolymorphicModels.values());
+  }
+}
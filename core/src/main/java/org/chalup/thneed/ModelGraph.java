@@ -16,20 +16,97 @@
 
 package org.chalup.thneed;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class ModelGraph<TModel> {
-  private final Collection<Relationship<? extends TModel>> mRelationships;
-  private final Collection<TModel> mModels;
+  private final ImmutableList<Relationship<? extends TModel>> mRelationships;
+  private final ImmutableSet<TModel> mModels;
+  private final String mDefaultIdColumn;
+
+  private final ImmutableListMultimap<TModel, Relationship<? extends TModel>> mOutgoingRelationships;
+  private final ImmutableListMultimap<TModel, Relationship<? extends TModel>> mIncomingRelationships;
+  private final ImmutableListMultimap<TModel, ManyToManyRelationship<? extends TModel>> mManyToManyRelationships;
+
+  private final Supplier<ImmutableSetMultimap<TModel, TModel>> mDependencies = Suppliers.memoize(new Supplier<ImmutableSetMultimap<TModel, TModel>>() {
+    @Override
+    public ImmutableSetMultimap<TModel, TModel> get() {
+      return ModelDependencies.of(ModelGraph.this);
+    }
+  });
+
+  private final Supplier<ImmutableList<ImmutableList<ImmutableSet<TModel>>>> mDependencyComponents = Suppliers.memoize(new Supplier<ImmutableList<ImmutableList<ImmutableSet<TModel>>>>() {
+    @Override
+    public ImmutableList<ImmutableList<ImmutableSet<TModel>>> get() {
+      return ModelDependencies.componentTiers(mModels, mDependencies.get());
+    }
+  });
+
+  private final Supplier<ImmutableList<ImmutableSet<TModel>>> mDependencyTiers = Suppliers.memoize(new Supplier<ImmutableList<ImmutableSet<TModel>>>() {
+    @Override
+    public ImmutableList<ImmutableSet<TModel>> get() {
+      ImmutableList.Builder<ImmutableSet<TModel>> tiers = ImmutableList.builder();
+      for (ImmutableList<ImmutableSet<TModel>> components : mDependencyComponents.get()) {
+        ImmutableSet.Builder<TModel> tier = ImmutableSet.builder();
+        for (ImmutableSet<TModel> component : components) {
+          tier.addAll(component);
+        }
+        tiers.add(tier.build());
+      }
+      return tiers.build();
+    }
+  });
+
+  private final Supplier<ModelReachability<TModel>> mReachability = Suppliers.memoize(new Supplier<ModelReachability<TModel>>() {
+    @Override
+    public ModelReachability<TModel> get() {
+      return ModelReachability.of(mModels, mDependencies.get(), mDependencyTiers.get());
+    }
+  });
+
+  private final Supplier<JoinPaths<TModel>> mJoinPaths = Suppliers.memoize(new Supplier<JoinPaths<TModel>>() {
+    @Override
+    public JoinPaths<TModel> get() {
+      return JoinPaths.of(ModelGraph.this);
+    }
+  });
+
+  private final Supplier<ImmutableMap<TModel, String>> mIdColumns = Suppliers.memoize(new Supplier<ImmutableMap<TModel, String>>() {
+    @Override
+    public ImmutableMap<TModel, String> get() {
+      return IdColumns.of(ModelGraph.this, mDefaultIdColumn);
+    }
+  });
+
+  private ModelGraph(String defaultIdColumn, Collection<TModel> models, Collection<? extends Relationship<? extends TModel>> relationships) {
+    mDefaultIdColumn = defaultIdColumn;
+    mModels = ImmutableSet.copyOf(models);
+    mRelationships = ImmutableList.copyOf(relationships);
 
-  private ModelGraph(Collection<TModel> models, Collection<Relationship<? extends TModel>> relationships) {
-    mModels = models;
-    mRelationships = relationships;
+    AdjacencyIndexer<TModel> indexer = new AdjacencyIndexer<TModel>();
+    accept(indexer);
+
+    mOutgoingRelationships = indexer.mOutgoing.build();
+    mIncomingRelationships = indexer.mIncoming.build();
+    mManyToManyRelationships = indexer.mManyToMany.build();
   }
 
   public void accept(RelationshipVisitor<? super TModel> visitor) {
@@ -44,10 +121,210 @@ public class ModelGraph<TModel> {
     }
   }
 
+  /**
+   * Visits the models tier by tier, so each model is visited after the models it references. Models from the same
+   * tier are visited concurrently on the given executor. Models forming a dependency cycle are visited one after
+   * another in a single task, before any model depending on them.
+   */
+  public void acceptParallel(final ModelVisitor<? super TModel> visitor, ExecutorService executor) throws InterruptedException {
+    for (ImmutableList<ImmutableSet<TModel>> tier : mDependencyComponents.get()) {
+      if (tier.size() == 1) {
+        accept(visitor, tier.get(0));
+        continue;
+      }
+
+      List<Callable<Void>> tasks = Lists.newArrayListWithCapacity(tier.size());
+      for (final ImmutableSet<TModel> component : tier) {
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            accept(visitor, component);
+            return null;
+          }
+        });
+      }
+
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+    }
+  }
+
+  private static <TModel> void accept(ModelVisitor<? super TModel> visitor, ImmutableSet<TModel> component) {
+    for (TModel model : component) {
+      visitor.visit(model);
+    }
+  }
+
+  /**
+   * Models split into tiers in which every model references only the models from the previous tiers, or the other
+   * models from its own dependency cycle.
+   */
+  public ImmutableList<ImmutableSet<TModel>> getDependencyTiers() {
+    return mDependencyTiers.get();
+  }
+
+  /**
+   * Transitive closure of the references between models, computed on the first call.
+   */
+  public ModelReachability<TModel> getReachability() {
+    return mReachability.get();
+  }
+
+  /**
+   * Returns the cheapest path of relationships between two models, which can be used with {@link TableJoiner}, or an
+   * empty list if the models are not related. Polymorphic relationships are more expensive than the plain foreign
+   * keys, and many-to-many relationships cost as much as both their sides. Paths from each model are computed once.
+   */
+  public ImmutableList<TModel> findJoinPath(TModel from, TModel to) {
+    return mJoinPaths.get().find(from, to);
+  }
+
+  /**
+   * Returns the id column of the model declared with {@code identified().by(...)} or in the relationships referencing
+   * the model, or the default id column. Returns null if neither is known, e.g. for the precompiled graph without the
+   * default id column.
+   */
+  public String getIdColumn(TModel model) {
+    String idColumn = mIdColumns.get().get(model);
+    return idColumn != null ? idColumn : mDefaultIdColumn;
+  }
+
+  public ImmutableSet<TModel> getModels() {
+    return mModels;
+  }
+
+  public ImmutableList<Relationship<? extends TModel>> getRelationships() {
+    return mRelationships;
+  }
+
+  /**
+   * Relationships declared for the given model, i.e. the ones built with {@code the(model)}.
+   */
+  public ImmutableList<Relationship<? extends TModel>> getOutgoingRelationships(TModel model) {
+    return mOutgoingRelationships.get(model);
+  }
+
+  /**
+   * Relationships declared for other models (or recursively for the model itself) which point at the given model.
+   */
+  public ImmutableList<Relationship<? extends TModel>> getIncomingRelationships(TModel model) {
+    return mIncomingRelationships.get(model);
+  }
+
+  /**
+   * Many-to-many relationships in which the given model is linked on either side of the join model.
+   */
+  public ImmutableList<ManyToManyRelationship<? extends TModel>> getManyToManyRelationships(TModel model) {
+    return mManyToManyRelationships.get(model);
+  }
+
+  private static class AdjacencyIndexer<TModel> implements RelationshipVisitor<TModel> {
+    private final ImmutableListMultimap.Builder<TModel, Relationship<? extends TModel>> mOutgoing = ImmutableListMultimap.builder();
+    private final ImmutableListMultimap.Builder<TModel, Relationship<? extends TModel>> mIncoming = ImmutableListMultimap.builder();
+    private final ImmutableListMultimap.Builder<TModel, ManyToManyRelationship<? extends TModel>> mManyToMany = ImmutableListMultimap.builder();
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      mOutgoing.put(relationship.mModel, relationship);
+      mIncoming.put(relationship.mReferencedModel, relationship);
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      mOutgoing.put(relationship.mModel, relationship);
+      mIncoming.put(relationship.mLinkedModel, relationship);
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+      mOutgoing.put(relationship.mModel, relationship);
+      mIncoming.put(relationship.mModel, relationship);
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      mOutgoing.put(relationship.mModel, relationship);
+
+      for (TModel linkedModel : getLinkedModels(relationship)) {
+        mManyToMany.put(linkedModel, relationship);
+      }
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      mOutgoing.put(relationship.mModel, relationship);
+
+      for (TModel polymorphicModel : relationship.mPolymorphicModels.values()) {
+        mIncoming.put(polymorphicModel, relationship);
+      }
+    }
+
+    private Set<TModel> getLinkedModels(ManyToManyRelationship<? extends TModel> relationship) {
+      final Set<TModel> linkedModels = Sets.newLinkedHashSet();
+
+      RelationshipVisitor<TModel> sideVisitor = new RelationshipVisitor<TModel>() {
+        @Override
+        public void visit(OneToManyRelationship<? extends TModel> relationship) {
+          linkedModels.add(relationship.mReferencedModel);
+        }
+
+        @Override
+        public void visit(OneToOneRelationship<? extends TModel> relationship) {
+          linkedModels.add(relationship.mLinkedModel);
+        }
+
+        @Override
+        public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+          linkedModels.add(relationship.mModel);
+        }
+
+        @Override
+        public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+          throw new IllegalStateException("Nested many-to-many relationships are not supported");
+        }
+
+        @Override
+        public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+          linkedModels.addAll(relationship.mPolymorphicModels.values());
+        }
+      };
+
+      relationship.mLeftRelationship.accept(sideVisitor);
+      relationship.mRightRelationship.accept(sideVisitor);
+
+      return linkedModels;
+    }
+  }
+
   public static <TModel> DefaultIdColumnSelector<TModel> of(Class<TModel> klass) {
     return new DefaultIdColumnSelector<TModel>();
   }
 
+  /**
+   * Creates the graph from already flattened models and relationships, i.e. the many-to-many relationships may be
+   * followed by both their sides. The relationships are interned and the duplicates collapse like in the graphs
+   * created by {@link Builder}. Used by the code generated from {@code org.chalup.thneed.annotations}.
+   */
+  public static <TModel> ModelGraph<TModel> precompiled(Collection<TModel> models, Collection<? extends Relationship<? extends TModel>> relationships) {
+    return precompiled(null, models, relationships);
+  }
+
+  public static <TModel> ModelGraph<TModel> precompiled(String defaultIdColumn, Collection<TModel> models, Collection<? extends Relationship<? extends TModel>> relationships) {
+    Builder<TModel> builder = new Builder<TModel>(defaultIdColumn);
+    for (TModel model : models) {
+      builder.with(model);
+    }
+    for (Relationship<? extends TModel> relationship : relationships) {
+      relationship.accept(builder.mRelationshipVisitor);
+    }
+    return builder.build();
+  }
+
   public interface ColumnSelector<TReturnType> {
     TReturnType by(String columnName);
   }
@@ -62,13 +339,33 @@ public class ModelGraph<TModel> {
     }
 
     protected final String mDefaultIdColumn;
-    private final Set<TModel> mModels = Sets.newHashSet();
-    private final Collection<Relationship<? extends TModel>> mRelationships = Lists.newArrayList();
+    private final Set<TModel> mModels = Sets.newLinkedHashSet();
+    private final Set<Relationship<? extends TModel>> mRelationships = Sets.newLinkedHashSet();
+
+    // Equal relationships declared in any graph share a single instance, so the
+    // relationship lookups in Thneeds and in the adjacency indexes usually end on
+    // the identity check, and the duplicates declared in one graph collapse.
+    private static final Interner<Relationship<?>> RELATIONSHIPS = Interners.newWeakInterner();
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Relationship<?>> T intern(T relationship) {
+      return (T) RELATIONSHIPS.intern(relationship);
+    }
+
+    private static <T> ManyToManyRelationship<T> internSides(ManyToManyRelationship<T> relationship) {
+      Relationship<T> leftRelationship = intern(relationship.mLeftRelationship);
+      Relationship<T> rightRelationship = intern(relationship.mRightRelationship);
+
+      if (leftRelationship == relationship.mLeftRelationship && rightRelationship == relationship.mRightRelationship) {
+        return relationship;
+      }
+      return new ManyToManyRelationship<T>(relationship.mModel, leftRelationship, rightRelationship);
+    }
 
     private final RelationshipVisitor<TModel> mRelationshipVisitor = new RelationshipVisitor<TModel>() {
       @Override
       public void visit(OneToManyRelationship<? extends TModel> relationship) {
-        mRelationships.add(relationship);
+        mRelationships.add(intern(relationship));
         mModels.add(relationship.mModel);
 
         mModels.add(relationship.mReferencedModel);
@@ -76,7 +373,7 @@ public class ModelGraph<TModel> {
 
       @Override
       public void visit(OneToOneRelationship<? extends TModel> relationship) {
-        mRelationships.add(relationship);
+        mRelationships.add(intern(relationship));
         mModels.add(relationship.mModel);
 
         mModels.add(relationship.mLinkedModel);
@@ -84,22 +381,24 @@ public class ModelGraph<TModel> {
 
       @Override
       public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
-        mRelationships.add(relationship);
+        mRelationships.add(intern(relationship));
         mModels.add(relationship.mModel);
       }
 
       @Override
       public void visit(ManyToManyRelationship<? extends TModel> relationship) {
-        mRelationships.add(relationship);
-        mModels.add(relationship.mModel);
+        ManyToManyRelationship<? extends TModel> canonical = intern(internSides(relationship));
+
+        mRelationships.add(canonical);
+        mModels.add(canonical.mModel);
 
-        relationship.mRightRelationship.accept(this);
-        relationship.mLeftRelationship.accept(this);
+        canonical.mRightRelationship.accept(this);
+        canonical.mLeftRelationship.accept(this);
       }
 
       @Override
       public void visit(PolymorphicRelationship<? extends TModel> relationship) {
-        mRelationships.add(relationship);
+        mRelationships.add(intern(relationship));
         mModels.add(relationship.mModel);
 
         mModels.addAll(relationship.mPolymorphicModels.values());
@@ -107,7 +406,7 @@ public class ModelGraph<TModel> {
     };
 
     public ModelGraph<TModel> build() {
-      return new ModelGraph<TModel>(mModels, mRelationships);
+      return new ModelGraph<TModel>(mDefaultIdColumn, mModels, mRelationships);
     }
 
     public Builder<TModel> with(TModel model) {
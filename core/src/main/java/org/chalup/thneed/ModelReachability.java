@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.SetMultimap;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Transitive closure of the model dependencies. Every model gets a dense integer id and the models reachable from it,
+ * both following and reversing the references, are stored as bitsets over those ids.
+ */
+public final class ModelReachability<TModel> {
+  private final ImmutableMap<TModel, Integer> mIds;
+  private final Object[] mModels;
+
+  private final BitSet[] mDependencies;
+  private final BitSet[] mDependents;
+
+  private final List<Set<TModel>> mDependenciesViews;
+  private final List<Set<TModel>> mDependentsViews;
+
+  @SuppressWarnings("unchecked")
+  private ModelReachability(ImmutableSet<TModel> models, SetMultimap<TModel, TModel> dependencies, ImmutableList<ImmutableSet<TModel>> tiers) {
+    int modelsCount = models.size();
+
+    ImmutableMap.Builder<TModel, Integer> idsBuilder = ImmutableMap.builder();
+    mModels = new Object[modelsCount];
+    int id = 0;
+    for (TModel model : models) {
+      idsBuilder.put(model, id);
+      mModels[id++] = model;
+    }
+    mIds = idsBuilder.build();
+
+    int[][] references = new int[modelsCount][];
+    int[][] referencedBy = new int[modelsCount][];
+    int[] referencedByCount = new int[modelsCount];
+    for (int i = 0; i != modelsCount; ++i) {
+      references[i] = toIds(dependencies.get((TModel) mModels[i]));
+      for (int dependency : references[i]) {
+        referencedByCount[dependency]++;
+      }
+    }
+    for (int i = 0; i != modelsCount; ++i) {
+      referencedBy[i] = new int[referencedByCount[i]];
+    }
+    for (int i = 0; i != modelsCount; ++i) {
+      for (int dependency : references[i]) {
+        referencedBy[dependency][--referencedByCount[dependency]] = i;
+      }
+    }
+
+    int[] order = new int[modelsCount];
+    int position = 0;
+    for (ImmutableSet<TModel> tier : tiers) {
+      for (TModel model : tier) {
+        order[position++] = mIds.get(model);
+      }
+    }
+    int[] reverseOrder = new int[modelsCount];
+    for (int i = 0; i != modelsCount; ++i) {
+      reverseOrder[i] = order[modelsCount - 1 - i];
+    }
+
+    mDependencies = closure(references, order);
+    mDependents = closure(referencedBy, reverseOrder);
+
+    mDependenciesViews = Lists.newArrayListWithCapacity(modelsCount);
+    mDependentsViews = Lists.newArrayListWithCapacity(modelsCount);
+    for (int i = 0; i != modelsCount; ++i) {
+      mDependenciesViews.add(new BitSetView(mDependencies[i]));
+      mDependentsViews.add(new BitSetView(mDependents[i]));
+    }
+  }
+
+  static <TModel> ModelReachability<TModel> of(ImmutableSet<TModel> models, SetMultimap<TModel, TModel> dependencies, ImmutableList<ImmutableSet<TModel>> tiers) {
+    return new ModelReachability<TModel>(models, dependencies, tiers);
+  }
+
+  private int[] toIds(Set<TModel> models) {
+    int[] ids = new int[models.size()];
+    int count = 0;
+    for (TModel model : models) {
+      Integer id = mIds.get(model);
+      if (id != null) {
+        ids[count++] = id;
+      }
+    }
+    return count == ids.length ? ids : Arrays.copyOf(ids, count);
+  }
+
+  /**
+   * Propagates the reachable sets along the edges. The order visits the targets of the edges first, so a single pass
+   * is enough for the acyclic graphs; the dependency cycles need a few more passes to settle.
+   */
+  private static BitSet[] closure(int[][] edges, int[] order) {
+    BitSet[] reachable = new BitSet[edges.length];
+    for (int i = 0; i != edges.length; ++i) {
+      reachable[i] = new BitSet(edges.length);
+      for (int target : edges[i]) {
+        reachable[i].set(target);
+      }
+    }
+
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int source : order) {
+        BitSet sourceReachable = reachable[source];
+        int cardinality = sourceReachable.cardinality();
+        for (int target : edges[source]) {
+          if (target != source) {
+            sourceReachable.or(reachable[target]);
+          }
+        }
+        changed |= sourceReachable.cardinality() != cardinality;
+      }
+    }
+
+    return reachable;
+  }
+
+  public int size() {
+    return mModels.length;
+  }
+
+  /**
+   * Dense id of the model, in the iteration order of the {@link ModelGraph#getModels()}.
+   */
+  public int idOf(TModel model) {
+    Integer id = mIds.get(model);
+    Preconditions.checkArgument(id != null, "Model %s is not part of the graph", model);
+    return id;
+  }
+
+  @SuppressWarnings("unchecked")
+  public TModel modelOf(int id) {
+    return (TModel) mModels[id];
+  }
+
+  /**
+   * Returns true if the model references the other model directly or through other models.
+   */
+  public boolean dependsOn(TModel model, TModel dependency) {
+    return dependsOn(idOf(model), idOf(dependency));
+  }
+
+  public boolean dependsOn(int modelId, int dependencyId) {
+    return mDependencies[modelId].get(dependencyId);
+  }
+
+  /**
+   * Models referenced by the given model, directly or transitively.
+   */
+  public Set<TModel> getDependencies(TModel model) {
+    return mDependenciesViews.get(idOf(model));
+  }
+
+  /**
+   * Models referencing the given model, directly or transitively, i.e. the models affected by the changes of the
+   * given model.
+   */
+  public Set<TModel> getDependents(TModel model) {
+    return mDependentsViews.get(idOf(model));
+  }
+
+  private class BitSetView extends AbstractSet<TModel> {
+    private final BitSet mBits;
+    private final int mSize;
+
+    BitSetView(BitSet bits) {
+      mBits = bits;
+      mSize = bits.cardinality();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      Integer id = mIds.get(o);
+      return id != null && mBits.get(id);
+    }
+
+    @Override
+    public Iterator<TModel> iterator() {
+      return new Iterator<TModel>() {
+        private int mNext = mBits.nextSetBit(0);
+
+        @Override
+        public boolean hasNext() {
+          return mNext >= 0;
+        }
+
+        @Override
+        public TModel next() {
+          if (mNext < 0) {
+            throw new NoSuchElementException();
+          }
+          TModel model = modelOf(mNext);
+          mNext = mBits.nextSetBit(mNext + 1);
+          return model;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return mSize;
+    }
+  }
+}
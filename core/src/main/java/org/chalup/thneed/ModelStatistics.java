@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
+
+import java.util.Map;
+
+/**
+ * Cardinality statistics of the models' tables: the number of rows and the number of distinct values in the columns.
+ * The statistics don't have to be complete, the missing values are reported as {@link #UNKNOWN}.
+ */
+public final class ModelStatistics<TModel> {
+  public static final long UNKNOWN = -1;
+
+  private final ImmutableMap<TModel, Long> mRowCounts;
+  private final ImmutableTable<TModel, String, Long> mDistinctValues;
+
+  private ModelStatistics(Builder<TModel> builder) {
+    mRowCounts = ImmutableMap.copyOf(builder.mRowCounts);
+    mDistinctValues = ImmutableTable.copyOf(builder.mDistinctValues);
+  }
+
+  public static <TModel> Builder<TModel> builder() {
+    return new Builder<TModel>();
+  }
+
+  public long getRowCount(TModel model) {
+    Long rowCount = mRowCounts.get(model);
+    return rowCount != null ? rowCount : UNKNOWN;
+  }
+
+  public long getDistinctValues(TModel model, String column) {
+    Long distinctValues = mDistinctValues.get(model, column);
+    return distinctValues != null ? distinctValues : UNKNOWN;
+  }
+
+  public static class Builder<TModel> {
+    private final Map<TModel, Long> mRowCounts = Maps.newLinkedHashMap();
+    private final Table<TModel, String, Long> mDistinctValues = HashBasedTable.create();
+
+    private Builder() {
+    }
+
+    public Builder<TModel> rowCount(TModel model, long rowCount) {
+      Preconditions.checkArgument(rowCount >= 0, "Negative row count %s for %s", rowCount, model);
+      mRowCounts.put(model, rowCount);
+      return this;
+    }
+
+    public Builder<TModel> distinctValues(TModel model, String column, long distinctValues) {
+      Preconditions.checkArgument(distinctValues >= 0, "Negative number of distinct values %s for %s.%s", distinctValues, model, column);
+      mDistinctValues.put(model, column, distinctValues);
+      return this;
+    }
+
+    public ModelStatistics<TModel> build() {
+      return new ModelStatistics<TModel>(this);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.io.BaseEncoding;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the rows as the newline delimited JSON objects, e.g. {@code {"table":"deals","row":{"_id":1,"name":"Big"}}}.
+ * The integral values are written as numbers, the blobs as base64 strings, and the non-finite doubles as nulls.
+ */
+public final class NdjsonWriter {
+  private final Writer mWriter;
+
+  public NdjsonWriter(Writer writer) {
+    mWriter = writer;
+  }
+
+  public void writeRow(String table, String[] columns, Object[] values) throws IOException {
+    mWriter.write("{\"table\":");
+    writeString(table);
+    mWriter.write(",\"row\":{");
+    for (int i = 0; i != columns.length; ++i) {
+      if (i != 0) {
+        mWriter.write(',');
+      }
+      writeString(columns[i]);
+      mWriter.write(':');
+      writeValue(values[i]);
+    }
+    mWriter.write("}}\n");
+  }
+
+  public void flush() throws IOException {
+    mWriter.flush();
+  }
+
+  private void writeValue(Object value) throws IOException {
+    if (value == null) {
+      mWriter.write("null");
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      mWriter.write(value.toString());
+    } else if (value instanceof Double || value instanceof Float) {
+      double doubleValue = ((Number) value).doubleValue();
+      mWriter.write(Double.isNaN(doubleValue) || Double.isInfinite(doubleValue) ? "null" : value.toString());
+    } else if (value instanceof Boolean) {
+      mWriter.write(value.toString());
+    } else if (value instanceof byte[]) {
+      writeString(BaseEncoding.base64().encode((byte[]) value));
+    } else {
+      writeString(value.toString());
+    }
+  }
+
+  private void writeString(String value) throws IOException {
+    mWriter.write('"');
+    int start = 0;
+    for (int i = 0; i != value.length(); ++i) {
+      char c = value.charAt(i);
+      String escaped = escape(c);
+      if (escaped != null) {
+        mWriter.write(value, start, i - start);
+        mWriter.write(escaped);
+        start = i + 1;
+      }
+    }
+    mWriter.write(value, start, value.length() - start);
+    mWriter.write('"');
+  }
+
+  private static String escape(char c) {
+    switch (c) {
+      case '"':
+        return "\\\"";
+      case '\\':
+        return "\\\\";
+      case '\n':
+        return "\\n";
+      case '\r':
+        return "\\r";
+      case '\t':
+        return "\\t";
+      case (char) 0x2028:
+        return "\\u2028";
+      case (char) 0x2029:
+        return "\\u2029";
+      default:
+        return c < 0x20 ? String.format("\\u%04x", (int) c) : null;
+    }
+  }
+}
@@ -25,11 +25,15 @@ public class OneToManyRelationship<TModel> implements Relationship<TModel> {
   public final String mReferencedModelIdColumn;
   public final String mLinkedByColumn;
 
+  private final int mHashCode;
+
   OneToManyRelationship(TModel model, TModel referencedModel, String referencedModelIdColumn, String linkedByColumn) {
     mModel = model;
     mReferencedModel = referencedModel;
     mReferencedModelIdColumn = referencedModelIdColumn;
     mLinkedByColumn = linkedByColumn;
+
+    mHashCode = Objects.hashCode(mModel, mReferencedModel, mReferencedModelIdColumn, mLinkedByColumn);
   }
 
   @Override
@@ -39,7 +43,7 @@ public class OneToManyRelationship<TModel> implements Relationship<TModel> {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(mModel, mReferencedModel, mReferencedModelIdColumn, mLinkedByColumn);
+    return mHashCode;
   }
 
   @Override
@@ -47,7 +51,8 @@ public class OneToManyRelationship<TModel> implements Relationship<TModel> {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
 
-    OneToManyRelationship that = (OneToManyRelationship) o;
+    OneToManyRelationship<?> that = (OneToManyRelationship<?>) o;
+    if (that.mHashCode != mHashCode) return false;
 
     return Objects.equal(that.mModel, mModel) &&
         Objects.equal(that.mReferencedModel, mReferencedModel) &&
@@ -25,11 +25,15 @@ public class OneToOneRelationship<TModel> implements Relationship<TModel> {
   public final String mParentModelIdColumn;
   public final String mLinkedByColumn;
 
+  private final int mHashCode;
+
   OneToOneRelationship(TModel model, TModel linkedModel, String parentModelIdColumn, String linkedByColumn) {
     mModel = model;
     mLinkedModel = linkedModel;
     mParentModelIdColumn = parentModelIdColumn;
     mLinkedByColumn = linkedByColumn;
+
+    mHashCode = Objects.hashCode(mModel, mLinkedModel, mParentModelIdColumn, mLinkedByColumn);
   }
 
   @Override
@@ -39,7 +43,7 @@ public class OneToOneRelationship<TModel> implements Relationship<TModel> {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(mModel, mLinkedModel, mParentModelIdColumn, mLinkedByColumn);
+    return mHashCode;
   }
 
   @Override
@@ -47,7 +51,8 @@ public class OneToOneRelationship<TModel> implements Relationship<TModel> {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
 
-    final OneToOneRelationship other = (OneToOneRelationship) o;
+    final OneToOneRelationship<?> other = (OneToOneRelationship<?>) o;
+    if (other.mHashCode != mHashCode) return false;
     return Objects.equal(this.mModel, other.mModel) &&
         Objects.equal(this.mLinkedModel, other.mLinkedModel) &&
         Objects.equal(this.mParentModelIdColumn, other.mParentModelIdColumn) &&
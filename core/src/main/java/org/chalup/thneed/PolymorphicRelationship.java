@@ -28,6 +28,8 @@ public class PolymorphicRelationship<TModel> implements Relationship<TModel> {
   public final String mTypeColumnName;
   public final String mIdColumnName;
 
+  private final int mHashCode;
+
   PolymorphicRelationship(TModel model, ImmutableList<? extends PolymorphicType<? extends TModel>> types, String polymorphicModelIdColumn, String typeColumnName, String idColumnName) {
     mModel = model;
     mPolymorphicModelIdColumn = polymorphicModelIdColumn;
@@ -39,6 +41,8 @@ public class PolymorphicRelationship<TModel> implements Relationship<TModel> {
       builder.put(type.getModelName(), (TModel) type.self());
     }
     mPolymorphicModels = builder.build();
+
+    mHashCode = Objects.hashCode(mModel, mPolymorphicModels, mPolymorphicModelIdColumn, mTypeColumnName, mIdColumnName);
   }
 
   @Override
@@ -48,7 +52,7 @@ public class PolymorphicRelationship<TModel> implements Relationship<TModel> {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(mModel, mPolymorphicModels, mPolymorphicModelIdColumn, mTypeColumnName, mIdColumnName);
+    return mHashCode;
   }
 
   @Override
@@ -56,7 +60,8 @@ public class PolymorphicRelationship<TModel> implements Relationship<TModel> {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
 
-    final PolymorphicRelationship other = (PolymorphicRelationship) o;
+    final PolymorphicRelationship<?> other = (PolymorphicRelationship<?>) o;
+    if (other.mHashCode != mHashCode) return false;
     return Objects.equal(this.mModel, other.mModel) &&
         Objects.equal(this.mPolymorphicModels, other.mPolymorphicModels) &&
         Objects.equal(this.mPolymorphicModelIdColumn, other.mPolymorphicModelIdColumn) &&
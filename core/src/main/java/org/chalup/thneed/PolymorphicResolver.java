@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.collect.LongObjectHashMap;
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Resolves the rows referenced through the {@link PolymorphicRelationship} in batches. The type names are mapped to
+ * dense type codes once, the referencing rows are partitioned by the type code, and the referenced rows of every type
+ * are fetched with the chunked {@code IN (...)} queries, so the number of queries depends on the number of types
+ * rather than the number of rows.
+ */
+public class PolymorphicResolver<TModel extends DatabaseModel> {
+  public static final int UNKNOWN_TYPE = -1;
+
+  private final PolymorphicRelationship<? extends TModel> mRelationship;
+  private final ImmutableMap<String, Integer> mTypeCodes;
+  private final String[] mTypeNames;
+  private final Object[] mModels;
+
+  private PolymorphicResolver(PolymorphicRelationship<? extends TModel> relationship) {
+    mRelationship = relationship;
+
+    int typesCount = relationship.mPolymorphicModels.size();
+    mTypeNames = new String[typesCount];
+    mModels = new Object[typesCount];
+
+    ImmutableMap.Builder<String, Integer> typeCodes = ImmutableMap.builder();
+    int code = 0;
+    for (Entry<String, ? extends TModel> entry : relationship.mPolymorphicModels.entrySet()) {
+      typeCodes.put(entry.getKey(), code);
+      mTypeNames[code] = entry.getKey();
+      mModels[code] = entry.getValue();
+      code++;
+    }
+    mTypeCodes = typeCodes.build();
+  }
+
+  public static <TModel extends DatabaseModel> PolymorphicResolver<TModel> of(PolymorphicRelationship<? extends TModel> relationship) {
+    return new PolymorphicResolver<TModel>(relationship);
+  }
+
+  public int getTypesCount() {
+    return mModels.length;
+  }
+
+  /**
+   * Returns the code of given type name or {@link #UNKNOWN_TYPE}.
+   */
+  public int getTypeCode(String typeName) {
+    Integer code = typeName != null ? mTypeCodes.get(typeName) : null;
+    return code != null ? code : UNKNOWN_TYPE;
+  }
+
+  @SuppressWarnings("unchecked")
+  public TModel getModel(int typeCode) {
+    return (TModel) mModels[typeCode];
+  }
+
+  /**
+   * Returns the queries selecting the rows of every referenced model, in the type codes order, which are referenced
+   * by the rows returned by the given query of the model declaring the relationship. The source query is embedded as
+   * a subquery, so each query needs the source query's selection args and no rows are transferred to the application
+   * just to read the keys.
+   */
+  public ImmutableList<String> getSemiJoinQueries(String sourceQuery) {
+    ImmutableList.Builder<String> queries = ImmutableList.builder();
+    for (int code = 0; code != mModels.length; ++code) {
+      String table = getModel(code).getTableName();
+      queries.add("SELECT * FROM " + table +
+          " WHERE " + table + "." + mRelationship.mPolymorphicModelIdColumn + " IN (" +
+          "SELECT " + mRelationship.mIdColumnName + " FROM (" + sourceQuery + ")" +
+          " WHERE " + mRelationship.mTypeColumnName + " = '" + mTypeNames[code].replace("'", "''") + "')");
+    }
+    return queries.build();
+  }
+
+  public <TRow> Resolution<TRow> resolve(List<TRow> rows, RowSource<TRow> source) {
+    return resolve(rows, source, PrefetchPlan.MAX_BOUND_PARAMETERS);
+  }
+
+  public <TRow> Resolution<TRow> resolve(List<TRow> rows, RowSource<TRow> source, int maxBoundParameters) {
+    int[] typeCodes = new int[rows.size()];
+    long[] ids = new long[rows.size()];
+
+    long[][] idsByType = new long[mModels.length][];
+    int[] idsByTypeCount = new int[mModels.length];
+    for (int code = 0; code != mModels.length; ++code) {
+      idsByType[code] = new long[16];
+    }
+
+    String previousTypeName = null;
+    int previousCode = UNKNOWN_TYPE;
+    for (int i = 0; i != typeCodes.length; ++i) {
+      TRow row = rows.get(i);
+      if (source.isNull(row, mRelationship.mIdColumnName)) {
+        typeCodes[i] = UNKNOWN_TYPE;
+        continue;
+      }
+
+      String typeName = source.getString(row, mRelationship.mTypeColumnName);
+      // consecutive rows often have the same type, which saves the map lookup
+      if (!Objects.equal(typeName, previousTypeName)) {
+        previousTypeName = typeName;
+        previousCode = getTypeCode(typeName);
+      }
+
+      int code = previousCode;
+      typeCodes[i] = code;
+      if (code == UNKNOWN_TYPE) {
+        continue;
+      }
+
+      long id = source.getLong(row, mRelationship.mIdColumnName);
+      ids[i] = id;
+
+      if (idsByTypeCount[code] == idsByType[code].length) {
+        idsByType[code] = Arrays.copyOf(idsByType[code], idsByType[code].length * 2);
+      }
+      idsByType[code][idsByTypeCount[code]++] = id;
+    }
+
+    List<LongObjectHashMap<TRow>> rowsByType = Lists.newArrayListWithCapacity(mModels.length);
+    for (int code = 0; code != mModels.length; ++code) {
+      long[] keys = PrefetchPlan.sortedDistinct(idsByType[code], idsByTypeCount[code]);
+      LongObjectHashMap<TRow> rowsById = new LongObjectHashMap<TRow>(keys.length);
+      fetch(code, keys, source, maxBoundParameters, rowsById);
+      rowsByType.add(rowsById);
+    }
+
+    return new Resolution<TRow>(typeCodes, ids, rowsByType);
+  }
+
+  private <TRow> void fetch(int code, long[] keys, RowSource<TRow> source, int maxBoundParameters, LongObjectHashMap<TRow> rowsById) {
+    String table = getModel(code).getTableName();
+    String idColumn = mRelationship.mPolymorphicModelIdColumn;
+
+    for (int from = 0; from < keys.length; from += maxBoundParameters) {
+      int to = Math.min(keys.length, from + maxBoundParameters);
+
+      StringBuilder query = new StringBuilder("SELECT * FROM ")
+          .append(table)
+          .append(" WHERE ")
+          .append(table).append('.').append(idColumn)
+          .append(" IN (");
+      String[] selectionArgs = new String[to - from];
+      for (int i = from; i != to; ++i) {
+        query.append(i == from ? "?" : ",?");
+        selectionArgs[i - from] = String.valueOf(keys[i]);
+      }
+      query.append(')');
+
+      for (TRow row : source.query(query.toString(), selectionArgs)) {
+        rowsById.put(source.getLong(row, idColumn), row);
+      }
+    }
+  }
+
+  /**
+   * Referenced rows for the rows passed to {@link #resolve(List, RowSource)}, accessed by the row position.
+   */
+  public class Resolution<TRow> {
+    private final int[] mRowTypeCodes;
+    private final long[] mRowIds;
+    private final List<LongObjectHashMap<TRow>> mRowsByType;
+
+    private Resolution(int[] rowTypeCodes, long[] rowIds, List<LongObjectHashMap<TRow>> rowsByType) {
+      mRowTypeCodes = rowTypeCodes;
+      mRowIds = rowIds;
+      mRowsByType = rowsByType;
+    }
+
+    /**
+     * Type code of the row at given position or {@link #UNKNOWN_TYPE} if the row doesn't reference anything or
+     * references model not included in the relationship.
+     */
+    public int getTypeCode(int position) {
+      return mRowTypeCodes[position];
+    }
+
+    public TModel getReferencedModel(int position) {
+      int code = mRowTypeCodes[position];
+      return code != UNKNOWN_TYPE ? getModel(code) : null;
+    }
+
+    /**
+     * Returns the row referenced by the row at given position, or null if there is no such row.
+     */
+    public TRow getReferencedRow(int position) {
+      int code = mRowTypeCodes[position];
+      return code != UNKNOWN_TYPE ? mRowsByType.get(code).get(mRowIds[position]) : null;
+    }
+
+    /**
+     * Number of fetched rows of the model with given type code.
+     */
+    public int getReferencedRowsCount(int typeCode) {
+      return mRowsByType.get(typeCode).size();
+    }
+  }
+}
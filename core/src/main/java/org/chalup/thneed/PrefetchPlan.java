@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.collect.LongObjectHashMap;
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fetches the rows related to the root model rows with one batched {@code IN (...)} query per relationship, instead
+ * of the query per row. The keys are split into chunks fitting into the SQLite bound parameters limit. Created by the
+ * {@link PrefetchPlanner}.
+ */
+public class PrefetchPlan<TModel extends DatabaseModel> {
+  /**
+   * Default SQLITE_MAX_VARIABLE_NUMBER.
+   */
+  public static final int MAX_BOUND_PARAMETERS = 999;
+
+  private final TModel mRoot;
+  private final ImmutableList<Hop<TModel>> mHops;
+
+  PrefetchPlan(TModel root, ImmutableList<Hop<TModel>> hops) {
+    mRoot = root;
+    mHops = hops;
+  }
+
+  public TModel getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Hops in the execution order, i.e. every hop follows its parent hop.
+   */
+  public ImmutableList<Hop<TModel>> getHops() {
+    return mHops;
+  }
+
+  public <TRow> PrefetchResult<TModel, TRow> execute(List<TRow> rootRows, RowSource<TRow> source) {
+    return execute(rootRows, source, MAX_BOUND_PARAMETERS);
+  }
+
+  public <TRow> PrefetchResult<TModel, TRow> execute(List<TRow> rootRows, RowSource<TRow> source, int maxBoundParameters) {
+    List<List<TRow>> rows = Lists.newArrayListWithCapacity(mHops.size());
+    List<LongObjectHashMap<List<TRow>>> rowsByKey = Lists.newArrayListWithCapacity(mHops.size());
+
+    for (Hop<TModel> hop : mHops) {
+      List<TRow> parentRows = hop.mParent != null ? rows.get(hop.mParent.mIndex) : rootRows;
+      long[] keys = hop.sourceKeys(parentRows, source);
+
+      List<TRow> hopRows = Lists.newArrayList();
+      for (int from = 0; from < keys.length; from += maxBoundParameters) {
+        int to = Math.min(keys.length, from + maxBoundParameters);
+
+        String[] selectionArgs = new String[to - from];
+        for (int i = from; i != to; ++i) {
+          selectionArgs[i - from] = String.valueOf(keys[i]);
+        }
+        hopRows.addAll(source.query(hop.getQuery(selectionArgs.length), selectionArgs));
+      }
+
+      LongObjectHashMap<List<TRow>> hopRowsByKey = new LongObjectHashMap<List<TRow>>(keys.length);
+      for (TRow row : hopRows) {
+        if (source.isNull(row, hop.mTargetColumn)) {
+          continue;
+        }
+
+        long key = source.getLong(row, hop.mTargetColumn);
+        List<TRow> keyRows = hopRowsByKey.get(key);
+        if (keyRows == null) {
+          keyRows = Lists.newArrayListWithCapacity(1);
+          hopRowsByKey.put(key, keyRows);
+        }
+        keyRows.add(row);
+      }
+
+      rows.add(hopRows);
+      rowsByKey.add(hopRowsByKey);
+    }
+
+    return new PrefetchResult<TModel, TRow>(source, rows, rowsByKey);
+  }
+
+  /**
+   * Sorts the first {@code count} keys in place and returns their distinct values.
+   */
+  static long[] sortedDistinct(long[] keys, int count) {
+    Arrays.sort(keys, 0, count);
+    int distinctCount = 0;
+    for (int i = 0; i != count; ++i) {
+      if (i == 0 || keys[i] != keys[i - 1]) {
+        keys[distinctCount++] = keys[i];
+      }
+    }
+    return Arrays.copyOf(keys, distinctCount);
+  }
+
+  /**
+   * Single relationship traversed by the plan: the rows of the target model which target column value matches the
+   * source column value of the source model rows fetched by the parent hop, or of the root rows.
+   */
+  public static final class Hop<TModel extends DatabaseModel> {
+    final int mIndex;
+    public final Hop<TModel> mParent;
+    public final TModel mSourceModel;
+    public final TModel mTargetModel;
+    public final String mSourceColumn;
+    public final String mTargetColumn;
+
+    /**
+     * Polymorphic relationship type column of the source rows, only the rows of the target model type are followed.
+     */
+    public final String mSourceTypeColumn;
+
+    /**
+     * Polymorphic relationship type column of the target rows, only the rows referencing the source model type are
+     * fetched.
+     */
+    public final String mTargetTypeColumn;
+
+    public final String mTypeName;
+
+    private final String mQueryPrefix;
+    private final String mQuerySuffix;
+    private volatile String mFullChunkQuery;
+
+    Hop(int index, Hop<TModel> parent, TModel sourceModel, TModel targetModel, String sourceColumn, String sourceTypeColumn, String targetColumn, String targetTypeColumn, String typeName) {
+      mIndex = index;
+      mParent = parent;
+      mSourceModel = sourceModel;
+      mTargetModel = targetModel;
+      mSourceColumn = sourceColumn;
+      mSourceTypeColumn = sourceTypeColumn;
+      mTargetColumn = targetColumn;
+      mTargetTypeColumn = targetTypeColumn;
+      mTypeName = typeName;
+
+      String table = targetModel.getTableName();
+      mQueryPrefix = "SELECT * FROM " + table + " WHERE " + table + "." + targetColumn + " IN (";
+      mQuerySuffix = targetTypeColumn != null
+          ? ") AND " + table + "." + targetTypeColumn + " = '" + typeName.replace("'", "''") + "'"
+          : ")";
+    }
+
+    String getQuery(int parametersCount) {
+      String query = mFullChunkQuery;
+      if (query != null && parametersCount == MAX_BOUND_PARAMETERS) {
+        return query;
+      }
+
+      StringBuilder builder = new StringBuilder(mQueryPrefix.length() + 2 * parametersCount + mQuerySuffix.length());
+      builder.append(mQueryPrefix);
+      for (int i = 0; i != parametersCount; ++i) {
+        builder.append(i == 0 ? "?" : ",?");
+      }
+      query = builder.append(mQuerySuffix).toString();
+      if (parametersCount == MAX_BOUND_PARAMETERS) {
+        mFullChunkQuery = query;
+      }
+      return query;
+    }
+
+    <TRow> boolean follows(TRow row, RowSource<TRow> source) {
+      return !source.isNull(row, mSourceColumn) &&
+          (mSourceTypeColumn == null || mTypeName.equals(source.getString(row, mSourceTypeColumn)));
+    }
+
+    /**
+     * Sorted distinct values of the source column.
+     */
+    <TRow> long[] sourceKeys(List<TRow> rows, RowSource<TRow> source) {
+      long[] keys = new long[rows.size()];
+      int count = 0;
+      for (TRow row : rows) {
+        if (follows(row, source)) {
+          keys[count++] = source.getLong(row, mSourceColumn);
+        }
+      }
+
+      return sortedDistinct(keys, count);
+    }
+
+    @Override
+    public String toString() {
+      return "Hop{" + mSourceModel + "." + mSourceColumn + " -> " + mTargetModel + "." + mTargetColumn + "}";
+    }
+  }
+}
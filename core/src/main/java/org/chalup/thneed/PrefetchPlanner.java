@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Builds the {@link PrefetchPlan} fetching the rows related to the root model rows along the paths of relationships,
+ * e.g. {@code [SESSION, ROOM]} or {@code [SESSION, SPEAKER]}. Each consecutive pair of models on the path has to be
+ * related directly or through the join model of many-to-many relationship. The common prefixes of the paths are
+ * fetched only once.
+ */
+public class PrefetchPlanner<TModel extends DatabaseModel> {
+  private final ModelGraph<TModel> mGraph;
+
+  private PrefetchPlanner(ModelGraph<TModel> graph) {
+    mGraph = graph;
+  }
+
+  public static <TModel extends DatabaseModel> PrefetchPlanner<TModel> from(ModelGraph<TModel> graph) {
+    return new PrefetchPlanner<TModel>(graph);
+  }
+
+  public PrefetchPlan<TModel> plan(TModel root, List<? extends List<? extends TModel>> paths) {
+    List<PrefetchPlan.Hop<TModel>> hops = Lists.newArrayList();
+    Map<List<TModel>, PrefetchPlan.Hop<TModel>> hopsByPath = Maps.newHashMap();
+
+    for (List<? extends TModel> path : paths) {
+      Preconditions.checkArgument(!path.isEmpty() && path.get(0).equals(root), "Path %s doesn't start with %s", path, root);
+
+      List<TModel> hopPath = Lists.newArrayList();
+      hopPath.add(root);
+      PrefetchPlan.Hop<TModel> parent = null;
+      for (TModel model : path.subList(1, path.size())) {
+        TModel source = hopPath.get(hopPath.size() - 1);
+
+        ManyToManyRelationship<? extends TModel> manyToMany = null;
+        if (findRelationship(source, model) == null) {
+          manyToMany = findManyToManyRelationship(source, model);
+          Preconditions.checkArgument(manyToMany != null, "Model %s is not related to %s", model, source);
+        }
+
+        if (manyToMany != null) {
+          parent = hop(hops, hopsByPath, hopPath, parent, manyToMany.mModel);
+        }
+        parent = hop(hops, hopsByPath, hopPath, parent, model);
+      }
+    }
+
+    return new PrefetchPlan<TModel>(root, ImmutableList.copyOf(hops));
+  }
+
+  private PrefetchPlan.Hop<TModel> hop(List<PrefetchPlan.Hop<TModel>> hops, Map<List<TModel>, PrefetchPlan.Hop<TModel>> hopsByPath, List<TModel> hopPath, PrefetchPlan.Hop<TModel> parent, TModel model) {
+    TModel source = hopPath.get(hopPath.size() - 1);
+    hopPath.add(model);
+
+    PrefetchPlan.Hop<TModel> hop = hopsByPath.get(hopPath);
+    if (hop == null) {
+      HopColumns columns = new HopColumns(source, model);
+      findRelationship(source, model).accept(columns);
+
+      hop = new PrefetchPlan.Hop<TModel>(hops.size(), parent, source, model,
+          columns.mSourceColumn, columns.mSourceTypeColumn, columns.mTargetColumn, columns.mTargetTypeColumn, columns.mTypeName);
+      hops.add(hop);
+      hopsByPath.put(ImmutableList.copyOf(hopPath), hop);
+    }
+    return hop;
+  }
+
+  /**
+   * Returns the standalone hop from the source model to the directly related target model along the given
+   * relationship, or null if the relationship doesn't relate these models.
+   */
+  PrefetchPlan.Hop<TModel> hop(TModel source, TModel target, Relationship<? extends TModel> relationship) {
+    HopColumns columns = new HopColumns(source, target);
+    relationship.accept(columns);
+    if (columns.mSourceColumn == null) {
+      return null;
+    }
+
+    return new PrefetchPlan.Hop<TModel>(0, null, source, target,
+        columns.mSourceColumn, columns.mSourceTypeColumn, columns.mTargetColumn, columns.mTargetTypeColumn, columns.mTypeName);
+  }
+
+  private Relationship<? extends TModel> findRelationship(TModel source, TModel target) {
+    for (Relationship<? extends TModel> relationship : Iterables.concat(mGraph.getOutgoingRelationships(source), mGraph.getIncomingRelationships(source))) {
+      HopColumns columns = new HopColumns(source, target);
+      relationship.accept(columns);
+      if (columns.mSourceColumn != null) {
+        return relationship;
+      }
+    }
+    return null;
+  }
+
+  private ManyToManyRelationship<? extends TModel> findManyToManyRelationship(TModel source, TModel target) {
+    for (ManyToManyRelationship<? extends TModel> relationship : mGraph.getManyToManyRelationships(source)) {
+      if (findRelationship(relationship.mModel, target) != null && findRelationship(source, relationship.mModel) != null) {
+        return relationship;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Columns of the source rows which values are collected and the columns of the target rows matched against them.
+   */
+  private class HopColumns implements RelationshipVisitor<TModel> {
+    private final TModel mSource;
+    private final TModel mTarget;
+
+    String mSourceColumn;
+    String mSourceTypeColumn;
+    String mTargetColumn;
+    String mTargetTypeColumn;
+    String mTypeName;
+
+    HopColumns(TModel source, TModel target) {
+      mSource = source;
+      mTarget = target;
+    }
+
+    private void set(String sourceColumn, String targetColumn) {
+      mSourceColumn = sourceColumn;
+      mTargetColumn = targetColumn;
+    }
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      if (mSource.equals(relationship.mModel) && mTarget.equals(relationship.mReferencedModel)) {
+        set(relationship.mLinkedByColumn, relationship.mReferencedModelIdColumn);
+      } else if (mSource.equals(relationship.mReferencedModel) && mTarget.equals(relationship.mModel)) {
+        set(relationship.mReferencedModelIdColumn, relationship.mLinkedByColumn);
+      }
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      if (mSource.equals(relationship.mModel) && mTarget.equals(relationship.mLinkedModel)) {
+        set(relationship.mParentModelIdColumn, relationship.mLinkedByColumn);
+      } else if (mSource.equals(relationship.mLinkedModel) && mTarget.equals(relationship.mModel)) {
+        set(relationship.mLinkedByColumn, relationship.mParentModelIdColumn);
+      }
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      for (Entry<String, ? extends TModel> entry : relationship.mPolymorphicModels.entrySet()) {
+        if (mSource.equals(relationship.mModel) && mTarget.equals(entry.getValue())) {
+          set(relationship.mIdColumnName, relationship.mPolymorphicModelIdColumn);
+          mSourceTypeColumn = relationship.mTypeColumnName;
+          mTypeName = entry.getKey();
+          return;
+        } else if (mSource.equals(entry.getValue()) && mTarget.equals(relationship.mModel)) {
+          set(relationship.mPolymorphicModelIdColumn, relationship.mIdColumnName);
+          mTargetTypeColumn = relationship.mTypeColumnName;
+          mTypeName = entry.getKey();
+          return;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.collect.LongObjectHashMap;
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+
+/**
+ * Rows fetched by the {@link PrefetchPlan}, indexed by the target column value of each hop.
+ */
+public class PrefetchResult<TModel extends DatabaseModel, TRow> {
+  private final RowSource<TRow> mSource;
+  private final List<List<TRow>> mRows;
+  private final List<LongObjectHashMap<List<TRow>>> mRowsByKey;
+
+  PrefetchResult(RowSource<TRow> source, List<List<TRow>> rows, List<LongObjectHashMap<List<TRow>>> rowsByKey) {
+    mSource = source;
+    mRows = rows;
+    mRowsByKey = rowsByKey;
+  }
+
+  /**
+   * All rows fetched by the hop.
+   */
+  public List<TRow> getRows(PrefetchPlan.Hop<TModel> hop) {
+    return mRows.get(hop.mIndex);
+  }
+
+  /**
+   * Rows fetched by the hop, which are related to the given row of the hop's source model.
+   */
+  public List<TRow> getRelated(PrefetchPlan.Hop<TModel> hop, TRow sourceRow) {
+    if (!hop.follows(sourceRow, mSource)) {
+      return ImmutableList.of();
+    }
+
+    List<TRow> rows = mRowsByKey.get(hop.mIndex).get(mSource.getLong(sourceRow, hop.mSourceColumn));
+    return rows != null ? rows : ImmutableList.<TRow>of();
+  }
+}
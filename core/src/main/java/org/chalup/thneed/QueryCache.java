@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of the query results keyed by the path of related models, the relationships joining them and the query
+ * arguments. Every entry depends on the
+ * models on its path and the join models of the many-to-many relationships between them, so the write to the model
+ * invalidates only the entries which depend on it. The entries are evicted in the least recently used order when the
+ * cache exceeds its maximum size or weight.
+ * <p/>
+ * The value loaded concurrently with the invalidation of one of its models may be cached after the invalidation, so
+ * the writes should invalidate the cache after they are committed.
+ */
+public class QueryCache<TModel, V> {
+  private final ModelGraph<TModel> mGraph;
+  private final Cache<Key<TModel>, V> mCache;
+  private final SetMultimap<TModel, Key<TModel>> mKeysByModel = HashMultimap.create();
+
+  /**
+   * Number of the values stored for the key which weren't removed yet, guarded by the {@link #mKeysByModel} lock. The
+   * key is unindexed when the last of them is removed, so the late removal notification of the replaced or evicted
+   * value doesn't unindex the value stored after it.
+   */
+  private final Map<Key<TModel>, Integer> mStoredValues = Maps.newHashMap();
+
+  private QueryCache(ModelGraph<TModel> graph, CacheBuilder<Object, Object> cacheBuilder) {
+    mGraph = graph;
+    mCache = cacheBuilder
+        .removalListener(new RemovalListener<Key<TModel>, V>() {
+          @Override
+          public void onRemoval(RemovalNotification<Key<TModel>, V> notification) {
+            unregister(notification.getKey());
+          }
+        })
+        .build();
+  }
+
+  public static <TModel, V> QueryCache<TModel, V> from(ModelGraph<TModel> graph, long maximumSize) {
+    return new QueryCache<TModel, V>(graph, CacheBuilder.newBuilder().maximumSize(maximumSize));
+  }
+
+  public static <TModel, V> QueryCache<TModel, V> from(ModelGraph<TModel> graph, long maximumWeight, final Weigher<? super Key<TModel>, ? super V> weigher) {
+    return new QueryCache<TModel, V>(graph, CacheBuilder.newBuilder()
+        .maximumWeight(maximumWeight)
+        .weigher(new Weigher<Object, Object>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public int weigh(Object key, Object value) {
+            return weigher.weigh((Key<TModel>) key, (V) value);
+          }
+        }));
+  }
+
+  /**
+   * Creates the key of the query starting from the first model of the path and joining the following ones along the
+   * relationships picked by the {@link TableJoiner}.
+   */
+  public Key<TModel> key(List<? extends TModel> path, Object... args) {
+    return key(path, ImmutableList.<Relationship<? extends TModel>>of(), args);
+  }
+
+  /**
+   * Creates the key of the query joining the models of the path along given relationships, e.g. when the models are
+   * related by more than one foreign key.
+   */
+  public Key<TModel> key(List<? extends TModel> path, List<? extends Relationship<? extends TModel>> relationships, Object... args) {
+    Preconditions.checkArgument(!path.isEmpty(), "Query path cannot be empty");
+    for (Relationship<? extends TModel> relationship : relationships) {
+      Preconditions.checkArgument(mGraph.getRelationships().contains(relationship), "Relationship %s is not a part of the graph", relationship);
+    }
+    return new Key<TModel>(ImmutableList.<TModel>copyOf(path), ImmutableList.<Relationship<? extends TModel>>copyOf(relationships), Arrays.asList(args.clone()), dependencies(path));
+  }
+
+  public V get(final Key<TModel> key, final Callable<? extends V> loader) throws ExecutionException {
+    V value = mCache.getIfPresent(key);
+    if (value != null) {
+      return value;
+    }
+
+    return mCache.get(key, new Callable<V>() {
+      @Override
+      public V call() throws Exception {
+        V value = loader.call();
+        if (value != null) {
+          register(key);
+        }
+        return value;
+      }
+    });
+  }
+
+  public V getIfPresent(Key<TModel> key) {
+    return mCache.getIfPresent(key);
+  }
+
+  public void put(Key<TModel> key, V value) {
+    Preconditions.checkNotNull(value);
+    register(key);
+    mCache.put(key, value);
+  }
+
+  /**
+   * Evicts all entries which depend on the model.
+   */
+  public void invalidate(TModel model) {
+    Set<Key<TModel>> keys;
+    synchronized (mKeysByModel) {
+      keys = ImmutableSet.copyOf(mKeysByModel.get(model));
+    }
+    mCache.invalidateAll(keys);
+  }
+
+  public void invalidateAll() {
+    mCache.invalidateAll();
+  }
+
+  public long size() {
+    return mCache.size();
+  }
+
+  private void register(Key<TModel> key) {
+    synchronized (mKeysByModel) {
+      Integer storedValues = mStoredValues.get(key);
+      mStoredValues.put(key, storedValues != null ? storedValues + 1 : 1);
+      for (TModel model : key.mDependencies) {
+        mKeysByModel.put(model, key);
+      }
+    }
+  }
+
+  private void unregister(Key<TModel> key) {
+    synchronized (mKeysByModel) {
+      Integer storedValues = mStoredValues.get(key);
+      if (storedValues != null && storedValues > 1) {
+        mStoredValues.put(key, storedValues - 1);
+        return;
+      }
+
+      mStoredValues.remove(key);
+      for (TModel model : key.mDependencies) {
+        mKeysByModel.remove(model, key);
+      }
+    }
+  }
+
+  private ImmutableSet<TModel> dependencies(List<? extends TModel> path) {
+    Set<TModel> dependencies = Sets.<TModel>newLinkedHashSet(path);
+    for (TModel model : path) {
+      for (ManyToManyRelationship<? extends TModel> relationship : mGraph.getManyToManyRelationships(model)) {
+        for (TModel other : path) {
+          if (!other.equals(model) && mGraph.getManyToManyRelationships(other).contains(relationship)) {
+            dependencies.add(relationship.mModel);
+          }
+        }
+      }
+    }
+    return ImmutableSet.copyOf(dependencies);
+  }
+
+  public static final class Key<TModel> {
+    public final ImmutableList<TModel> mPath;
+
+    /**
+     * Relationships joining the models of the path, or empty list for the relationships picked by the
+     * {@link TableJoiner}.
+     */
+    public final ImmutableList<Relationship<? extends TModel>> mRelationships;
+    public final List<Object> mArgs;
+    final ImmutableSet<TModel> mDependencies;
+    private final int mHashCode;
+
+    Key(ImmutableList<TModel> path, ImmutableList<Relationship<? extends TModel>> relationships, List<Object> args, ImmutableSet<TModel> dependencies) {
+      mPath = path;
+      mRelationships = relationships;
+      mArgs = Collections.unmodifiableList(args);
+      mDependencies = dependencies;
+      mHashCode = Objects.hashCode(path, relationships, args);
+    }
+
+    public TModel getRootModel() {
+      return mPath.get(0);
+    }
+
+    @Override
+    public int hashCode() {
+      return mHashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key<?> that = (Key<?>) o;
+      return mHashCode == that.mHashCode &&
+          mPath.equals(that.mPath) &&
+          mRelationships.equals(that.mRelationships) &&
+          mArgs.equals(that.mArgs);
+    }
+
+    @Override
+    public String toString() {
+      return mPath + " " + mRelationships + " " + mArgs;
+    }
+  }
+}
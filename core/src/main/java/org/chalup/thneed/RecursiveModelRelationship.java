@@ -24,10 +24,14 @@ public class RecursiveModelRelationship<TModel> implements Relationship<TModel>
   public final String mModelIdColumn;
   public final String mGroupByColumn;
 
+  private final int mHashCode;
+
   RecursiveModelRelationship(TModel model, String modelIdColumn, String groupByColumn) {
     mModel = model;
     mModelIdColumn = modelIdColumn;
     mGroupByColumn = groupByColumn;
+
+    mHashCode = Objects.hashCode(mModel, mModelIdColumn, mGroupByColumn);
   }
 
   @Override
@@ -37,7 +41,7 @@ public class RecursiveModelRelationship<TModel> implements Relationship<TModel>
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(mModel, mModelIdColumn, mGroupByColumn);
+    return mHashCode;
   }
 
   @Override
@@ -45,7 +49,8 @@ public class RecursiveModelRelationship<TModel> implements Relationship<TModel>
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
 
-    RecursiveModelRelationship that = (RecursiveModelRelationship) o;
+    RecursiveModelRelationship<?> that = (RecursiveModelRelationship<?>) o;
+    if (that.mHashCode != mHashCode) return false;
 
     return Objects.equal(that.mGroupByColumn, mGroupByColumn) &&
         Objects.equal(that.mModelIdColumn, mModelIdColumn) &&
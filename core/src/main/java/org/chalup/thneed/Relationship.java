@@ -16,6 +16,6 @@
 
 package org.chalup.thneed;
 
-interface Relationship<T> {
+public interface Relationship<T> {
   void accept(RelationshipVisitor<? super T> visitor);
 }
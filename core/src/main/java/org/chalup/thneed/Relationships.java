@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Factory methods for code generated from {@code org.chalup.thneed.annotations}. Use {@link ModelGraph#of(Class)}
+ * to define the graph by hand.
+ */
+public final class Relationships {
+  private Relationships() {
+  }
+
+  public static <TModel> OneToManyRelationship<TModel> oneToMany(TModel model, TModel referencedModel, String referencedModelIdColumn, String linkedByColumn) {
+    return new OneToManyRelationship<TModel>(model, referencedModel, referencedModelIdColumn, linkedByColumn);
+  }
+
+  public static <TModel> OneToOneRelationship<TModel> oneToOne(TModel model, TModel linkedModel, String parentModelIdColumn, String linkedByColumn) {
+    return new OneToOneRelationship<TModel>(model, linkedModel, parentModelIdColumn, linkedByColumn);
+  }
+
+  public static <TModel> RecursiveModelRelationship<TModel> recursive(TModel model, String modelIdColumn, String groupByColumn) {
+    return new RecursiveModelRelationship<TModel>(model, modelIdColumn, groupByColumn);
+  }
+
+  public static <TModel> PolymorphicRelationship<TModel> polymorphic(TModel model, ImmutableList<? extends PolymorphicType<? extends TModel>> types, String polymorphicModelIdColumn, String typeColumnName, String idColumnName) {
+    return new PolymorphicRelationship<TModel>(model, types, polymorphicModelIdColumn, typeColumnName, idColumnName);
+  }
+
+  public static <TModel> ManyToManyRelationship<TModel> manyToMany(TModel model, Relationship<TModel> leftRelationship, Relationship<TModel> rightRelationship) {
+    return new ManyToManyRelationship<TModel>(model, leftRelationship, rightRelationship);
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import java.util.List;
+
+/**
+ * Access to the database rows for the {@link PrefetchPlan}, which doesn't depend on any particular database API.
+ */
+public interface RowSource<TRow> {
+  List<TRow> query(String sql, String[] selectionArgs);
+
+  boolean isNull(TRow row, String column);
+
+  long getLong(TRow row, String column);
+
+  String getString(TRow row, String column);
+}
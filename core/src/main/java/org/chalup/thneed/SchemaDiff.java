@@ -0,0 +1,538 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Function;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import org.chalup.thneed.models.DatabaseModel;
+import org.chalup.thneed.models.SchemaModel;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Structural difference between two versions of the {@link ModelGraph}, with the statements migrating the database
+ * created for the old version to the new one.
+ * <p/>
+ * The models are matched by their table names and their columns are read from the
+ * {@link SchemaModel#getCreateTableStatement()}. The columns added to the existing table are added with
+ * {@code ALTER TABLE ... ADD COLUMN} when SQLite allows it; any other change of the table rebuilds it, copying the data
+ * of the columns present in both versions. The rebuild drops the old table, so the foreign key enforcement should be
+ * disabled during the migration.
+ * <p/>
+ * The closure tables of the {@link RecursiveModelRelationship}s are migrated only for the databases created with the
+ * {@link DatabaseSchema#withClosureTables()}, when the diff is requested {@link #withClosureTables()}: the closure
+ * tables of the removed relationships are dropped, the closure tables of the relationships added to the existing tables
+ * are created and populated with {@code WITH RECURSIVE}, and the triggers of the rebuilt tables are recreated.
+ */
+public class SchemaDiff<TModel extends DatabaseModel & SchemaModel> {
+  private static final ImmutableSet<String> TABLE_CONSTRAINTS = ImmutableSet.of("CONSTRAINT", "PRIMARY", "UNIQUE", "CHECK", "FOREIGN");
+
+  public final ImmutableList<TModel> mAddedModels;
+  public final ImmutableList<TModel> mRemovedModels;
+
+  /**
+   * Models of the new graph with the table definition different than in the old graph.
+   */
+  public final ImmutableList<TModel> mChangedModels;
+
+  /**
+   * Columns added to the existing tables, keyed by table name.
+   */
+  public final ImmutableSetMultimap<String, String> mAddedColumns;
+
+  /**
+   * Columns removed from the existing tables, keyed by table name.
+   */
+  public final ImmutableSetMultimap<String, String> mRemovedColumns;
+
+  public final ImmutableList<Relationship<? extends TModel>> mAddedRelationships;
+  public final ImmutableList<Relationship<? extends TModel>> mRemovedRelationships;
+
+  private final ModelGraph<TModel> mOldGraph;
+  private final ModelGraph<TModel> mNewGraph;
+  private final Map<String, TableDefinition> mOldTables;
+  private final Map<String, TableDefinition> mNewTables;
+  private final boolean mWithClosureTables;
+
+  private SchemaDiff(ModelGraph<TModel> oldGraph, ModelGraph<TModel> newGraph, boolean withClosureTables) {
+    mOldGraph = oldGraph;
+    mNewGraph = newGraph;
+    mWithClosureTables = withClosureTables;
+    mOldTables = tables(oldGraph);
+    mNewTables = tables(newGraph);
+
+    ImmutableList.Builder<TModel> removedModels = ImmutableList.builder();
+    for (TModel model : oldGraph.getModels()) {
+      if (!mNewTables.containsKey(model.getTableName())) {
+        removedModels.add(model);
+      }
+    }
+    mRemovedModels = removedModels.build();
+
+    ImmutableList.Builder<TModel> addedModels = ImmutableList.builder();
+    ImmutableList.Builder<TModel> changedModels = ImmutableList.builder();
+    ImmutableSetMultimap.Builder<String, String> addedColumns = ImmutableSetMultimap.builder();
+    ImmutableSetMultimap.Builder<String, String> removedColumns = ImmutableSetMultimap.builder();
+    for (TModel model : newGraph.getModels()) {
+      String table = model.getTableName();
+      TableDefinition oldTable = mOldTables.get(table);
+      TableDefinition newTable = mNewTables.get(table);
+      if (oldTable == null) {
+        addedModels.add(model);
+      } else if (!oldTable.equals(newTable)) {
+        changedModels.add(model);
+        addedColumns.putAll(table, Sets.difference(newTable.mColumns.keySet(), oldTable.mColumns.keySet()));
+        removedColumns.putAll(table, Sets.difference(oldTable.mColumns.keySet(), newTable.mColumns.keySet()));
+      }
+    }
+    mAddedModels = addedModels.build();
+    mChangedModels = changedModels.build();
+    mAddedColumns = addedColumns.build();
+    mRemovedColumns = removedColumns.build();
+
+    Map<String, Relationship<? extends TModel>> oldRelationships = relationships(oldGraph);
+    Map<String, Relationship<? extends TModel>> newRelationships = relationships(newGraph);
+    mAddedRelationships = ImmutableList.copyOf(Maps.filterKeys(newRelationships, notIn(oldRelationships.keySet())).values());
+    mRemovedRelationships = ImmutableList.copyOf(Maps.filterKeys(oldRelationships, notIn(newRelationships.keySet())).values());
+  }
+
+  public static <TModel extends DatabaseModel & SchemaModel> SchemaDiff<TModel> between(ModelGraph<TModel> oldGraph, ModelGraph<TModel> newGraph) {
+    return new SchemaDiff<TModel>(oldGraph, newGraph, false);
+  }
+
+  public SchemaDiff<TModel> withClosureTables() {
+    return mWithClosureTables ? this : new SchemaDiff<TModel>(mOldGraph, mNewGraph, true);
+  }
+
+  public boolean isEmpty() {
+    return mAddedModels.isEmpty() &&
+        mRemovedModels.isEmpty() &&
+        mChangedModels.isEmpty() &&
+        mAddedRelationships.isEmpty() &&
+        mRemovedRelationships.isEmpty();
+  }
+
+  /**
+   * Returns the statements dropping the removed indexes and tables, creating the added tables, altering or rebuilding
+   * the changed tables, and creating the new indexes advised by the {@link IndexAdvisor} and, if requested, the
+   * closure tables.
+   */
+  public ImmutableList<String> getMigrationStatements() {
+    Set<String> statements = Sets.newLinkedHashSet();
+
+    if (mWithClosureTables) {
+      for (RecursiveModelRelationship<? extends TModel> relationship : recursive(mRemovedRelationships)) {
+        statements.addAll(HierarchyQueries.<TModel>of(relationship).getClosureTableDropStatements());
+      }
+    }
+
+    Set<String> removedTables = Sets.newHashSet();
+    for (TModel model : mRemovedModels) {
+      removedTables.add(model.getTableName());
+    }
+
+    Set<TableIndex> oldIndexes = ImmutableSet.copyOf(IndexAdvisor.from(mOldGraph).getIndexes());
+    Set<TableIndex> newIndexes = ImmutableSet.copyOf(IndexAdvisor.from(mNewGraph).getIndexes());
+    for (TableIndex index : oldIndexes) {
+      if (!newIndexes.contains(index) && !removedTables.contains(index.mTable)) {
+        statements.add(index.getDropStatement());
+      }
+    }
+
+    for (ImmutableSet<TModel> tier : mOldGraph.getDependencyTiers().reverse()) {
+      for (TModel model : DatabaseSchema.byTableName(tier)) {
+        if (removedTables.contains(model.getTableName())) {
+          statements.add("DROP TABLE IF EXISTS " + model.getTableName());
+        }
+      }
+    }
+
+    Set<String> changedTables = Sets.newHashSet();
+    for (TModel model : mChangedModels) {
+      changedTables.add(model.getTableName());
+    }
+
+    Set<String> rebuiltTables = Sets.newHashSet();
+    for (ImmutableSet<TModel> tier : mNewGraph.getDependencyTiers()) {
+      for (TModel model : DatabaseSchema.byTableName(tier)) {
+        String table = model.getTableName();
+        if (!mOldTables.containsKey(table)) {
+          statements.add(model.getCreateTableStatement());
+        } else if (changedTables.contains(table)) {
+          TableDefinition oldTable = mOldTables.get(table);
+          TableDefinition newTable = mNewTables.get(table);
+
+          List<String> alterStatements = alterStatements(table, oldTable, newTable);
+          if (alterStatements != null) {
+            statements.addAll(alterStatements);
+          } else {
+            statements.addAll(rebuildStatements(model, oldTable, newTable));
+            rebuiltTables.add(table);
+          }
+        }
+      }
+    }
+
+    for (TableIndex index : newIndexes) {
+      if (!oldIndexes.contains(index) || rebuiltTables.contains(index.mTable)) {
+        statements.add(index.getCreateStatement());
+      }
+    }
+
+    if (mWithClosureTables) {
+      for (RecursiveModelRelationship<? extends TModel> relationship : recursive(mNewGraph.getRelationships())) {
+        HierarchyQueries<TModel> queries = HierarchyQueries.of(relationship);
+        if (mAddedRelationships.contains(relationship)) {
+          statements.addAll(queries.getClosureTableStatements());
+          if (!mAddedModels.contains(relationship.mModel)) {
+            statements.add(queries.getClosureTablePopulateStatement());
+          }
+        } else if (rebuiltTables.contains(relationship.mModel.getTableName())) {
+          statements.addAll(queries.getClosureTriggerStatements());
+        }
+      }
+    }
+
+    return ImmutableList.copyOf(statements);
+  }
+
+  /**
+   * Returns the ALTER TABLE statements adding the new columns, or null if the table has to be rebuilt.
+   */
+  private static List<String> alterStatements(String table, TableDefinition oldTable, TableDefinition newTable) {
+    if (!oldTable.mConstraints.equals(newTable.mConstraints) || !oldTable.mOptions.equals(newTable.mOptions)) {
+      return null;
+    }
+
+    List<String> statements = Lists.newArrayList();
+    for (Map.Entry<String, String> column : newTable.mColumns.entrySet()) {
+      String oldDefinition = oldTable.mNormalizedColumns.get(column.getKey());
+      if (oldDefinition == null) {
+        if (!canBeAdded(column.getValue())) {
+          return null;
+        }
+        statements.add("ALTER TABLE " + table + " ADD COLUMN " + column.getValue());
+      } else if (!oldDefinition.equals(newTable.mNormalizedColumns.get(column.getKey()))) {
+        return null;
+      }
+    }
+
+    return oldTable.mColumns.keySet().equals(Sets.intersection(oldTable.mColumns.keySet(), newTable.mColumns.keySet()))
+        ? statements
+        : null;
+  }
+
+  private static boolean canBeAdded(String columnDefinition) {
+    String definition = columnDefinition.toUpperCase(Locale.US);
+    return !definition.contains("PRIMARY KEY") &&
+        !definition.contains("UNIQUE") &&
+        !(definition.contains("NOT NULL") && !definition.contains("DEFAULT"));
+  }
+
+  private static <TModel extends DatabaseModel & SchemaModel> List<String> rebuildStatements(TModel model, TableDefinition oldTable, TableDefinition newTable) {
+    String table = model.getTableName();
+    String newName = table + "_new";
+    String columns = Joiner.on(", ").join(Sets.intersection(newTable.mColumns.keySet(), oldTable.mColumns.keySet()));
+
+    return ImmutableList.of(
+        "CREATE TABLE " + newName + " " + newTable.mBody,
+        "INSERT INTO " + newName + " (" + columns + ") SELECT " + columns + " FROM " + table,
+        "DROP TABLE " + table,
+        "ALTER TABLE " + newName + " RENAME TO " + table
+    );
+  }
+
+  private static <TModel extends DatabaseModel & SchemaModel> Map<String, TableDefinition> tables(ModelGraph<TModel> graph) {
+    ImmutableMap.Builder<String, TableDefinition> tables = ImmutableMap.builder();
+    for (TModel model : graph.getModels()) {
+      tables.put(model.getTableName(), TableDefinition.parse(model.getCreateTableStatement()));
+    }
+    return tables.build();
+  }
+
+  private static <TModel extends DatabaseModel> Map<String, Relationship<? extends TModel>> relationships(ModelGraph<TModel> graph) {
+    final Map<String, Relationship<? extends TModel>> relationships = Maps.newLinkedHashMap();
+    graph.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        relationships.put(Joiner.on(' ').join("1:N",
+            relationship.mModel.getTableName(), relationship.mLinkedByColumn,
+            relationship.mReferencedModel.getTableName(), relationship.mReferencedModelIdColumn), relationship);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        relationships.put(Joiner.on(' ').join("1:1",
+            relationship.mModel.getTableName(), relationship.mParentModelIdColumn,
+            relationship.mLinkedModel.getTableName(), relationship.mLinkedByColumn), relationship);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        relationships.put(Joiner.on(' ').join("TREE",
+            relationship.mModel.getTableName(), relationship.mModelIdColumn, relationship.mGroupByColumn), relationship);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        relationships.put(Joiner.on(' ').join("N:M",
+            relationship.mModel.getTableName(), key(relationship.mLeftRelationship), key(relationship.mRightRelationship)), relationship);
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        relationships.put(key(relationship), relationship);
+      }
+
+      private String key(Relationship<? extends TModel> relationship) {
+        final StringBuilder key = new StringBuilder();
+        relationship.accept(new RelationshipVisitor<TModel>() {
+          @Override
+          public void visit(OneToManyRelationship<? extends TModel> relationship) {
+            key.append(Joiner.on(' ').join(relationship.mLinkedByColumn, relationship.mReferencedModel.getTableName(), relationship.mReferencedModelIdColumn));
+          }
+
+          @Override
+          public void visit(OneToOneRelationship<? extends TModel> relationship) {
+          }
+
+          @Override
+          public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+          }
+
+          @Override
+          public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+          }
+
+          @Override
+          public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+            key.append(Joiner.on(' ').join("POLY", relationship.mModel.getTableName(), relationship.mTypeColumnName, relationship.mIdColumnName, relationship.mPolymorphicModelIdColumn));
+            for (Map.Entry<String, ? extends TModel> type : relationship.mPolymorphicModels.entrySet()) {
+              key.append(' ').append(type.getKey()).append('=').append(type.getValue().getTableName());
+            }
+          }
+        });
+        return key.toString();
+      }
+    });
+    return relationships;
+  }
+
+  private static <TModel> List<RecursiveModelRelationship<? extends TModel>> recursive(List<Relationship<? extends TModel>> relationships) {
+    final List<RecursiveModelRelationship<? extends TModel>> recursive = Lists.newArrayList();
+    for (Relationship<? extends TModel> relationship : relationships) {
+      relationship.accept(new RelationshipVisitor<TModel>() {
+        @Override
+        public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+          recursive.add(relationship);
+        }
+
+        @Override
+        public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        }
+
+        @Override
+        public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        }
+      });
+    }
+    return recursive;
+  }
+
+  private static Predicate<String> notIn(final Set<String> keys) {
+    return Predicates.not(Predicates.in(keys));
+  }
+
+  /**
+   * Columns, table constraints and table options (e.g. {@code WITHOUT ROWID}) parsed from the CREATE TABLE statement.
+   * The definitions are compared with the whitespace collapsed and the keywords upper cased, so reformatting the
+   * statement doesn't rebuild the table.
+   */
+  private static class TableDefinition {
+    final String mBody;
+    final Map<String, String> mColumns;
+    final Map<String, String> mNormalizedColumns;
+    final List<String> mConstraints;
+    final Set<String> mOptions;
+
+    private TableDefinition(String body, Map<String, String> columns, List<String> constraints, Set<String> options) {
+      mBody = body;
+      mColumns = columns;
+      mNormalizedColumns = ImmutableMap.copyOf(Maps.transformValues(columns, NORMALIZE));
+      mConstraints = ImmutableList.copyOf(Lists.transform(constraints, NORMALIZE));
+      mOptions = options;
+    }
+
+    static TableDefinition parse(String createTableStatement) {
+      int start = createTableStatement.indexOf('(');
+      int end = createTableStatement.lastIndexOf(')');
+      if (start < 0 || end < start) {
+        throw new IllegalArgumentException("Cannot parse the table definition: " + createTableStatement);
+      }
+
+      Map<String, String> columns = Maps.newLinkedHashMap();
+      List<String> constraints = Lists.newArrayList();
+      for (String definition : split(createTableStatement.substring(start + 1, end))) {
+        String firstWord = definition.split("\\s+", 2)[0];
+        if (TABLE_CONSTRAINTS.contains(firstWord.toUpperCase(Locale.US))) {
+          constraints.add(definition);
+        } else {
+          columns.put(unquote(firstWord), definition);
+        }
+      }
+
+      String body = createTableStatement.substring(start).trim();
+      if (body.endsWith(";")) {
+        body = body.substring(0, body.length() - 1).trim();
+      }
+
+      Set<String> options = Sets.newHashSet();
+      String optionsDefinition = body.substring(end - start + 1).trim();
+      if (!optionsDefinition.isEmpty()) {
+        for (String option : split(optionsDefinition)) {
+          options.add(normalize(option));
+        }
+      }
+
+      return new TableDefinition(body, columns, constraints, options);
+    }
+
+    private static final Function<String, String> NORMALIZE = new Function<String, String>() {
+      @Override
+      public String apply(String definition) {
+        return normalize(definition);
+      }
+    };
+
+    /**
+     * Upper cases everything outside of the quotes and collapses the whitespace, dropping it entirely around the
+     * parentheses and commas.
+     */
+    private static String normalize(String definition) {
+      StringBuilder normalized = new StringBuilder(definition.length());
+      char quote = 0;
+      boolean pendingSpace = false;
+      for (int i = 0; i != definition.length(); ++i) {
+        char c = definition.charAt(i);
+        if (quote != 0) {
+          normalized.append(c);
+          if (c == quote) {
+            quote = 0;
+          }
+          continue;
+        }
+
+        if (Character.isWhitespace(c)) {
+          pendingSpace = normalized.length() > 0;
+          continue;
+        }
+        if (pendingSpace && !isPunctuation(c) && !isPunctuation(normalized.charAt(normalized.length() - 1))) {
+          normalized.append(' ');
+        }
+        pendingSpace = false;
+
+        if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '[') {
+          quote = ']';
+        }
+        normalized.append(Character.toUpperCase(c));
+      }
+      return normalized.toString();
+    }
+
+    private static boolean isPunctuation(char c) {
+      return c == '(' || c == ')' || c == ',';
+    }
+
+    private static List<String> split(String definitions) {
+      List<String> parts = Lists.newArrayList();
+      int depth = 0;
+      char quote = 0;
+      int start = 0;
+      for (int i = 0; i != definitions.length(); ++i) {
+        char c = definitions.charAt(i);
+        if (quote != 0) {
+          if (c == quote) {
+            quote = 0;
+          }
+        } else if (c == '\'' || c == '"' || c == '`') {
+          quote = c;
+        } else if (c == '[') {
+          quote = ']';
+        } else if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (c == ',' && depth == 0) {
+          parts.add(definitions.substring(start, i).trim());
+          start = i + 1;
+        }
+      }
+      parts.add(definitions.substring(start).trim());
+      return parts;
+    }
+
+    private static String unquote(String name) {
+      if (name.length() >= 2 && "\"`[".indexOf(name.charAt(0)) >= 0) {
+        return name.substring(1, name.length() - 1);
+      }
+      return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      TableDefinition that = (TableDefinition) o;
+
+      return mNormalizedColumns.equals(that.mNormalizedColumns) &&
+          mConstraints.equals(that.mConstraints) &&
+          mOptions.equals(that.mOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(mNormalizedColumns, mConstraints, mOptions);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Index of the table columns, either advised by the {@link IndexAdvisor} or existing in the database.
+ */
+public final class TableIndex {
+  private static final Joiner UNDERSCORE_JOINER = Joiner.on('_');
+  private static final Joiner COMMA_JOINER = Joiner.on(", ");
+
+  public final String mName;
+  public final String mTable;
+  public final ImmutableList<String> mColumns;
+  public final boolean mUnique;
+
+  public TableIndex(String name, String table, List<String> columns, boolean unique) {
+    Preconditions.checkArgument(!columns.isEmpty(), "Index %s without columns", name);
+
+    mName = name;
+    mTable = table;
+    mColumns = ImmutableList.copyOf(columns);
+    mUnique = unique;
+  }
+
+  static TableIndex on(String table, List<String> columns) {
+    return new TableIndex("idx_" + table + "_" + UNDERSCORE_JOINER.join(columns), table, columns, false);
+  }
+
+  public String getCreateStatement() {
+    return "CREATE " + (mUnique ? "UNIQUE " : "") + "INDEX IF NOT EXISTS " + mName + " ON " + mTable + " (" + COMMA_JOINER.join(mColumns) + ")";
+  }
+
+  public String getDropStatement() {
+    return "DROP INDEX IF EXISTS " + mName;
+  }
+
+  /**
+   * Returns true if this index can be used instead of the given one, i.e. both are on the same table and the columns
+   * of the other index are the leading columns of this one.
+   */
+  public boolean covers(TableIndex other) {
+    return mTable.equals(other.mTable) &&
+        mColumns.size() >= other.mColumns.size() &&
+        mColumns.subList(0, other.mColumns.size()).equals(other.mColumns);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    TableIndex that = (TableIndex) o;
+
+    return mUnique == that.mUnique &&
+        Objects.equal(mName, that.mName) &&
+        Objects.equal(mTable, that.mTable) &&
+        Objects.equal(mColumns, that.mColumns);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(mName, mTable, mColumns, mUnique);
+  }
+
+  @Override
+  public String toString() {
+    return getCreateStatement();
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+import java.util.Map.Entry;
+
+/**
+ * Builds the SELECT statements joining the tables of the models along the relationships from the {@link ModelGraph}.
+ * <p/>
+ * Every model on the path after the first one is joined with the nearest preceding model it's related to. The models
+ * linked with many-to-many relationship are joined through the join model table; the polymorphic relationships add
+ * the type column condition. Every model may appear on the path only once, so the recursive relationships are not
+ * supported. If two models are related in more than one way, the relationship declared first is used.
+ * <p/>
+ * The recently generated statements are cached, so the same query yields the same string, which lets the database
+ * reuse the prepared statement.
+ * <p/>
+ * The joiner created with {@link #withFixedJoinOrder(ModelGraph)} uses CROSS JOIN, which SQLite query planner never
+ * reorders, so the tables are scanned in the order of the models on the path, e.g. the order picked by the
+ * {@link JoinOrderPlanner}.
+ */
+public class TableJoiner<TModel extends DatabaseModel> {
+  private static final Joiner COMMA_JOINER = Joiner.on(", ");
+  private static final int MAXIMUM_CACHED_QUERIES = 500;
+
+  private final ModelGraph<TModel> mGraph;
+  private final String mJoinKeyword;
+  private final Cache<QueryKey<TModel>, String> mQueries = CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_CACHED_QUERIES)
+      .build();
+
+  private TableJoiner(ModelGraph<TModel> graph, String joinKeyword) {
+    mGraph = graph;
+    mJoinKeyword = joinKeyword;
+  }
+
+  public static <TModel extends DatabaseModel> TableJoiner<TModel> from(ModelGraph<TModel> graph) {
+    return new TableJoiner<TModel>(graph, " JOIN ");
+  }
+
+  public static <TModel extends DatabaseModel> TableJoiner<TModel> withFixedJoinOrder(ModelGraph<TModel> graph) {
+    return new TableJoiner<TModel>(graph, " CROSS JOIN ");
+  }
+
+  /**
+   * Returns the FROM clause, without the FROM keyword, joining the tables of given models, e.g. for
+   * {@code SQLiteQueryBuilder.setTables()}.
+   */
+  public String tables(List<? extends TModel> path) {
+    return get(path, null);
+  }
+
+  /**
+   * Returns the SELECT statement with given projection, or all columns if the projection is empty, from the tables of
+   * given models.
+   */
+  public String query(List<? extends TModel> path, List<String> projection) {
+    return get(path, projection);
+  }
+
+  private String get(List<? extends TModel> path, List<String> projection) {
+    QueryKey<TModel> key = new QueryKey<TModel>(ImmutableList.<TModel>copyOf(path), projection != null ? ImmutableList.copyOf(projection) : null);
+
+    String query = mQueries.getIfPresent(key);
+    if (query == null) {
+      query = build(key.mPath, key.mProjection);
+      mQueries.put(key, query);
+    }
+    return query;
+  }
+
+  private String build(ImmutableList<TModel> path, ImmutableList<String> projection) {
+    Preconditions.checkArgument(!path.isEmpty(), "Cannot join empty list of models");
+    Preconditions.checkArgument(Sets.newHashSet(path).size() == path.size(), "Every model may be joined only once: %s", path);
+
+    StringBuilder builder = new StringBuilder();
+    if (projection != null) {
+      builder
+          .append("SELECT ")
+          .append(projection.isEmpty() ? "*" : COMMA_JOINER.join(projection))
+          .append(" FROM ");
+    }
+    builder.append(path.get(0).getTableName());
+
+    List<TModel> joinedModels = Lists.newArrayList(path.subList(0, 1));
+    for (TModel model : path.subList(1, path.size())) {
+      // the join model might have been already joined for the many-to-many relationship
+      if (!joinedModels.contains(model)) {
+        appendJoin(builder, joinedModels, model);
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private void appendJoin(StringBuilder builder, List<TModel> joinedModels, TModel model) {
+    for (TModel joinedModel : Lists.reverse(joinedModels)) {
+      for (Relationship<? extends TModel> relationship : Iterables.concat(mGraph.getOutgoingRelationships(joinedModel), mGraph.getIncomingRelationships(joinedModel))) {
+        String condition = JoinCondition.between(relationship, joinedModel, model);
+        if (condition != null) {
+          appendJoin(builder, model, condition);
+          joinedModels.add(model);
+          return;
+        }
+      }
+
+      for (ManyToManyRelationship<? extends TModel> relationship : mGraph.getManyToManyRelationships(joinedModel)) {
+        TModel joinModel = relationship.mModel;
+        if (joinedModels.contains(joinModel)) {
+          continue;
+        }
+
+        String leftCondition = JoinCondition.between(relationship.mLeftRelationship, joinedModel, joinModel);
+        String rightCondition = JoinCondition.between(relationship.mRightRelationship, joinModel, model);
+        if (leftCondition == null || rightCondition == null) {
+          leftCondition = JoinCondition.between(relationship.mRightRelationship, joinedModel, joinModel);
+          rightCondition = JoinCondition.between(relationship.mLeftRelationship, joinModel, model);
+        }
+
+        if (leftCondition != null && rightCondition != null) {
+          appendJoin(builder, joinModel, leftCondition);
+          appendJoin(builder, model, rightCondition);
+          joinedModels.add(joinModel);
+          joinedModels.add(model);
+          return;
+        }
+      }
+    }
+
+    throw new IllegalArgumentException("Model " + model + " is not related to any of " + joinedModels);
+  }
+
+  private void appendJoin(StringBuilder builder, DatabaseModel model, String condition) {
+    builder
+        .append(mJoinKeyword)
+        .append(model.getTableName())
+        .append(" ON ")
+        .append(condition);
+  }
+
+  private static String column(DatabaseModel model, String column) {
+    return model.getTableName() + "." + column;
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "''") + "'";
+  }
+
+  /**
+   * Condition for joining the table of the second model to the table of the first one, or null if the relationship
+   * doesn't link those two models.
+   */
+  private static class JoinCondition<TModel extends DatabaseModel> implements RelationshipVisitor<TModel> {
+    private final TModel mFirst;
+    private final TModel mSecond;
+    private String mCondition;
+
+    private JoinCondition(TModel first, TModel second) {
+      mFirst = first;
+      mSecond = second;
+    }
+
+    static <TModel extends DatabaseModel> String between(Relationship<? extends TModel> relationship, TModel first, TModel second) {
+      JoinCondition<TModel> condition = new JoinCondition<TModel>(first, second);
+      relationship.accept(condition);
+      return condition.mCondition;
+    }
+
+    private boolean links(TModel model, TModel otherModel) {
+      return (mFirst.equals(model) && mSecond.equals(otherModel)) || (mFirst.equals(otherModel) && mSecond.equals(model));
+    }
+
+    @Override
+    public void visit(OneToManyRelationship<? extends TModel> relationship) {
+      if (links(relationship.mModel, relationship.mReferencedModel)) {
+        mCondition = column(relationship.mModel, relationship.mLinkedByColumn) + " = " + column(relationship.mReferencedModel, relationship.mReferencedModelIdColumn);
+      }
+    }
+
+    @Override
+    public void visit(OneToOneRelationship<? extends TModel> relationship) {
+      if (links(relationship.mModel, relationship.mLinkedModel)) {
+        mCondition = column(relationship.mLinkedModel, relationship.mLinkedByColumn) + " = " + column(relationship.mModel, relationship.mParentModelIdColumn);
+      }
+    }
+
+    @Override
+    public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+    }
+
+    @Override
+    public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      for (Entry<String, ? extends TModel> entry : relationship.mPolymorphicModels.entrySet()) {
+        TModel polymorphicModel = entry.getValue();
+        if (links(relationship.mModel, polymorphicModel)) {
+          mCondition = column(relationship.mModel, relationship.mIdColumnName) + " = " + column(polymorphicModel, relationship.mPolymorphicModelIdColumn) +
+              " AND " + column(relationship.mModel, relationship.mTypeColumnName) + " = " + quote(entry.getKey());
+          return;
+        }
+      }
+    }
+  }
+
+  private static final class QueryKey<TModel> {
+    final ImmutableList<TModel> mPath;
+    final ImmutableList<String> mProjection;
+    private final int mHashCode;
+
+    QueryKey(ImmutableList<TModel> path, ImmutableList<String> projection) {
+      mPath = path;
+      mProjection = projection;
+      mHashCode = Objects.hashCode(path, projection);
+    }
+
+    @Override
+    public int hashCode() {
+      return mHashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      QueryKey<?> that = (QueryKey<?>) o;
+      return mHashCode == that.mHashCode &&
+          mPath.equals(that.mPath) &&
+          Objects.equal(mProjection, that.mProjection);
+    }
+  }
+}
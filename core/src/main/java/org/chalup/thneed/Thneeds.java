@@ -16,68 +16,24 @@ public final class Thneeds {
   }
 
   public static class RelationshipsSpecialCaseBuilder<TModel> {
-    private final Map<Relationship<? extends TModel>, RelationshipVisitor<? super TModel>> mCases = Maps.newHashMap();
-
-    public RelationshipsSpecialCaseBuilder(ModelGraph<? extends TModel> modelGraph, final RelationshipVisitor<? super TModel> visitor) {
-      modelGraph.accept(new RelationshipVisitor<TModel>() {
-        @Override
-        public void visit(OneToManyRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(OneToOneRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(ManyToManyRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(PolymorphicRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-      });
+    private final Map<Relationship<? extends TModel>, RelationshipVisitor<? super TModel>> mCases = Maps.newLinkedHashMap();
+
+    public RelationshipsSpecialCaseBuilder(ModelGraph<? extends TModel> modelGraph, RelationshipVisitor<? super TModel> visitor) {
+      putAll(modelGraph, visitor);
     }
 
-    public RelationshipsSpecialCaseBuilder<TModel> plus(ModelGraph<? extends TModel> subGraph, final RelationshipVisitor<? super TModel> visitor) {
-      subGraph.accept(new RelationshipVisitor<TModel>() {
-        @Override
-        public void visit(OneToManyRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(OneToOneRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(ManyToManyRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-
-        @Override
-        public void visit(PolymorphicRelationship<? extends TModel> relationship) {
-          mCases.put(relationship, visitor);
-        }
-      });
+    public RelationshipsSpecialCaseBuilder<TModel> plus(ModelGraph<? extends TModel> subGraph, RelationshipVisitor<? super TModel> visitor) {
+      putAll(subGraph, visitor);
 
       return this;
     }
 
+    private void putAll(ModelGraph<? extends TModel> graph, RelationshipVisitor<? super TModel> visitor) {
+      for (Relationship<? extends TModel> relationship : graph.getRelationships()) {
+        mCases.put(relationship, visitor);
+      }
+    }
+
     private static final RelationshipVisitor<Object> NO_OP_VISITOR = new RelationshipVisitor<Object>() {
       @Override
       public void visit(OneToManyRelationship<?> relationship) {
@@ -114,6 +70,37 @@ public final class Thneeds {
         entry.getKey().accept(entry.getValue());
       }
     }
+
+    /**
+     * Snapshot of the configured cases, which can be processed repeatedly without touching any map.
+     */
+    public CompiledRelationshipCases<TModel> compile() {
+      return new CompiledRelationshipCases<TModel>(mCases);
+    }
+  }
+
+  public static final class CompiledRelationshipCases<TModel> {
+    private final Relationship<?>[] mRelationships;
+    private final RelationshipVisitor<?>[] mVisitors;
+
+    private CompiledRelationshipCases(Map<Relationship<? extends TModel>, RelationshipVisitor<? super TModel>> cases) {
+      mRelationships = new Relationship<?>[cases.size()];
+      mVisitors = new RelationshipVisitor<?>[cases.size()];
+
+      int i = 0;
+      for (Entry<Relationship<? extends TModel>, RelationshipVisitor<? super TModel>> entry : cases.entrySet()) {
+        mRelationships[i] = entry.getKey();
+        mVisitors[i] = entry.getValue();
+        i++;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void process() {
+      for (int i = 0; i < mRelationships.length; i++) {
+        ((Relationship<? extends TModel>) mRelationships[i]).accept((RelationshipVisitor<? super TModel>) mVisitors[i]);
+      }
+    }
   }
 
   public static <TModel> ModelsSpecialCaseBuilder<TModel> with(ModelGraph<? extends TModel> modelGraph, ModelVisitor<? super TModel> visitor) {
@@ -121,15 +108,12 @@ public final class Thneeds {
   }
 
   public static class ModelsSpecialCaseBuilder<TModel> {
-    private final Map<TModel, ModelVisitor<? super TModel>> mCases = Maps.newHashMap();
-
-    public ModelsSpecialCaseBuilder(ModelGraph<? extends TModel> modelGraph, final ModelVisitor<? super TModel> visitor) {
-      modelGraph.accept(new ModelVisitor<TModel>() {
-        @Override
-        public void visit(TModel model) {
-          mCases.put(model, visitor);
-        }
-      });
+    private final Map<TModel, ModelVisitor<? super TModel>> mCases = Maps.newLinkedHashMap();
+
+    public ModelsSpecialCaseBuilder(ModelGraph<? extends TModel> modelGraph, ModelVisitor<? super TModel> visitor) {
+      for (TModel model : modelGraph.getModels()) {
+        mCases.put(model, visitor);
+      }
     }
 
     public ModelsSpecialCaseBuilder<TModel> plus(List<? extends TModel> models, final ModelVisitor<? super TModel> visitor) {
@@ -157,5 +141,36 @@ public final class Thneeds {
         entry.getValue().visit(entry.getKey());
       }
     }
+
+    /**
+     * Snapshot of the configured cases, which can be processed repeatedly without touching any map.
+     */
+    public CompiledModelCases<TModel> compile() {
+      return new CompiledModelCases<TModel>(mCases);
+    }
+  }
+
+  public static final class CompiledModelCases<TModel> {
+    private final Object[] mModels;
+    private final ModelVisitor<?>[] mVisitors;
+
+    private CompiledModelCases(Map<TModel, ModelVisitor<? super TModel>> cases) {
+      mModels = new Object[cases.size()];
+      mVisitors = new ModelVisitor<?>[cases.size()];
+
+      int i = 0;
+      for (Entry<TModel, ModelVisitor<? super TModel>> entry : cases.entrySet()) {
+        mModels[i] = entry.getKey();
+        mVisitors[i] = entry.getValue();
+        i++;
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void process() {
+      for (int i = 0; i < mModels.length; i++) {
+        ((ModelVisitor<? super TModel>) mVisitors[i]).visit((TModel) mModels[i]);
+      }
+    }
   }
 }
\ No newline at end of file
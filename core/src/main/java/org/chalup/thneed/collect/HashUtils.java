@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.collect;
+
+final class HashUtils {
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private HashUtils() {
+  }
+
+  /**
+   * Spreads the bits of the key, so the sequential ids don't form long runs of occupied slots.
+   */
+  static int mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+  /**
+   * Power of two capacity, which keeps the load factor under 3/4 for the expected number of entries.
+   */
+  static int capacityFor(int expectedSize) {
+    int capacity = 4;
+    while (capacity < MAX_CAPACITY && resizeThreshold(capacity) < expectedSize) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  static int resizeThreshold(int capacity) {
+    return capacity - (capacity >>> 2) - 1;
+  }
+}
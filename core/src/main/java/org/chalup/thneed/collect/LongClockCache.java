@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.collect;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache with primitive long keys and non-null values, evicting the entries with the CLOCK algorithm: every
+ * access marks the entry, and the clock hand sweeping the table spares the marked entries once. The entries live in
+ * a single open addressing table sized for the capacity, so the cache doesn't allocate after construction.
+ */
+public final class LongClockCache<V> {
+  private final int mCapacity;
+  private final long[] mKeys;
+  private final Object[] mValues;
+  private final boolean[] mReferenced;
+  private final int mMask;
+  private int mSize;
+  private int mHand;
+
+  public LongClockCache(int capacity) {
+    Preconditions.checkArgument(capacity > 0, "Capacity has to be positive");
+
+    mCapacity = capacity;
+    int tableSize = HashUtils.capacityFor(capacity);
+    mKeys = new long[tableSize];
+    mValues = new Object[tableSize];
+    mReferenced = new boolean[tableSize];
+    mMask = tableSize - 1;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public int capacity() {
+    return mCapacity;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    int slot = find(key);
+    if (slot < 0) {
+      return null;
+    }
+    mReferenced[slot] = true;
+    return (V) mValues[slot];
+  }
+
+  /**
+   * Associates the value with the key, evicting other entry if the cache is full.
+   */
+  public void put(long key, V value) {
+    Preconditions.checkNotNull(value);
+
+    int slot = HashUtils.mix(key) & mMask;
+    for (; mValues[slot] != null; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        mValues[slot] = value;
+        mReferenced[slot] = true;
+        return;
+      }
+    }
+
+    if (mSize == mCapacity) {
+      evict();
+      put(key, value);
+      return;
+    }
+
+    mKeys[slot] = key;
+    mValues[slot] = value;
+    mReferenced[slot] = false;
+    mSize++;
+  }
+
+  /**
+   * Removes the entry for the key and returns the removed value or null.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    int slot = find(key);
+    if (slot < 0) {
+      return null;
+    }
+
+    V previous = (V) mValues[slot];
+    shiftBack(slot);
+    mSize--;
+    return previous;
+  }
+
+  public void clear() {
+    Arrays.fill(mValues, null);
+    Arrays.fill(mReferenced, false);
+    mSize = 0;
+  }
+
+  private int find(long key) {
+    for (int slot = HashUtils.mix(key) & mMask; mValues[slot] != null; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private void evict() {
+    while (true) {
+      int slot = mHand;
+      mHand = (mHand + 1) & mMask;
+
+      if (mValues[slot] == null) {
+        continue;
+      }
+      if (mReferenced[slot]) {
+        mReferenced[slot] = false;
+        continue;
+      }
+
+      shiftBack(slot);
+      mSize--;
+      return;
+    }
+  }
+
+  private void shiftBack(int freedSlot) {
+    int slot = freedSlot;
+    while (true) {
+      slot = (slot + 1) & mMask;
+      if (mValues[slot] == null) {
+        break;
+      }
+
+      int idealSlot = HashUtils.mix(mKeys[slot]) & mMask;
+      // move the entry if its ideal slot is not in the cyclic range (freedSlot, slot]
+      if (((slot - idealSlot) & mMask) >= ((slot - freedSlot) & mMask)) {
+        mKeys[freedSlot] = mKeys[slot];
+        mValues[freedSlot] = mValues[slot];
+        mReferenced[freedSlot] = mReferenced[slot];
+        freedSlot = slot;
+      }
+    }
+    mValues[freedSlot] = null;
+    mReferenced[freedSlot] = false;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.collect;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive long keys and values, which avoids boxing and allocating the entries. Uses
+ * linear probing with backward shift deletion.
+ */
+public final class LongLongHashMap {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] mKeys;
+  private long[] mValues;
+  private boolean[] mUsed;
+  private int mSize;
+  private int mMask;
+  private int mResizeThreshold;
+
+  public LongLongHashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongLongHashMap(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size %s", expectedSize);
+    allocate(HashUtils.capacityFor(expectedSize));
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public boolean containsKey(long key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Returns the value associated with the key or the default value.
+   */
+  public long get(long key, long defaultValue) {
+    int slot = find(key);
+    return slot >= 0 ? mValues[slot] : defaultValue;
+  }
+
+  /**
+   * Associates the value with the key and returns true if the key wasn't mapped before.
+   */
+  public boolean put(long key, long value) {
+    int slot = HashUtils.mix(key) & mMask;
+    for (; mUsed[slot]; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        mValues[slot] = value;
+        return false;
+      }
+    }
+
+    mKeys[slot] = key;
+    mValues[slot] = value;
+    mUsed[slot] = true;
+    if (++mSize > mResizeThreshold) {
+      rehash(mKeys.length * 2);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the mapping for the key and returns true if the key was mapped.
+   */
+  public boolean remove(long key) {
+    int slot = find(key);
+    if (slot < 0) {
+      return false;
+    }
+    shiftBack(slot);
+    mSize--;
+    return true;
+  }
+
+  public void clear() {
+    Arrays.fill(mUsed, false);
+    mSize = 0;
+  }
+
+  /**
+   * Returns the keys in unspecified order.
+   */
+  public long[] keys() {
+    long[] keys = new long[mSize];
+    int count = 0;
+    for (int slot = 0; slot != mKeys.length; ++slot) {
+      if (mUsed[slot]) {
+        keys[count++] = mKeys[slot];
+      }
+    }
+    return keys;
+  }
+
+  private int find(long key) {
+    for (int slot = HashUtils.mix(key) & mMask; mUsed[slot]; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private void shiftBack(int freedSlot) {
+    int slot = freedSlot;
+    while (true) {
+      slot = (slot + 1) & mMask;
+      if (!mUsed[slot]) {
+        break;
+      }
+
+      int idealSlot = HashUtils.mix(mKeys[slot]) & mMask;
+      // move the entry if its ideal slot is not in the cyclic range (freedSlot, slot]
+      if (((slot - idealSlot) & mMask) >= ((slot - freedSlot) & mMask)) {
+        mKeys[freedSlot] = mKeys[slot];
+        mValues[freedSlot] = mValues[slot];
+        freedSlot = slot;
+      }
+    }
+    mUsed[freedSlot] = false;
+  }
+
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    mValues = new long[capacity];
+    mUsed = new boolean[capacity];
+    mMask = capacity - 1;
+    mResizeThreshold = HashUtils.resizeThreshold(capacity);
+  }
+
+  private void rehash(int capacity) {
+    long[] keys = mKeys;
+    long[] values = mValues;
+    boolean[] used = mUsed;
+    allocate(capacity);
+
+    for (int i = 0; i != keys.length; ++i) {
+      if (used[i]) {
+        int slot = HashUtils.mix(keys[i]) & mMask;
+        while (mUsed[slot]) {
+          slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = keys[i];
+        mValues[slot] = values[i];
+        mUsed[slot] = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.collect;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map with primitive long keys and non-null values, which avoids boxing the keys and allocating
+ * the entries. Uses linear probing with backward shift deletion.
+ */
+public final class LongObjectHashMap<V> {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private long[] mKeys;
+  private Object[] mValues;
+  private int mSize;
+  private int mMask;
+  private int mResizeThreshold;
+
+  public LongObjectHashMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongObjectHashMap(int expectedSize) {
+    Preconditions.checkArgument(expectedSize >= 0, "Negative expected size %s", expectedSize);
+    allocate(HashUtils.capacityFor(expectedSize));
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    for (int slot = HashUtils.mix(key) & mMask; mValues[slot] != null; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        return (V) mValues[slot];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Associates the value with the key and returns the previous value or null.
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    Preconditions.checkNotNull(value);
+
+    int slot = HashUtils.mix(key) & mMask;
+    for (; mValues[slot] != null; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        V previous = (V) mValues[slot];
+        mValues[slot] = value;
+        return previous;
+      }
+    }
+
+    mKeys[slot] = key;
+    mValues[slot] = value;
+    if (++mSize > mResizeThreshold) {
+      rehash(mValues.length * 2);
+    }
+    return null;
+  }
+
+  /**
+   * Removes the mapping for the key and returns the removed value or null.
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    for (int slot = HashUtils.mix(key) & mMask; mValues[slot] != null; slot = (slot + 1) & mMask) {
+      if (mKeys[slot] == key) {
+        V previous = (V) mValues[slot];
+        shiftBack(slot);
+        mSize--;
+        return previous;
+      }
+    }
+    return null;
+  }
+
+  public void clear() {
+    Arrays.fill(mValues, null);
+    mSize = 0;
+  }
+
+  /**
+   * Returns the keys in unspecified order.
+   */
+  public long[] keys() {
+    long[] keys = new long[mSize];
+    int count = 0;
+    for (int slot = 0; slot != mValues.length; ++slot) {
+      if (mValues[slot] != null) {
+        keys[count++] = mKeys[slot];
+      }
+    }
+    return keys;
+  }
+
+  private void shiftBack(int freedSlot) {
+    int slot = freedSlot;
+    while (true) {
+      slot = (slot + 1) & mMask;
+      if (mValues[slot] == null) {
+        break;
+      }
+
+      int idealSlot = HashUtils.mix(mKeys[slot]) & mMask;
+      // move the entry if its ideal slot is not in the cyclic range (freedSlot, slot]
+      if (((slot - idealSlot) & mMask) >= ((slot - freedSlot) & mMask)) {
+        mKeys[freedSlot] = mKeys[slot];
+        mValues[freedSlot] = mValues[slot];
+        freedSlot = slot;
+      }
+    }
+    mValues[freedSlot] = null;
+  }
+
+  private void allocate(int capacity) {
+    mKeys = new long[capacity];
+    mValues = new Object[capacity];
+    mMask = capacity - 1;
+    mResizeThreshold = HashUtils.resizeThreshold(capacity);
+  }
+
+  private void rehash(int capacity) {
+    long[] keys = mKeys;
+    Object[] values = mValues;
+    allocate(capacity);
+
+    for (int i = 0; i != values.length; ++i) {
+      if (values[i] != null) {
+        int slot = HashUtils.mix(keys[i]) & mMask;
+        while (mValues[slot] != null) {
+          slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = keys[i];
+        mValues[slot] = values[i];
+      }
+    }
+  }
+}
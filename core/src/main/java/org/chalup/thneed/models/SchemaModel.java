@@ -0,0 +1,5 @@
+package org.chalup.thneed.models;
+
+public interface SchemaModel {
+  String getCreateTableStatement();
+}
\ No newline at end of file
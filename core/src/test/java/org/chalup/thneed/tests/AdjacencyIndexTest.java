@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.Relationship;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class AdjacencyIndexTest {
+
+  @Test
+  public void shouldIndexOneToManyRelationshipsOnBothEnds() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    assertThat(graph.getOutgoingRelationships(DEAL)).hasSize(1);
+    assertThat(graph.getIncomingRelationships(DEAL)).isEmpty();
+
+    assertThat(graph.getOutgoingRelationships(CONTACT)).isEmpty();
+    assertThat(graph.getIncomingRelationships(CONTACT)).hasSize(1);
+
+    Relationship<? extends ModelInterface> relationship = graph.getIncomingRelationships(CONTACT).get(0);
+    assertThat(relationship).isInstanceOf(OneToManyRelationship.class);
+    assertThat(graph.getOutgoingRelationships(DEAL)).isEqualTo(ImmutableList.<Relationship<? extends ModelInterface>>of(relationship));
+  }
+
+  @Test
+  public void shouldIndexPolymorphicRelationshipForEveryPolymorphicModel() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+        .build();
+
+    assertThat(graph.getOutgoingRelationships(TASK)).hasSize(1);
+    assertThat(graph.getOutgoingRelationships(TASK).get(0)).isInstanceOf(PolymorphicRelationship.class);
+
+    assertThat(graph.getIncomingRelationships(CONTACT)).hasSize(1);
+    assertThat(graph.getIncomingRelationships(DEAL)).hasSize(1);
+    assertThat(graph.getIncomingRelationships(LEAD)).hasSize(1);
+  }
+
+  @Test
+  public void shouldIndexManyToManyRelationshipsForBothLinkedModels() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(TAGGING)
+        .links(TAG).by(TAG_ID)
+        .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+        .build();
+
+    assertThat(graph.getManyToManyRelationships(TAG)).hasSize(1);
+    assertThat(graph.getManyToManyRelationships(CONTACT)).hasSize(1);
+    assertThat(graph.getManyToManyRelationships(DEAL)).hasSize(1);
+    assertThat(graph.getManyToManyRelationships(TAGGING)).isEmpty();
+
+    ManyToManyRelationship<? extends ModelInterface> relationship = graph.getManyToManyRelationships(TAG).get(0);
+    assertThat(relationship.mModel).isEqualTo(TAGGING);
+
+    // join model declares the many-to-many relationship and both of its sides
+    assertThat(graph.getOutgoingRelationships(TAGGING)).hasSize(3);
+    assertThat(graph.getIncomingRelationships(TAG)).hasSize(1);
+  }
+
+  @Test
+  public void shouldReturnEmptyListsForModelsWithoutRelationships() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(TASK)
+        .build();
+
+    assertThat(graph.getOutgoingRelationships(TASK)).isEmpty();
+    assertThat(graph.getIncomingRelationships(TASK)).isEmpty();
+    assertThat(graph.getManyToManyRelationships(TASK)).isEmpty();
+    assertThat(graph.getOutgoingRelationships(LEAD)).isEmpty();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.BulkImporter;
+import org.chalup.thneed.ImportWriter;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RowParser;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class BulkImporterTest {
+  private final ModelGraph<ModelInterface> mGraph = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TAG).groupsOther().by(ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  private final ExecutorService mExecutor = Executors.newFixedThreadPool(2);
+
+  @After
+  public void tearDown() throws Exception {
+    mExecutor.shutdownNow();
+  }
+
+  @Test
+  public void shouldInsertReferencedRowsFirst() throws Exception {
+    RecordingWriter writer = new RecordingWriter();
+
+    BulkImporter.from(mGraph).run(new MapParser(ImmutableMap.<ModelInterface, List<Map<String, Long>>>of(
+        TAGGING, rows(row(_ID, 1L, TAG_ID, 1L, TAGGABLE_ID, 1L)),
+        DEAL, rows(row(_ID, 1L, CONTACT_ID, 1L)),
+        CONTACT, rows(row(_ID, 1L)),
+        TAG, rows(row(_ID, 1L))
+    )), mExecutor, writer);
+
+    List<String> inserts = writer.getInserts();
+    assertThat(inserts).hasSize(4);
+    assertThat(inserts.indexOf("contacts")).isLessThan(inserts.indexOf("deals"));
+    assertThat(inserts.indexOf("deals")).isLessThan(inserts.indexOf("taggings"));
+    assertThat(inserts.indexOf("tags")).isLessThan(inserts.indexOf("taggings"));
+  }
+
+  @Test
+  public void shouldSplitInsertsIntoTransactions() throws Exception {
+    RecordingWriter writer = new RecordingWriter();
+
+    BulkImporter.from(mGraph).withTransactionSize(2).run(new MapParser(ImmutableMap.<ModelInterface, List<Map<String, Long>>>of(
+        CONTACT, rows(row(_ID, 1L), row(_ID, 2L), row(_ID, 3L), row(_ID, 4L), row(_ID, 5L))
+    )), mExecutor, writer);
+
+    assertThat(writer.mLog).containsExactly(
+        "BEGIN", "INSERT contacts", "INSERT contacts", "COMMIT",
+        "BEGIN", "INSERT contacts", "INSERT contacts", "COMMIT",
+        "BEGIN", "INSERT contacts", "COMMIT"
+    );
+  }
+
+  @Test
+  public void shouldDeferRecursiveReferences() throws Exception {
+    RecordingWriter writer = new RecordingWriter();
+
+    BulkImporter.from(mGraph).run(new MapParser(ImmutableMap.<ModelInterface, List<Map<String, Long>>>of(
+        TAG, rows(row(_ID, 2L, ID, 1L), row(_ID, 1L), row(_ID, 3L, ID, 2L))
+    )), mExecutor, writer);
+
+    assertThat(writer.mLog).containsExactly(
+        "BEGIN",
+        "INSERT tags WITHOUT id",
+        "INSERT tags WITHOUT id",
+        "INSERT tags WITHOUT id",
+        "UPDATE tags SET id = 1 WHERE _id = 2",
+        "UPDATE tags SET id = 2 WHERE _id = 3",
+        "COMMIT"
+    );
+  }
+
+  @Test
+  public void shouldRollbackCurrentTransactionWhenParsingFails() throws Exception {
+    RecordingWriter writer = new RecordingWriter();
+
+    try {
+      BulkImporter.from(mGraph).withTransactionSize(1).run(new RowParser<ModelInterface, Map<String, Long>>() {
+        @Override
+        public List<Map<String, Long>> parse(ModelInterface model) throws Exception {
+          if (model == DEAL) {
+            throw new IllegalStateException();
+          }
+          return model == CONTACT ? rows(row(_ID, 1L), row(_ID, 2L)) : Collections.<Map<String, Long>>emptyList();
+        }
+      }, mExecutor, writer);
+      fail("Expected parsing failure");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+    }
+
+    assertThat(writer.mLog).containsExactly(
+        "BEGIN", "INSERT contacts", "COMMIT",
+        "BEGIN", "INSERT contacts", "ROLLBACK"
+    );
+  }
+
+  @SafeVarargs
+  private static List<Map<String, Long>> rows(Map<String, Long>... rows) {
+    ImmutableList.Builder<Map<String, Long>> builder = ImmutableList.builder();
+    for (Map<String, Long> row : rows) {
+      builder.add(row);
+    }
+    return builder.build();
+  }
+
+  private static Map<String, Long> row(Object... keysAndValues) {
+    Map<String, Long> row = Maps.newHashMap();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      row.put((String) keysAndValues[i], (Long) keysAndValues[i + 1]);
+    }
+    return row;
+  }
+
+  private static class MapParser implements RowParser<ModelInterface, Map<String, Long>> {
+    private final Map<ModelInterface, List<Map<String, Long>>> mRows;
+
+    MapParser(Map<ModelInterface, List<Map<String, Long>>> rows) {
+      mRows = rows;
+    }
+
+    @Override
+    public List<Map<String, Long>> parse(ModelInterface model) throws Exception {
+      List<Map<String, Long>> rows = mRows.get(model);
+      return rows != null ? rows : Collections.<Map<String, Long>>emptyList();
+    }
+  }
+
+  private static class RecordingWriter implements ImportWriter<ModelInterface, Map<String, Long>> {
+    final List<String> mLog = Lists.newArrayList();
+    private boolean mSuccessful;
+    private long mNextRowId = 1;
+
+    List<String> getInserts() {
+      List<String> inserts = Lists.newArrayList();
+      for (String entry : mLog) {
+        if (entry.startsWith("INSERT ")) {
+          inserts.add(entry.split(" ")[1]);
+        }
+      }
+      return inserts;
+    }
+
+    @Override
+    public void beginTransaction() {
+      mLog.add("BEGIN");
+      mSuccessful = false;
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+      mSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+      mLog.add(mSuccessful ? "COMMIT" : "ROLLBACK");
+    }
+
+    @Override
+    public long insert(ModelInterface model, Map<String, Long> row, String deferredColumn) {
+      mLog.add("INSERT " + model.getTableName() + (deferredColumn != null ? " WITHOUT " + deferredColumn : ""));
+      return mNextRowId++;
+    }
+
+    @Override
+    public void update(ModelInterface model, String idColumn, long id, String column, long value) {
+      mLog.add("UPDATE " + model.getTableName() + " SET " + column + " = " + value + " WHERE " + idColumn + " = " + id);
+    }
+
+    @Override
+    public boolean isNull(Map<String, Long> row, String column) {
+      return row.get(column) == null;
+    }
+
+    @Override
+    public long getLong(Map<String, Long> row, String column) {
+      return row.get(column);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.DatabaseSchema;
+import org.chalup.thneed.HierarchyQueries;
+import org.chalup.thneed.IndexAdvisor;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.List;
+
+public class DatabaseSchemaTest {
+  private final ModelGraph<ModelInterface> mGraph = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TAG).groupsOther().by(ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  @Test
+  public void shouldCreateReferencedTablesFirst() throws Exception {
+    List<String> statements = DatabaseSchema.from(mGraph).getStatements();
+
+    int contacts = statements.indexOf(CONTACT.getCreateTableStatement());
+    int deals = statements.indexOf(DEAL.getCreateTableStatement());
+    int tags = statements.indexOf(TAG.getCreateTableStatement());
+    int taggings = statements.indexOf(TAGGING.getCreateTableStatement());
+
+    assertThat(contacts).isGreaterThanOrEqualTo(0).isLessThan(deals);
+    assertThat(deals).isLessThan(taggings);
+    assertThat(tags).isGreaterThanOrEqualTo(0).isLessThan(taggings);
+  }
+
+  @Test
+  public void shouldOrderTablesOfTheSameTierByName() throws Exception {
+    List<String> statements = DatabaseSchema.from(mGraph).getStatements();
+
+    assertThat(statements.subList(0, 2)).isEqualTo(ImmutableList.of(
+        CONTACT.getCreateTableStatement(),
+        TAG.getCreateTableStatement()));
+  }
+
+  @Test
+  public void shouldCreateIndexesAfterTables() throws Exception {
+    List<String> statements = DatabaseSchema.from(mGraph).getStatements();
+    List<String> indexStatements = IndexAdvisor.from(mGraph).getCreateStatements();
+
+    assertThat(statements).hasSize(mGraph.getModels().size() + indexStatements.size());
+    assertThat(statements.subList(mGraph.getModels().size(), statements.size())).isEqualTo(indexStatements);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldAppendClosureTablesOnRequest() throws Exception {
+    RecursiveModelRelationship<? extends ModelInterface> relationship = null;
+    for (Object candidate : mGraph.getOutgoingRelationships(TAG)) {
+      if (candidate instanceof RecursiveModelRelationship) {
+        relationship = (RecursiveModelRelationship<? extends ModelInterface>) candidate;
+      }
+    }
+    List<String> closureTableStatements = HierarchyQueries.<ModelInterface>of(relationship).getClosureTableStatements();
+
+    List<String> statements = DatabaseSchema.from(mGraph).withClosureTables().getStatements();
+
+    assertThat(statements.subList(statements.size() - closureTableStatements.size(), statements.size())).isEqualTo(closureTableStatements);
+    assertThat(DatabaseSchema.from(mGraph).getStatements()).doesNotContain(closureTableStatements.get(0));
+  }
+}
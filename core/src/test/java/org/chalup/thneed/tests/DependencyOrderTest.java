@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.CUSTOM_FIELD_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.LEAD_ID;
+import static org.chalup.thneed.tests.TestData.Models.CONTACT_DATA;
+import static org.chalup.thneed.tests.TestData.Models.CUSTOM_FIELD;
+import static org.chalup.thneed.tests.TestData.Models.CUSTOM_FIELD_VALUE;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.SUBJECT_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelVisitor;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class DependencyOrderTest {
+
+  private ExecutorService mExecutor;
+
+  @Before
+  public void init() {
+    mExecutor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    mExecutor.shutdownNow();
+  }
+
+  @Test
+  public void shouldPutReferencedModelsInEarlierTiers() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(LEAD).mayHave(CONTACT_DATA).linked().by(LEAD_ID)
+        .the(TASK).references(ImmutableList.of(DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+        .build();
+
+    ImmutableList<ImmutableSet<ModelInterface>> tiers = graph.getDependencyTiers();
+
+    assertThat(tiers).hasSize(3);
+    assertThat(tiers.get(0)).containsOnly(CONTACT, LEAD);
+    assertThat(tiers.get(1)).containsOnly(DEAL, CONTACT_DATA);
+    assertThat(tiers.get(2)).containsOnly(TASK);
+  }
+
+  @Test
+  public void shouldPutJoinModelsAfterLinkedModels() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(CUSTOM_FIELD_VALUE)
+        .links(CONTACT).by(SUBJECT_ID)
+        .with(CUSTOM_FIELD).by(CUSTOM_FIELD_ID)
+        .build();
+
+    ImmutableList<ImmutableSet<ModelInterface>> tiers = graph.getDependencyTiers();
+
+    assertThat(tiers).hasSize(2);
+    assertThat(tiers.get(0)).containsOnly(CONTACT, CUSTOM_FIELD);
+    assertThat(tiers.get(1)).containsOnly(CUSTOM_FIELD_VALUE);
+  }
+
+  @Test
+  public void shouldIgnoreRecursiveRelationships() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(CONTACT).groupsOther().by(CONTACT_ID)
+        .build();
+
+    assertThat(graph.getDependencyTiers()).hasSize(1);
+  }
+
+  @Test
+  public void shouldPutModelsDependingOnCycleAfterTheCycle() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CUSTOM_FIELD)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(CONTACT).references(DEAL).by("deal_id")
+        .the(TASK).references(DEAL).by("deal_id")
+        .the(LEAD).references(TASK).by("task_id")
+        .build();
+
+    ImmutableList<ImmutableSet<ModelInterface>> tiers = graph.getDependencyTiers();
+
+    assertThat(tiers).hasSize(3);
+    assertThat(tiers.get(0)).containsOnly(CUSTOM_FIELD, DEAL, CONTACT);
+    assertThat(tiers.get(1)).containsOnly(TASK);
+    assertThat(tiers.get(2)).containsOnly(LEAD);
+  }
+
+  @Test
+  public void shouldVisitModelsDependingOnCycleAfterTheWholeCycle() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CUSTOM_FIELD)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(CONTACT).references(DEAL).by("deal_id")
+        .the(TASK).references(DEAL).by("deal_id")
+        .build();
+
+    final List<ModelInterface> visitedModels = Collections.synchronizedList(Lists.<ModelInterface>newArrayList());
+
+    graph.acceptParallel(new ModelVisitor<ModelInterface>() {
+      @Override
+      public void visit(ModelInterface model) {
+        visitedModels.add(model);
+      }
+    }, mExecutor);
+
+    assertThat(visitedModels).hasSize(4);
+    assertThat(visitedModels.subList(0, 3)).containsOnly(CUSTOM_FIELD, DEAL, CONTACT);
+    assertThat(visitedModels.get(3)).isEqualTo(TASK);
+  }
+
+  @Test
+  public void shouldVisitModelsAfterReferencedModels() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(LEAD).references(CONTACT).by(CONTACT_ID)
+        .the(TASK).references(ImmutableList.of(DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+        .build();
+
+    final List<ModelInterface> visitedModels = Collections.synchronizedList(Lists.<ModelInterface>newArrayList());
+
+    graph.acceptParallel(new ModelVisitor<ModelInterface>() {
+      @Override
+      public void visit(ModelInterface model) {
+        visitedModels.add(model);
+      }
+    }, mExecutor);
+
+    assertThat(visitedModels).hasSize(4);
+    assertThat(visitedModels.get(0)).isEqualTo(CONTACT);
+    assertThat(visitedModels.subList(1, 3)).containsOnly(DEAL, LEAD);
+    assertThat(visitedModels.get(3)).isEqualTo(TASK);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldRethrowVisitorExceptions() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CONTACT)
+        .with(DEAL)
+        .build();
+
+    graph.acceptParallel(new ModelVisitor<ModelInterface>() {
+      @Override
+      public void visit(ModelInterface model) {
+        throw new IllegalStateException();
+      }
+    }, mExecutor);
+  }
+}
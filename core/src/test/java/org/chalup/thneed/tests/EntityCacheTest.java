@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.chalup.thneed.EntityCache;
+import org.chalup.thneed.ImportWriter;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class EntityCacheTest {
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .with(TAG)
+      .where()
+      .the(DEAL).references(ID).in(CONTACT).by(CONTACT_ID)
+      .build();
+
+  @Test
+  public void shouldUseDeclaredIdColumns() throws Exception {
+    assertThat(GRAPH.getIdColumn(CONTACT)).isEqualTo(ID);
+    assertThat(GRAPH.getIdColumn(DEAL)).isEqualTo(_ID);
+    assertThat(GRAPH.getIdColumn(TAG)).isEqualTo(_ID);
+  }
+
+  @Test
+  public void shouldKeepSeparateRegionsForModels() throws Exception {
+    EntityCache<ModelInterface, String> cache = EntityCache.<ModelInterface, String>builder(GRAPH)
+        .defaultCapacity(10)
+        .capacity(CONTACT, 1)
+        .build();
+
+    cache.put(CONTACT, 1, "contact 1");
+    cache.put(DEAL, 1, "deal 1");
+    cache.put(CONTACT, 2, "contact 2");
+
+    assertThat(cache.get(CONTACT, 1)).isNull();
+    assertThat(cache.get(CONTACT, 2)).isEqualTo("contact 2");
+    assertThat(cache.get(DEAL, 1)).isEqualTo("deal 1");
+  }
+
+  @Test
+  public void shouldEvictWrittenRows() throws Exception {
+    EntityCache<ModelInterface, String> cache = EntityCache.<ModelInterface, String>builder(GRAPH).build();
+    cache.put(CONTACT, 1, "contact 1");
+    cache.put(CONTACT, 2, "contact 2");
+    cache.put(DEAL, 7, "deal 7");
+    cache.put(DEAL, 8, "deal 8");
+    cache.put(TAG, 3, "tag 3");
+    cache.put(TAG, 4, "tag 4");
+
+    ImportWriter<ModelInterface, Map<String, Long>> writer = cache.evictingOn(new NoOpWriter());
+    writer.insert(CONTACT, ImmutableMap.of(ID, 1L), null);
+    writer.insert(DEAL, ImmutableMap.of(CONTACT_ID, 2L), null);
+    writer.update(TAG, _ID, 3, ID, 4);
+
+    assertThat(cache.get(CONTACT, 1)).isNull();
+    assertThat(cache.get(CONTACT, 2)).isEqualTo("contact 2");
+    assertThat(cache.get(DEAL, 7)).isNull();
+    assertThat(cache.get(DEAL, 8)).isEqualTo("deal 8");
+    assertThat(cache.get(TAG, 3)).isNull();
+    assertThat(cache.get(TAG, 4)).isEqualTo("tag 4");
+  }
+
+  private static class NoOpWriter implements ImportWriter<ModelInterface, Map<String, Long>> {
+    @Override
+    public void beginTransaction() {
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+    }
+
+    @Override
+    public void endTransaction() {
+    }
+
+    @Override
+    public long insert(ModelInterface model, Map<String, Long> row, String deferredColumn) {
+      return 7;
+    }
+
+    @Override
+    public void update(ModelInterface model, String idColumn, long id, String column, long value) {
+    }
+
+    @Override
+    public boolean isNull(Map<String, Long> row, String column) {
+      return row.get(column) == null;
+    }
+
+    @Override
+    public long getLong(Map<String, Long> row, String column) {
+      return row.get(column);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.ExportPlan;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ExportPlanTest {
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  @Test
+  public void shouldExportOwnedAndReferencedModels() throws Exception {
+    List<ModelInterface> models = Lists.newArrayList();
+    for (ExportPlan.Step<ModelInterface> step : ExportPlan.from(GRAPH, DEAL).getSteps()) {
+      models.add(step.mModel);
+    }
+
+    assertThat(models.get(0)).isEqualTo(DEAL);
+    assertThat(models).containsOnly(DEAL, CONTACT, TASK, TAGGING, TAG);
+    assertThat(models.indexOf(TAGGING)).isLessThan(models.indexOf(TAG));
+  }
+
+  @Test
+  public void shouldNotDescendFromReferencedModels() throws Exception {
+    List<ModelInterface> models = Lists.newArrayList();
+    for (ExportPlan.Step<ModelInterface> step : ExportPlan.from(GRAPH, TASK).getSteps()) {
+      models.add(step.mModel);
+    }
+
+    assertThat(models).containsOnly(TASK, CONTACT, DEAL, LEAD);
+  }
+
+  @Test
+  public void shouldBuildKeysetPaginatedSemiJoinQueries() throws Exception {
+    ExportPlan<ModelInterface> plan = ExportPlan.from(GRAPH, DEAL);
+    ImmutableList<ExportPlan.Step<ModelInterface>> steps = plan.getSteps();
+
+    assertThat(steps.get(0).getPageQuery(100)).isEqualTo(
+        "SELECT * FROM deals WHERE deals._id = ?1 AND deals._id > ?2 ORDER BY deals._id LIMIT 100");
+
+    ExportPlan.Step<ModelInterface> tags = null;
+    for (ExportPlan.Step<ModelInterface> step : steps) {
+      if (step.mModel == TAG) {
+        tags = step;
+      }
+    }
+    assertThat(plan.getSetupStatements()).containsExactly(
+        "CREATE TEMP TABLE thneed_export_0 AS SELECT deals._id FROM deals WHERE deals._id = ?1",
+        "CREATE TEMP TABLE thneed_export_1 AS SELECT taggings._id FROM taggings " +
+            "WHERE taggings.taggable_type = 'Deal' AND taggings.taggable_id IN thneed_export_0");
+    assertThat(tags.getPageQuery(100)).isEqualTo(
+        "SELECT * FROM tags WHERE tags._id IN (" +
+            "SELECT taggings.tag_id FROM taggings WHERE taggings._id IN thneed_export_1) " +
+            "AND tags._id > ?2 ORDER BY tags._id LIMIT 100");
+  }
+
+  @Test
+  public void shouldExportModelsOwnedThroughOtherOwnedModels() throws Exception {
+    List<ModelInterface> models = Lists.newArrayList();
+    for (ExportPlan.Step<ModelInterface> step : ExportPlan.from(GRAPH, CONTACT).getSteps()) {
+      models.add(step.mModel);
+    }
+
+    assertThat(models).containsOnly(CONTACT, DEAL, TASK, TAGGING, TAG);
+  }
+
+  @Test
+  public void shouldSelectRowsReachedByAnyPathInSingleStep() throws Exception {
+    ExportPlan<ModelInterface> plan = ExportPlan.from(GRAPH, CONTACT);
+    ExportPlan.Step<ModelInterface> tags = null;
+    for (ExportPlan.Step<ModelInterface> step : plan.getSteps()) {
+      if (step.mModel == TAG) {
+        tags = step;
+      }
+    }
+
+    assertThat(plan.getSetupStatements()).containsExactly(
+        "CREATE TEMP TABLE thneed_export_0 AS SELECT contacts._id FROM contacts WHERE contacts._id = ?1",
+        "CREATE TEMP TABLE thneed_export_1 AS SELECT deals._id FROM deals WHERE deals.contact_id IN thneed_export_0",
+        "CREATE TEMP TABLE thneed_export_2 AS SELECT taggings._id FROM taggings " +
+            "WHERE taggings.taggable_type = 'Contact' AND taggings.taggable_id IN thneed_export_0 OR " +
+            "taggings.taggable_type = 'Deal' AND taggings.taggable_id IN thneed_export_1");
+    assertThat(tags.getPageQuery(100)).isEqualTo(
+        "SELECT * FROM tags WHERE tags._id IN (" +
+            "SELECT taggings.tag_id FROM taggings WHERE taggings._id IN thneed_export_2) " +
+            "AND tags._id > ?2 ORDER BY tags._id LIMIT 100");
+  }
+
+  @Test
+  public void shouldDropEveryCreatedTemporaryTable() throws Exception {
+    ExportPlan<ModelInterface> plan = ExportPlan.from(GRAPH, CONTACT);
+
+    assertThat(plan.getCleanupStatements()).containsExactly(
+        "DROP TABLE IF EXISTS temp.thneed_export_0",
+        "DROP TABLE IF EXISTS temp.thneed_export_1",
+        "DROP TABLE IF EXISTS temp.thneed_export_2");
+  }
+
+  @Test
+  public void shouldGrowQueriesLinearlyWithRelationships() throws Exception {
+    int shallowStatementsLength = statementsLength(diamonds(8));
+    int deepStatementsLength = statementsLength(diamonds(12));
+
+    // with a separate condition for each path the statements would grow 16 times
+    assertThat(deepStatementsLength).isLessThan(2 * shallowStatementsLength);
+  }
+
+  /**
+   * Stacks the layers of two models, each referencing both models of the previous layer, on top of the root model, so
+   * the number of paths doubles with each layer.
+   */
+  private static ModelGraph<ModelInterface> diamonds(int layers) {
+    ModelInterface root = table("layer_0");
+    List<ModelInterface> previousLayer = ImmutableList.of(root);
+
+    ModelGraph.Builder.RelationshipAdder<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(root)
+        .where();
+    for (int layer = 1; layer <= layers; ++layer) {
+      List<ModelInterface> currentLayer = ImmutableList.of(table("layer_" + layer + "_a"), table("layer_" + layer + "_b"));
+      for (ModelInterface model : currentLayer) {
+        for (ModelInterface referencedModel : previousLayer) {
+          graph.the(model).references(referencedModel).by(referencedModel.getTableName() + "_id");
+        }
+      }
+      previousLayer = currentLayer;
+    }
+    return graph.build();
+  }
+
+  private static int statementsLength(ModelGraph<ModelInterface> graph) {
+    ExportPlan<ModelInterface> plan = ExportPlan.from(graph, graph.getModels().iterator().next());
+
+    int length = 0;
+    for (String statement : plan.getSetupStatements()) {
+      length += statement.length();
+    }
+    for (ExportPlan.Step<ModelInterface> step : plan.getSteps()) {
+      length += step.getPageQuery(100).length();
+    }
+    return length;
+  }
+
+  private static ModelInterface table(final String name) {
+    return new ModelInterface() {
+      @Override
+      public String getTableName() {
+        return name;
+      }
+
+      @Override
+      public String getCreateTableStatement() {
+        return "CREATE TABLE " + name + " (_id INTEGER PRIMARY KEY)";
+      }
+
+      @Override
+      public String toString() {
+        return name;
+      }
+    };
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.RowSource;
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory tables answering the single table {@code SELECT * ... WHERE column IN (...)} queries.
+ */
+class FakeRowSource implements RowSource<Map<String, Object>> {
+  private static final Pattern QUERY = Pattern.compile("SELECT \\* FROM (\\w+) WHERE \\w+\\.(\\w+) IN \\([?,]*\\)(?: AND \\w+\\.(\\w+) = '([^']*)')?");
+
+  private final ListMultimap<String, Map<String, Object>> mTables = ArrayListMultimap.create();
+  final List<String> mQueries = Lists.newArrayList();
+
+  void add(DatabaseModel model, Map<String, Object> row) {
+    mTables.put(model.getTableName(), row);
+  }
+
+  @Override
+  public List<Map<String, Object>> query(String sql, String[] selectionArgs) {
+    mQueries.add(sql);
+
+    Matcher matcher = QUERY.matcher(sql);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Unsupported query " + sql);
+    }
+
+    Set<String> keys = ImmutableSet.copyOf(selectionArgs);
+    List<Map<String, Object>> rows = Lists.newArrayList();
+    for (Map<String, Object> row : mTables.get(matcher.group(1))) {
+      if (keys.contains(String.valueOf(row.get(matcher.group(2)))) &&
+          (matcher.group(3) == null || matcher.group(4).equals(row.get(matcher.group(3))))) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  @Override
+  public boolean isNull(Map<String, Object> row, String column) {
+    return row.get(column) == null;
+  }
+
+  @Override
+  public long getLong(Map<String, Object> row, String column) {
+    return ((Number) row.get(column)).longValue();
+  }
+
+  @Override
+  public String getString(Map<String, Object> row, String column) {
+    return String.valueOf(row.get(column));
+  }
+}
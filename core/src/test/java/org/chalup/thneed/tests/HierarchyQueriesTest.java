@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.HierarchyQueries;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class HierarchyQueriesTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(TAG).groupsOther().by(TAG_ID)
+      .build();
+
+  @SuppressWarnings("unchecked")
+  private final HierarchyQueries<ModelInterface> mQueries = HierarchyQueries.of((RecursiveModelRelationship<ModelInterface>) GRAPH.getRelationships().get(0));
+
+  @Test
+  public void shouldBuildRecursiveSubtreeQuery() throws Exception {
+    assertThat(mQueries.getSubtreeQuery()).isEqualTo(
+        "WITH RECURSIVE subtree(id, depth) AS (" +
+            "SELECT _id, 0 FROM tags WHERE _id = ? " +
+            "UNION ALL " +
+            "SELECT tags._id, subtree.depth + 1 FROM tags JOIN subtree ON tags.tag_id = subtree.id) " +
+            "SELECT tags.* FROM tags JOIN subtree ON tags._id = subtree.id ORDER BY subtree.depth");
+  }
+
+  @Test
+  public void shouldBuildRecursiveAncestorsQuery() throws Exception {
+    assertThat(mQueries.getAncestorsQuery()).isEqualTo(
+        "WITH RECURSIVE ancestors(id, depth) AS (" +
+            "SELECT tag_id, 1 FROM tags WHERE _id = ? " +
+            "UNION ALL " +
+            "SELECT tags.tag_id, ancestors.depth + 1 FROM tags JOIN ancestors ON tags._id = ancestors.id) " +
+            "SELECT tags.* FROM tags JOIN ancestors ON tags._id = ancestors.id ORDER BY ancestors.depth");
+  }
+
+  @Test
+  public void shouldCreateClosureTableWithTriggers() throws Exception {
+    assertThat(mQueries.getClosureTableName()).isEqualTo("tags_closure");
+    assertThat(mQueries.getClosureTableStatements()).hasSize(5);
+    assertThat(mQueries.getClosureTableStatements().get(0)).startsWith("CREATE TABLE tags_closure ");
+    assertThat(mQueries.getClosureTableStatements().get(2)).startsWith("CREATE TRIGGER tags_closure_insert AFTER INSERT ON tags ");
+    assertThat(mQueries.getClosureTableStatements().get(3)).startsWith("CREATE TRIGGER tags_closure_move AFTER UPDATE OF tag_id ON tags ");
+    assertThat(mQueries.getClosureTableStatements().get(4)).startsWith("CREATE TRIGGER tags_closure_delete AFTER DELETE ON tags ");
+  }
+
+  @Test
+  public void shouldQueryClosureTable() throws Exception {
+    assertThat(mQueries.getClosureSubtreeQuery()).isEqualTo(
+        "SELECT tags.* FROM tags_closure JOIN tags ON tags._id = tags_closure.descendant_id " +
+            "WHERE tags_closure.ancestor_id = ? ORDER BY tags_closure.depth");
+    assertThat(mQueries.getClosureAncestorsQuery()).isEqualTo(
+        "SELECT tags.* FROM tags_closure JOIN tags ON tags._id = tags_closure.ancestor_id " +
+            "WHERE tags_closure.descendant_id = ? AND tags_closure.depth > 0 ORDER BY tags_closure.depth");
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.IdRemapper;
+import org.chalup.thneed.ImportWriter;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RemapWriter;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class IdRemapperTest {
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  @Test
+  public void shouldResolveMappedIdsInMemory() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(CONTACT, 1000, 1);
+
+    assertThat(remapper.getLocalId(CONTACT, 1000, -1)).isEqualTo(1);
+    assertThat(remapper.getLocalId(CONTACT, 1001, -1)).isEqualTo(-1);
+    assertThat(remapper.getLocalId(DEAL, 1000, -1)).isEqualTo(-1);
+
+    remapper.clear();
+    assertThat(remapper.getLocalId(CONTACT, 1000, -1)).isEqualTo(-1);
+  }
+
+  @Test
+  public void shouldRewriteReferencesWithSingleUpdatePerRelationship() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(CONTACT, 1000, 1);
+    remapper.map(DEAL, 2000, 1);
+    remapper.map(DEAL, 2001, 2);
+    remapper.reference(DEAL, 1, CONTACT_ID, 1000);
+    remapper.reference(DEAL, 2, CONTACT_ID, 1000);
+    remapper.reference(TAGGING, 1, TAGGABLE_ID, 2001);
+
+    RecordingWriter writer = new RecordingWriter();
+    remapper.remap(writer);
+
+    assertThat(writer.mLog).containsExactly(
+        "BEGIN",
+        "DROP TABLE IF EXISTS temp.thneed_ids",
+        "CREATE TEMP TABLE thneed_ids (row_id INTEGER PRIMARY KEY, local_id INTEGER NOT NULL)",
+        "INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 1]",
+        "INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [2, 1]",
+        "UPDATE deals SET contact_id = (SELECT local_id FROM thneed_ids WHERE row_id = deals._id) WHERE _id IN (SELECT row_id FROM thneed_ids)",
+        "DELETE FROM thneed_ids",
+        "INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 2]",
+        "UPDATE taggings SET taggable_id = (SELECT local_id FROM thneed_ids WHERE row_id = taggings._id) WHERE _id IN (SELECT row_id FROM thneed_ids) AND taggable_type = 'Deal'",
+        "DELETE FROM thneed_ids",
+        "DROP TABLE temp.thneed_ids",
+        "COMMIT"
+    );
+  }
+
+  @Test
+  public void shouldRewriteEveryReferenceOnlyOnce() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(CONTACT, 100, 1);
+    remapper.map(DEAL, 200, 1);
+    remapper.reference(DEAL, 1, CONTACT_ID, 100);
+    remapper.remap(new RecordingWriter());
+
+    // the first deal references the local contact 1, which is also the remote id of the second contact
+    remapper.map(CONTACT, 1, 2);
+    remapper.map(DEAL, 201, 2);
+    remapper.reference(DEAL, 2, CONTACT_ID, 1);
+
+    RecordingWriter writer = new RecordingWriter();
+    remapper.remap(writer);
+
+    assertThat(writer.mLog).containsSequence(
+        "INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [2, 2]",
+        "UPDATE deals SET contact_id = (SELECT local_id FROM thneed_ids WHERE row_id = deals._id) WHERE _id IN (SELECT row_id FROM thneed_ids)",
+        "DELETE FROM thneed_ids",
+        "DROP TABLE temp.thneed_ids"
+    );
+    assertThat(writer.mLog).doesNotContain("INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 2]");
+  }
+
+  @Test
+  public void shouldKeepReferencesToRowsNotMappedYet() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(DEAL, 200, 1);
+    remapper.reference(DEAL, 1, CONTACT_ID, 100);
+
+    RecordingWriter writer = new RecordingWriter();
+    remapper.remap(writer);
+    assertThat(writer.mLog).doesNotContain("INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 1]");
+
+    remapper.map(CONTACT, 100, 1);
+    writer = new RecordingWriter();
+    remapper.remap(writer);
+    assertThat(writer.mLog).contains("INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 1]");
+  }
+
+  @Test
+  public void shouldKeepReferencesAfterFailedRemap() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(CONTACT, 100, 1);
+    remapper.reference(DEAL, 1, CONTACT_ID, 100);
+
+    try {
+      remapper.remap(new RecordingWriter() {
+        @Override
+        public void execute(String sql, long... args) {
+          if (sql.startsWith("UPDATE")) {
+            throw new IllegalStateException("Update failed");
+          }
+          super.execute(sql, args);
+        }
+      });
+    } catch (IllegalStateException expected) {
+    }
+
+    RecordingWriter writer = new RecordingWriter();
+    remapper.remap(writer);
+    assertThat(writer.mLog).contains("INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [1, 1]");
+  }
+
+  @Test
+  public void shouldNotRewriteRowsWithoutPendingReferences() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    remapper.map(CONTACT, 1000, 1);
+    remapper.map(DEAL, 2000, 1);
+
+    RecordingWriter writer = new RecordingWriter();
+    remapper.remap(writer);
+
+    assertThat(writer.mLog).containsExactly(
+        "BEGIN",
+        "DROP TABLE IF EXISTS temp.thneed_ids",
+        "CREATE TEMP TABLE thneed_ids (row_id INTEGER PRIMARY KEY, local_id INTEGER NOT NULL)",
+        "DROP TABLE temp.thneed_ids",
+        "COMMIT"
+    );
+  }
+
+  @Test
+  public void shouldRecordRowsInsertedThroughWriter() throws Exception {
+    IdRemapper<ModelInterface> remapper = IdRemapper.from(GRAPH);
+    ImportWriter<ModelInterface, Map<String, Long>> writer = remapper.recordingOn(new SequenceWriter(), ID);
+
+    writer.insert(CONTACT, ImmutableMap.of(ID, 1000L), null);
+    writer.insert(CONTACT, ImmutableMap.of(ID, 1001L, _ID, 7L), null);
+    writer.insert(TAGGING, ImmutableMap.of(TAGGABLE_ID, 1001L), null);
+
+    assertThat(remapper.getLocalId(CONTACT, 1000, -1)).isEqualTo(1);
+    assertThat(remapper.getLocalId(CONTACT, 1001, -1)).isEqualTo(7);
+
+    RecordingWriter remapWriter = new RecordingWriter();
+    remapper.remap(remapWriter);
+    assertThat(remapWriter.mLog).containsSequence(
+        "INSERT OR REPLACE INTO thneed_ids (row_id, local_id) VALUES (?, ?) [3, 7]",
+        "UPDATE taggings SET taggable_id = (SELECT local_id FROM thneed_ids WHERE row_id = taggings._id) WHERE _id IN (SELECT row_id FROM thneed_ids) AND taggable_type = 'Contact'"
+    );
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAcceptNotReferencingColumns() throws Exception {
+    IdRemapper.from(GRAPH).reference(DEAL, 1, TAG_ID, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAcceptModelsOutsideOfGraph() throws Exception {
+    IdRemapper.from(GRAPH).map(TestData.Models.CUSTOM_FIELD, 1, 1);
+  }
+
+  private static class RecordingWriter implements RemapWriter {
+    final List<String> mLog = Lists.newArrayList();
+    private boolean mSuccessful;
+
+    @Override
+    public void beginTransaction() {
+      mLog.add("BEGIN");
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+      mSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+      mLog.add(mSuccessful ? "COMMIT" : "ROLLBACK");
+    }
+
+    @Override
+    public void execute(String sql, long... args) {
+      mLog.add(args.length == 0 ? sql : sql + " " + Arrays.toString(args));
+    }
+  }
+
+  private static class SequenceWriter implements ImportWriter<ModelInterface, Map<String, Long>> {
+    private long mNextRowId = 1;
+
+    @Override
+    public void beginTransaction() {
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+    }
+
+    @Override
+    public void endTransaction() {
+    }
+
+    @Override
+    public long insert(ModelInterface model, Map<String, Long> row, String deferredColumn) {
+      return mNextRowId++;
+    }
+
+    @Override
+    public void update(ModelInterface model, String idColumn, long id, String column, long value) {
+    }
+
+    @Override
+    public boolean isNull(Map<String, Long> row, String column) {
+      return row.get(column) == null;
+    }
+
+    @Override
+    public long getLong(Map<String, Long> row, String column) {
+      return row.get(column);
+    }
+  }
+}
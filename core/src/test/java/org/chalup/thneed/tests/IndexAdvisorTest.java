@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.CONTACT_DATA;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.IndexAdvisor;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.TableIndex;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class IndexAdvisorTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(CONTACT).mayHave(CONTACT_DATA).linked().by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .the(TAG).groupsOther().by(ID)
+      .build();
+
+  private final IndexAdvisor<ModelInterface> mAdvisor = IndexAdvisor.from(GRAPH);
+
+  @Test
+  public void shouldIndexEveryForeignKey() throws Exception {
+    assertThat(mAdvisor.getCreateStatements()).containsOnly(
+        "CREATE INDEX IF NOT EXISTS idx_deals_contact_id ON deals (contact_id)",
+        "CREATE INDEX IF NOT EXISTS idx_contact_datas_contact_id ON contact_datas (contact_id)",
+        "CREATE INDEX IF NOT EXISTS idx_tasks_taskable_type_taskable_id ON tasks (taskable_type, taskable_id)",
+        "CREATE INDEX IF NOT EXISTS idx_taggings_tag_id_taggable_type_taggable_id ON taggings (tag_id, taggable_type, taggable_id)",
+        "CREATE INDEX IF NOT EXISTS idx_taggings_taggable_type_taggable_id_tag_id ON taggings (taggable_type, taggable_id, tag_id)",
+        "CREATE INDEX IF NOT EXISTS idx_tags_id ON tags (id)"
+    );
+  }
+
+  @Test
+  public void shouldReportMissingIndexes() throws Exception {
+    IndexAdvisor.Report report = mAdvisor.compare(ImmutableList.of(
+        new TableIndex("deals_contact", "deals", ImmutableList.of(CONTACT_ID, "name"), false),
+        new TableIndex("tasks_type", "tasks", ImmutableList.of(TASKABLE_TYPE), false)
+    ));
+
+    assertThat(report.mMissing).hasSize(5);
+    for (TableIndex index : report.mMissing) {
+      assertThat(index.mTable).isNotEqualTo("deals");
+    }
+  }
+
+  @Test
+  public void shouldReportRedundantIndexes() throws Exception {
+    TableIndex composite = new TableIndex("tasks_type_id", "tasks", ImmutableList.of(TASKABLE_TYPE, TASKABLE_ID), false);
+    TableIndex prefix = new TableIndex("tasks_type", "tasks", ImmutableList.of(TASKABLE_TYPE), false);
+    TableIndex duplicate = new TableIndex("tasks_type_id_2", "tasks", ImmutableList.of(TASKABLE_TYPE, TASKABLE_ID), false);
+    TableIndex unique = new TableIndex("tasks_type_unique", "tasks", ImmutableList.of(TASKABLE_TYPE), true);
+
+    IndexAdvisor.Report report = mAdvisor.compare(ImmutableList.of(composite, prefix, duplicate, unique));
+
+    assertThat(report.mRedundant).containsOnly(prefix, duplicate);
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.JoinOrderPlanner;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelStatistics;
+import org.chalup.thneed.TableJoiner;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class JoinOrderPlannerTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .with(TAG)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .build();
+
+  private static final ModelStatistics<ModelInterface> STATISTICS = ModelStatistics.<ModelInterface>builder()
+      .rowCount(CONTACT, 1000000)
+      .rowCount(DEAL, 100)
+      .rowCount(TASK, 50000)
+      .distinctValues(TASK, TASKABLE_TYPE, 2)
+      .build();
+
+  private final JoinOrderPlanner<ModelInterface> mPlanner = JoinOrderPlanner.from(GRAPH, STATISTICS);
+
+  @Test
+  public void shouldDriveTheJoinFromTheSmallestTable() throws Exception {
+    assertThat(mPlanner.plan(ImmutableList.of(CONTACT, DEAL))).containsExactly(DEAL, CONTACT);
+  }
+
+  @Test
+  public void shouldJoinTheMostSelectiveTablesFirst() throws Exception {
+    assertThat(mPlanner.plan(ImmutableList.<ModelInterface>of(CONTACT, DEAL, TASK))).containsExactly(DEAL, TASK, CONTACT);
+  }
+
+  @Test
+  public void shouldUseDefaultsForModelsWithoutStatistics() throws Exception {
+    ModelStatistics<ModelInterface> statistics = ModelStatistics.<ModelInterface>builder()
+        .rowCount(DEAL, 1000000)
+        .build();
+
+    assertThat(JoinOrderPlanner.from(GRAPH, statistics).plan(ImmutableList.of(DEAL, CONTACT))).containsExactly(CONTACT, DEAL);
+  }
+
+  @Test
+  public void shouldProduceOrderForFixedOrderJoins() throws Exception {
+    TableJoiner<ModelInterface> joiner = TableJoiner.withFixedJoinOrder(GRAPH);
+
+    assertThat(joiner.tables(mPlanner.plan(ImmutableList.of(CONTACT, DEAL))))
+        .isEqualTo("deals CROSS JOIN contacts ON deals.contact_id = contacts._id");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnrelatedModels() throws Exception {
+    mPlanner.plan(ImmutableList.<ModelInterface>of(CONTACT, TAG));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.LEAD_ID;
+import static org.chalup.thneed.tests.TestData.Models.CONTACT_DATA;
+import static org.chalup.thneed.tests.TestData.Models.CUSTOM_FIELD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.TableJoiner;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class JoinPathTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .with(CUSTOM_FIELD)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(CONTACT).references(LEAD).by(LEAD_ID)
+      .the(CONTACT).mayHave(CONTACT_DATA).linked().by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  @Test
+  public void shouldFindPathThroughJoinModel() throws Exception {
+    assertThat(GRAPH.findJoinPath(TAG, DEAL)).containsExactly(TAG, TAGGING, DEAL);
+  }
+
+  @Test
+  public void shouldPreferCheaperRelationships() throws Exception {
+    // two plain foreign keys are cheaper than two polymorphic relationships through TASK
+    assertThat(GRAPH.findJoinPath(DEAL, LEAD)).containsExactly(DEAL, CONTACT, LEAD);
+    assertThat(GRAPH.findJoinPath(CONTACT_DATA, LEAD)).containsExactly(CONTACT_DATA, CONTACT, LEAD);
+  }
+
+  @Test
+  public void shouldReturnSingleModelPathForTheSameModel() throws Exception {
+    assertThat(GRAPH.findJoinPath(DEAL, DEAL)).containsExactly(DEAL);
+  }
+
+  @Test
+  public void shouldReturnEmptyPathForUnrelatedModels() throws Exception {
+    assertThat(GRAPH.findJoinPath(DEAL, CUSTOM_FIELD)).isEmpty();
+  }
+
+  @Test
+  public void shouldReturnPathUsableByTableJoiner() throws Exception {
+    TableJoiner<ModelInterface> joiner = TableJoiner.from(GRAPH);
+
+    assertThat(joiner.tables(GRAPH.findJoinPath(TAG, DEAL)))
+        .isEqualTo("tags JOIN taggings ON taggings.tag_id = tags._id JOIN deals ON taggings.taggable_id = deals._id AND taggings.taggable_type = 'Deal'");
+  }
+}
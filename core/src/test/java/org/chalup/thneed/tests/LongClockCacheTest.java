@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.collect.LongClockCache;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class LongClockCacheTest {
+
+  @Test
+  public void shouldPutAndGetValues() throws Exception {
+    LongClockCache<String> cache = new LongClockCache<String>(4);
+
+    cache.put(1, "one");
+    cache.put(-1, "minus one");
+    cache.put(1, "uno");
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get(1)).isEqualTo("uno");
+    assertThat(cache.get(-1)).isEqualTo("minus one");
+    assertThat(cache.get(2)).isNull();
+    assertThat(cache.remove(-1)).isEqualTo("minus one");
+    assertThat(cache.get(-1)).isNull();
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldSpareRecentlyAccessedEntries() throws Exception {
+    LongClockCache<String> cache = new LongClockCache<String>(3);
+    cache.put(1, "one");
+    cache.put(2, "two");
+    cache.put(3, "three");
+
+    cache.get(1);
+    cache.get(3);
+    cache.put(4, "four");
+
+    assertThat(cache.size()).isEqualTo(3);
+    assertThat(cache.get(1)).isEqualTo("one");
+    assertThat(cache.get(2)).isNull();
+    assertThat(cache.get(3)).isEqualTo("three");
+    assertThat(cache.get(4)).isEqualTo("four");
+  }
+
+  @Test
+  public void shouldNeverExceedCapacity() throws Exception {
+    LongClockCache<Long> cache = new LongClockCache<Long>(100);
+
+    Random random = new Random(42);
+    for (int i = 0; i != 100000; ++i) {
+      long key = random.nextInt(1000);
+      if (random.nextInt(4) == 0) {
+        cache.remove(key);
+      } else if (random.nextBoolean()) {
+        Long value = cache.get(key);
+        if (value != null) {
+          assertThat(value).isEqualTo(key);
+        }
+      } else {
+        cache.put(key, key);
+        assertThat(cache.get(key)).isEqualTo(key);
+      }
+      assertThat(cache.size()).isLessThanOrEqualTo(100);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.collect.LongLongHashMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongLongHashMapTest {
+
+  @Test
+  public void shouldPutAndGetValues() throws Exception {
+    LongLongHashMap map = new LongLongHashMap();
+
+    assertThat(map.put(1, 10)).isTrue();
+    assertThat(map.put(0, 0)).isTrue();
+    assertThat(map.put(Long.MIN_VALUE, -1)).isTrue();
+    assertThat(map.put(1, 11)).isFalse();
+
+    assertThat(map.size()).isEqualTo(3);
+    assertThat(map.get(1, -1)).isEqualTo(11);
+    assertThat(map.get(0, -1)).isEqualTo(0);
+    assertThat(map.get(Long.MIN_VALUE, 0)).isEqualTo(-1);
+    assertThat(map.get(2, -1)).isEqualTo(-1);
+    assertThat(map.containsKey(0)).isTrue();
+    assertThat(map.keys()).hasSize(3);
+  }
+
+  @Test
+  public void shouldBehaveLikeHashMap() throws Exception {
+    LongLongHashMap map = new LongLongHashMap();
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+
+    Random random = new Random(42);
+    for (int i = 0; i != 100000; ++i) {
+      long key = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key)).isEqualTo(expected.remove(key) != null);
+      } else {
+        assertThat(map.put(key, i)).isEqualTo(expected.put(key, (long) i) == null);
+      }
+    }
+
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+      assertThat(map.get(entry.getKey(), -1)).isEqualTo(entry.getValue());
+    }
+  }
+
+  @Test
+  public void shouldClear() throws Exception {
+    LongLongHashMap map = new LongLongHashMap(1);
+    for (long key = 0; key != 100; ++key) {
+      map.put(key, key);
+    }
+    map.clear();
+
+    assertThat(map.isEmpty()).isTrue();
+    assertThat(map.containsKey(0)).isFalse();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.collect.LongObjectHashMap;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongObjectHashMapTest {
+
+  @Test
+  public void shouldPutAndGetValues() throws Exception {
+    LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+
+    assertThat(map.put(1, "one")).isNull();
+    assertThat(map.put(-1, "minus one")).isNull();
+    assertThat(map.put(Long.MAX_VALUE, "max")).isNull();
+    assertThat(map.put(1, "uno")).isEqualTo("one");
+
+    assertThat(map.size()).isEqualTo(3);
+    assertThat(map.get(1)).isEqualTo("uno");
+    assertThat(map.get(-1)).isEqualTo("minus one");
+    assertThat(map.get(Long.MAX_VALUE)).isEqualTo("max");
+    assertThat(map.get(0)).isNull();
+    assertThat(map.keys()).hasSize(3);
+  }
+
+  @Test
+  public void shouldBehaveLikeHashMap() throws Exception {
+    LongObjectHashMap<Long> map = new LongObjectHashMap<Long>();
+    Map<Long, Long> expected = new HashMap<Long, Long>();
+
+    Random random = new Random(42);
+    for (int i = 0; i != 100000; ++i) {
+      long key = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+      } else {
+        assertThat(map.put(key, (long) i)).isEqualTo(expected.put(key, (long) i));
+      }
+    }
+
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (long key = 0; key != 5000; ++key) {
+      assertThat(map.get(key)).isEqualTo(expected.get(key));
+    }
+  }
+}
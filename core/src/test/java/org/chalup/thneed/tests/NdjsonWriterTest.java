@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.chalup.thneed.NdjsonWriter;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+public class NdjsonWriterTest {
+
+  @Test
+  public void shouldWriteRowPerLine() throws Exception {
+    StringWriter output = new StringWriter();
+    NdjsonWriter writer = new NdjsonWriter(output);
+
+    writer.writeRow("deals", new String[] { "_id", "value", "name" }, new Object[] { 1L, 2.5, null });
+    writer.writeRow("deals", new String[] { "_id" }, new Object[] { 2L });
+
+    assertThat(output.toString()).isEqualTo(
+        "{\"table\":\"deals\",\"row\":{\"_id\":1,\"value\":2.5,\"name\":null}}\n" +
+            "{\"table\":\"deals\",\"row\":{\"_id\":2}}\n");
+  }
+
+  @Test
+  public void shouldEscapeStrings() throws Exception {
+    StringWriter output = new StringWriter();
+    NdjsonWriter writer = new NdjsonWriter(output);
+
+    writer.writeRow("notes", new String[] { "text" }, new Object[] { "\"quoted\"\\\n\u0001" + (char) 0x2028 });
+
+    assertThat(output.toString()).isEqualTo("{\"table\":\"notes\",\"row\":{\"text\":\"\\\"quoted\\\"\\\\\\n\\u0001\\u2028\"}}\n");
+  }
+
+  @Test
+  public void shouldWriteBlobsAsBase64AndNonFiniteNumbersAsNulls() throws Exception {
+    StringWriter output = new StringWriter();
+    NdjsonWriter writer = new NdjsonWriter(output);
+
+    writer.writeRow("files", new String[] { "data", "ratio" }, new Object[] { new byte[] { 1, 2, 3 }, Double.NaN });
+
+    assertThat(output.toString()).isEqualTo("{\"table\":\"files\",\"row\":{\"data\":\"AQID\",\"ratio\":null}}\n");
+  }
+}
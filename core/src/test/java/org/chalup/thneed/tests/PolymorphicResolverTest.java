@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.PolymorphicRelationship;
+import org.chalup.thneed.PolymorphicResolver;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class PolymorphicResolverTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .build();
+
+  @SuppressWarnings("unchecked")
+  private final PolymorphicResolver<ModelInterface> mResolver = PolymorphicResolver.of((PolymorphicRelationship<ModelInterface>) GRAPH.getRelationships().get(0));
+
+  @Test
+  public void shouldAssignDenseTypeCodes() throws Exception {
+    assertThat(mResolver.getTypesCount()).isEqualTo(3);
+    assertThat(mResolver.getModel(mResolver.getTypeCode("Contact"))).isEqualTo(CONTACT);
+    assertThat(mResolver.getModel(mResolver.getTypeCode("Deal"))).isEqualTo(DEAL);
+    assertThat(mResolver.getModel(mResolver.getTypeCode("Lead"))).isEqualTo(LEAD);
+    assertThat(mResolver.getTypeCode("Account")).isEqualTo(PolymorphicResolver.UNKNOWN_TYPE);
+  }
+
+  @Test
+  public void shouldResolveReferencesWithQueryPerType() throws Exception {
+    FakeRowSource source = new FakeRowSource();
+    List<Map<String, Object>> tasks = Lists.newArrayList();
+    for (long id = 1; id <= 50000; ++id) {
+      String type = id % 2 == 0 ? "Contact" : "Deal";
+      tasks.add(row(_ID, id, TASKABLE_TYPE, type, TASKABLE_ID, id % 500));
+    }
+    tasks.add(row(_ID, 0L, TASKABLE_TYPE, "Account", TASKABLE_ID, 1L));
+    for (long id = 0; id != 500; ++id) {
+      source.add(CONTACT, row(_ID, id));
+      source.add(DEAL, row(_ID, id));
+    }
+
+    PolymorphicResolver<ModelInterface>.Resolution<Map<String, Object>> resolution = mResolver.resolve(tasks, source);
+
+    assertThat(source.mQueries).hasSize(2);
+    assertThat(resolution.getReferencedModel(0)).isEqualTo(DEAL);
+    assertThat(resolution.getReferencedRow(0).get(_ID)).isEqualTo(1L);
+    assertThat(resolution.getReferencedModel(1)).isEqualTo(CONTACT);
+    assertThat(resolution.getReferencedRow(1).get(_ID)).isEqualTo(2L);
+    assertThat(resolution.getReferencedRowsCount(mResolver.getTypeCode("Contact"))).isEqualTo(250);
+
+    assertThat(resolution.getTypeCode(50000)).isEqualTo(PolymorphicResolver.UNKNOWN_TYPE);
+    assertThat(resolution.getReferencedRow(50000)).isNull();
+  }
+
+  @Test
+  public void shouldBuildSemiJoinQueryPerType() throws Exception {
+    assertThat(mResolver.getSemiJoinQueries("SELECT * FROM tasks WHERE done = ?")).containsExactly(
+        "SELECT * FROM contacts WHERE contacts._id IN (SELECT taskable_id FROM (SELECT * FROM tasks WHERE done = ?) WHERE taskable_type = 'Contact')",
+        "SELECT * FROM deals WHERE deals._id IN (SELECT taskable_id FROM (SELECT * FROM tasks WHERE done = ?) WHERE taskable_type = 'Deal')",
+        "SELECT * FROM leads WHERE leads._id IN (SELECT taskable_id FROM (SELECT * FROM tasks WHERE done = ?) WHERE taskable_type = 'Lead')"
+    );
+  }
+
+  private static Map<String, Object> row(Object... columnsAndValues) {
+    Map<String, Object> row = Maps.newHashMap();
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+    }
+    return row;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.PrefetchPlan;
+import org.chalup.thneed.PrefetchPlan.Hop;
+import org.chalup.thneed.PrefetchPlanner;
+import org.chalup.thneed.PrefetchResult;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+public class PrefetchPlanTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  private FakeRowSource mSource;
+  private List<Map<String, Object>> mContacts;
+
+  @Before
+  public void init() {
+    mSource = new FakeRowSource();
+    mContacts = Lists.newArrayList();
+
+    for (long id = 1; id <= 2000; ++id) {
+      mContacts.add(row(_ID, id));
+      mSource.add(CONTACT, mContacts.get(mContacts.size() - 1));
+      mSource.add(DEAL, row(_ID, id, CONTACT_ID, id));
+      mSource.add(DEAL, row(_ID, id + 2000, CONTACT_ID, id));
+      mSource.add(TASK, row(_ID, id, TASKABLE_TYPE, id % 2 == 0 ? "Contact" : "Deal", TASKABLE_ID, id));
+    }
+    mSource.add(TAG, row(_ID, 1L));
+    mSource.add(TAGGING, row(_ID, 1L, TAG_ID, 1L, TAGGABLE_TYPE, "Contact", TAGGABLE_ID, 7L));
+    mSource.add(TAGGING, row(_ID, 2L, TAG_ID, 1L, TAGGABLE_TYPE, "Deal", TAGGABLE_ID, 8L));
+  }
+
+  @Test
+  public void shouldFetchEachRelationshipWithChunkedQueries() throws Exception {
+    PrefetchPlan<ModelInterface> plan = PrefetchPlanner.from(GRAPH).plan(CONTACT, ImmutableList.of(ImmutableList.of(CONTACT, DEAL)));
+
+    PrefetchResult<ModelInterface, Map<String, Object>> result = plan.execute(mContacts, mSource);
+
+    Hop<ModelInterface> hop = plan.getHops().get(0);
+    assertThat(mSource.mQueries).hasSize(3);
+    assertThat(result.getRows(hop)).hasSize(4000);
+    assertThat(result.getRelated(hop, mContacts.get(41))).hasSize(2);
+  }
+
+  @Test
+  public void shouldShareCommonPrefixesOfPaths() throws Exception {
+    PrefetchPlan<ModelInterface> plan = PrefetchPlanner.from(GRAPH).plan(CONTACT, ImmutableList.of(
+        ImmutableList.<ModelInterface>of(CONTACT, DEAL),
+        ImmutableList.<ModelInterface>of(CONTACT, DEAL, TASK)
+    ));
+
+    assertThat(plan.getHops()).hasSize(2);
+    assertThat(plan.getHops().get(1).mParent).isSameAs(plan.getHops().get(0));
+  }
+
+  @Test
+  public void shouldFollowPolymorphicRelationshipsOfMatchingType() throws Exception {
+    PrefetchPlan<ModelInterface> plan = PrefetchPlanner.from(GRAPH).plan(CONTACT, ImmutableList.of(ImmutableList.<ModelInterface>of(CONTACT, TASK)));
+
+    PrefetchResult<ModelInterface, Map<String, Object>> result = plan.execute(mContacts, mSource);
+
+    Hop<ModelInterface> hop = plan.getHops().get(0);
+    assertThat(result.getRows(hop)).hasSize(1000);
+    assertThat(result.getRelated(hop, mContacts.get(1))).hasSize(1);
+    assertThat(result.getRelated(hop, mContacts.get(0))).isEmpty();
+  }
+
+  @Test
+  public void shouldFetchManyToManyRelationshipsThroughJoinModel() throws Exception {
+    List<Map<String, Object>> tags = ImmutableList.of(row(_ID, 1L));
+    PrefetchPlan<ModelInterface> plan = PrefetchPlanner.from(GRAPH).plan(TAG, ImmutableList.of(ImmutableList.<ModelInterface>of(TAG, CONTACT)));
+
+    PrefetchResult<ModelInterface, Map<String, Object>> result = plan.execute(tags, mSource);
+
+    assertThat(plan.getHops()).hasSize(2);
+    Hop<ModelInterface> taggings = plan.getHops().get(0);
+    Hop<ModelInterface> contacts = plan.getHops().get(1);
+    assertThat(taggings.mTargetModel).isEqualTo(TAGGING);
+    assertThat(contacts.mTargetModel).isEqualTo(CONTACT);
+
+    assertThat(result.getRelated(taggings, tags.get(0))).hasSize(2);
+    assertThat(mSource.mQueries.get(1)).isEqualTo("SELECT * FROM contacts WHERE contacts._id IN (?)");
+  }
+
+  private static Map<String, Object> row(Object... columnsAndValues) {
+    ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+    for (int i = 0; i < columnsAndValues.length; i += 2) {
+      builder.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.QueryCache;
+import org.chalup.thneed.Relationship;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+public class QueryCacheTest {
+  private static final String OWNER_ID = "owner_id";
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .with(LEAD)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(DEAL).references(CONTACT).by(OWNER_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .build();
+
+  private final QueryCache<ModelInterface, String> mCache = QueryCache.from(GRAPH, 100);
+
+  @Test
+  public void shouldReturnCachedValue() throws Exception {
+    QueryCache.Key<ModelInterface> key = mCache.key(ImmutableList.of(DEAL, CONTACT), 42L);
+
+    assertThat(mCache.get(key, value("first"))).isEqualTo("first");
+    assertThat(mCache.get(mCache.key(ImmutableList.of(DEAL, CONTACT), 42L), value("second"))).isEqualTo("first");
+    assertThat(mCache.getIfPresent(mCache.key(ImmutableList.of(DEAL, CONTACT), 43L))).isNull();
+  }
+
+  @Test
+  public void shouldInvalidateOnlyEntriesDependingOnModel() throws Exception {
+    QueryCache.Key<ModelInterface> deals = mCache.key(ImmutableList.<ModelInterface>of(DEAL));
+    QueryCache.Key<ModelInterface> dealsWithContacts = mCache.key(ImmutableList.of(DEAL, CONTACT));
+    QueryCache.Key<ModelInterface> leads = mCache.key(ImmutableList.<ModelInterface>of(LEAD));
+    mCache.put(deals, "deals");
+    mCache.put(dealsWithContacts, "deals with contacts");
+    mCache.put(leads, "leads");
+
+    mCache.invalidate(CONTACT);
+
+    assertThat(mCache.getIfPresent(deals)).isEqualTo("deals");
+    assertThat(mCache.getIfPresent(dealsWithContacts)).isNull();
+    assertThat(mCache.getIfPresent(leads)).isEqualTo("leads");
+  }
+
+  @Test
+  public void shouldDependOnJoinModelOfManyToManyRelationship() throws Exception {
+    QueryCache.Key<ModelInterface> key = mCache.key(ImmutableList.<ModelInterface>of(TAG, CONTACT));
+    mCache.put(key, "tagged contacts");
+
+    mCache.invalidate(TAGGING);
+
+    assertThat(mCache.getIfPresent(key)).isNull();
+  }
+
+  @Test
+  public void shouldKeepInvalidatingReplacedEntries() throws Exception {
+    QueryCache.Key<ModelInterface> key = mCache.key(ImmutableList.<ModelInterface>of(DEAL));
+    mCache.put(key, "first");
+    mCache.put(key, "second");
+
+    mCache.invalidate(DEAL);
+
+    assertThat(mCache.getIfPresent(key)).isNull();
+  }
+
+  @Test
+  public void shouldEvictEntriesExceedingMaximumWeight() throws Exception {
+    QueryCache<ModelInterface, String> cache = QueryCache.from(GRAPH, 10, new Weigher<QueryCache.Key<ModelInterface>, String>() {
+      @Override
+      public int weigh(QueryCache.Key<ModelInterface> key, String value) {
+        return value.length();
+      }
+    });
+
+    cache.put(cache.key(ImmutableList.<ModelInterface>of(DEAL)), "12345");
+    cache.put(cache.key(ImmutableList.<ModelInterface>of(LEAD)), "12345");
+    cache.put(cache.key(ImmutableList.<ModelInterface>of(CONTACT)), "12345");
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getIfPresent(cache.key(ImmutableList.<ModelInterface>of(DEAL)))).isNull();
+  }
+
+  @Test
+  public void shouldNotShareEntriesOfQueriesJoiningAlongDifferentRelationships() throws Exception {
+    ImmutableList<Relationship<? extends ModelInterface>> relationships = GRAPH.getOutgoingRelationships(DEAL);
+    assertThat(relationships).hasSize(2);
+
+    QueryCache.Key<ModelInterface> byContact = mCache.key(ImmutableList.of(DEAL, CONTACT), relationships.subList(0, 1), 42L);
+    QueryCache.Key<ModelInterface> byOwner = mCache.key(ImmutableList.of(DEAL, CONTACT), relationships.subList(1, 2), 42L);
+
+    assertThat(byContact).isNotEqualTo(byOwner);
+    assertThat(mCache.get(byContact, value("deals of contact"))).isEqualTo("deals of contact");
+    assertThat(mCache.get(byOwner, value("deals of owner"))).isEqualTo("deals of owner");
+  }
+
+  @Test
+  public void shouldNotIndexEntriesWhichFailedToLoad() throws Exception {
+    QueryCache.Key<ModelInterface> key = mCache.key(ImmutableList.<ModelInterface>of(DEAL));
+
+    try {
+      mCache.get(key, new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          throw new Exception("Query failed");
+        }
+      });
+    } catch (ExecutionException expected) {
+    }
+    mCache.put(key, "deals");
+    mCache.invalidate(DEAL);
+
+    assertThat(mCache.getIfPresent(key)).isNull();
+  }
+
+  @Test
+  public void shouldInvalidateEntriesStoredAgainAfterEviction() throws Exception {
+    QueryCache<ModelInterface, String> cache = QueryCache.from(GRAPH, 1);
+    QueryCache.Key<ModelInterface> deals = cache.key(ImmutableList.<ModelInterface>of(DEAL));
+    QueryCache.Key<ModelInterface> leads = cache.key(ImmutableList.<ModelInterface>of(LEAD));
+
+    cache.put(deals, "deals");
+    cache.put(leads, "leads");
+    assertThat(cache.get(deals, value("deals again"))).isEqualTo("deals again");
+
+    cache.invalidate(DEAL);
+
+    assertThat(cache.getIfPresent(deals)).isNull();
+  }
+
+  private static Callable<String> value(final String value) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return value;
+      }
+    };
+  }
+}
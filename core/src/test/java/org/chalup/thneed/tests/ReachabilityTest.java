@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.CUSTOM_FIELD_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.CUSTOM_FIELD;
+import static org.chalup.thneed.tests.TestData.Models.CUSTOM_FIELD_VALUE;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelReachability;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class ReachabilityTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, LEAD)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .the(CUSTOM_FIELD_VALUE).references(CUSTOM_FIELD).by(CUSTOM_FIELD_ID)
+      .the(CUSTOM_FIELD).references(CUSTOM_FIELD_VALUE).by(ID)
+      .build();
+
+  @Test
+  public void shouldFollowReferencesTransitively() throws Exception {
+    ModelReachability<ModelInterface> reachability = GRAPH.getReachability();
+
+    assertThat(reachability.getDependencies(TASK)).containsOnly(DEAL, LEAD, CONTACT);
+    assertThat(reachability.dependsOn(TASK, CONTACT)).isTrue();
+    assertThat(reachability.dependsOn(CONTACT, TASK)).isFalse();
+    assertThat(reachability.getDependencies(CONTACT)).isEmpty();
+  }
+
+  @Test
+  public void shouldFindModelsAffectedByChanges() throws Exception {
+    ModelReachability<ModelInterface> reachability = GRAPH.getReachability();
+
+    assertThat(reachability.getDependents(CONTACT)).containsOnly(DEAL, TASK, TAGGING);
+    assertThat(reachability.getDependents(TAG)).containsOnly(TAGGING);
+    assertThat(reachability.getDependents(TASK)).isEmpty();
+  }
+
+  @Test
+  public void shouldIncludeJoinModelsOfManyToManyRelationships() throws Exception {
+    ModelReachability<ModelInterface> reachability = GRAPH.getReachability();
+
+    assertThat(reachability.getDependencies(TAGGING)).containsOnly(TAG, CONTACT, LEAD);
+    assertThat(reachability.dependsOn(TAGGING, TAG)).isTrue();
+  }
+
+  @Test
+  public void shouldHandleDependencyCycles() throws Exception {
+    ModelReachability<ModelInterface> reachability = GRAPH.getReachability();
+
+    assertThat(reachability.getDependencies(CUSTOM_FIELD)).containsOnly(CUSTOM_FIELD, CUSTOM_FIELD_VALUE);
+    assertThat(reachability.getDependents(CUSTOM_FIELD_VALUE)).containsOnly(CUSTOM_FIELD, CUSTOM_FIELD_VALUE);
+  }
+
+  @Test
+  public void shouldAssignDenseIds() throws Exception {
+    ModelReachability<ModelInterface> reachability = GRAPH.getReachability();
+
+    assertThat(reachability.size()).isEqualTo(GRAPH.getModels().size());
+    for (ModelInterface model : GRAPH.getModels()) {
+      int id = reachability.idOf(model);
+      assertThat(id).isGreaterThanOrEqualTo(0).isLessThan(reachability.size());
+      assertThat(reachability.modelOf(id)).isEqualTo(model);
+    }
+  }
+}
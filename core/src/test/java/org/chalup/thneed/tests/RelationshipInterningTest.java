@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.Relationship;
+import org.chalup.thneed.Relationships;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class RelationshipInterningTest {
+
+  @Test
+  public void shouldCollapseDuplicatedRelationships() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    assertThat(graph.getRelationships()).hasSize(1);
+    assertThat(graph.getIncomingRelationships(CONTACT)).hasSize(1);
+  }
+
+  @Test
+  public void shouldShareRelationshipInstancesBetweenGraphs() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    ModelGraph<ModelInterface> otherGraph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    assertThat((Object) graph.getRelationships().get(0)).isSameAs(otherGraph.getRelationships().get(0));
+  }
+
+  @Test
+  public void shouldReuseExistingRelationshipsAsManyToManySides() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(TAGGING).references(TAG).by(TAG_ID)
+        .the(TAGGING)
+        .links(TAG).by(TAG_ID)
+        .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+        .build();
+
+    // the one-to-many relationship declared explicitly is the left side of many-to-many
+    assertThat(graph.getRelationships()).hasSize(3);
+
+    Object tagging = graph.getRelationships().get(0);
+    ManyToManyRelationship<? extends ModelInterface> manyToMany = graph.getManyToManyRelationships(TAG).get(0);
+    assertThat((Object) manyToMany.mLeftRelationship).isSameAs(tagging);
+  }
+
+  @Test
+  public void shouldCollapseDuplicatedRelationshipsOfPrecompiledGraph() throws Exception {
+    ModelGraph<ModelInterface> graph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    Relationship<ModelInterface> relationship = Relationships.<ModelInterface>oneToMany(DEAL, CONTACT, _ID, CONTACT_ID);
+    Relationship<ModelInterface> duplicate = Relationships.<ModelInterface>oneToMany(DEAL, CONTACT, _ID, CONTACT_ID);
+    ModelGraph<ModelInterface> precompiled = ModelGraph.precompiled(_ID,
+        ImmutableList.<ModelInterface>of(DEAL, CONTACT),
+        ImmutableList.of(relationship, duplicate));
+
+    assertThat(precompiled.getRelationships()).hasSize(1);
+    assertThat(precompiled.getIncomingRelationships(CONTACT)).hasSize(1);
+    assertThat((Object) precompiled.getRelationships().get(0)).isSameAs(graph.getRelationships().get(0));
+  }
+}
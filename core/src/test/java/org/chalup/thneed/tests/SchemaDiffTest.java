@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.HierarchyQueries;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.SchemaDiff;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class SchemaDiffTest {
+  private static final String PARENT_ID = "parent_id";
+
+  private static final ModelInterface CONTACTS_V1 = table("contacts", "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, name TEXT)");
+  private static final ModelInterface CONTACTS_V2 = table("contacts", "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, name TEXT, email TEXT)");
+  private static final ModelInterface DEALS_V1 = table("deals", "CREATE TABLE deals (_id INTEGER PRIMARY KEY, contact_id INTEGER, title TEXT, notes TEXT)");
+  private static final ModelInterface DEALS_V2 = table("deals", "CREATE TABLE deals (_id INTEGER PRIMARY KEY, contact_id INTEGER, title TEXT NOT NULL, tag_id INTEGER)");
+  private static final ModelInterface NOTES = table("notes", "CREATE TABLE notes (_id INTEGER PRIMARY KEY, contact_id INTEGER)");
+  private static final ModelInterface TAGS = table("tags", "CREATE TABLE tags (_id INTEGER PRIMARY KEY, name TEXT)");
+
+  private static final ModelInterface CATEGORIES_V1 = table("categories", "CREATE TABLE categories (_id INTEGER PRIMARY KEY, name TEXT)");
+  private static final ModelInterface CATEGORIES_V2 = table("categories", "CREATE TABLE categories (_id INTEGER PRIMARY KEY, name TEXT, parent_id INTEGER)");
+  private static final ModelInterface CATEGORIES_V3 = table("categories", "CREATE TABLE categories (_id INTEGER PRIMARY KEY, name TEXT NOT NULL, parent_id INTEGER)");
+
+  private static final ModelGraph<ModelInterface> V1 = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEALS_V1).references(CONTACTS_V1).by(CONTACT_ID)
+      .the(NOTES).references(CONTACTS_V1).by(CONTACT_ID)
+      .build();
+
+  private static final ModelGraph<ModelInterface> V2 = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEALS_V2).references(CONTACTS_V2).by(CONTACT_ID)
+      .the(DEALS_V2).references(TAGS).by(TAG_ID)
+      .build();
+
+  @Test
+  public void shouldFindAddedRemovedAndChangedModels() throws Exception {
+    SchemaDiff<ModelInterface> diff = SchemaDiff.between(V1, V2);
+
+    assertThat(diff.mAddedModels).containsOnly(TAGS);
+    assertThat(diff.mRemovedModels).containsOnly(NOTES);
+    assertThat(diff.mChangedModels).containsOnly(CONTACTS_V2, DEALS_V2);
+    assertThat(diff.mAddedColumns.get("contacts")).containsOnly("email");
+    assertThat(diff.mAddedColumns.get("deals")).containsOnly("tag_id");
+    assertThat(diff.mRemovedColumns.get("deals")).containsOnly("notes");
+    assertThat(diff.mAddedRelationships).hasSize(1);
+    assertThat(diff.mRemovedRelationships).hasSize(1);
+  }
+
+  @Test
+  public void shouldNotReportUnchangedSchema() throws Exception {
+    SchemaDiff<ModelInterface> diff = SchemaDiff.between(V1, V1);
+
+    assertThat(diff.isEmpty()).isTrue();
+    assertThat(diff.getMigrationStatements()).isEmpty();
+  }
+
+  @Test
+  public void shouldIgnoreWhitespaceAndKeywordCaseChanges() throws Exception {
+    ModelInterface reformattedContacts = table("contacts", "CREATE TABLE contacts (\n  _id integer primary key,\n  name   text\n)");
+
+    SchemaDiff<ModelInterface> diff = SchemaDiff.between(graphOf(CONTACTS_V1), graphOf(reformattedContacts));
+
+    assertThat(diff.isEmpty()).isTrue();
+    assertThat(diff.getMigrationStatements()).isEmpty();
+  }
+
+  @Test
+  public void shouldKeepTableOptionsWhenRebuildingTable() throws Exception {
+    ModelInterface contacts = table("contacts", "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, name TEXT, email TEXT) WITHOUT ROWID, STRICT");
+
+    assertThat(SchemaDiff.between(graphOf(CONTACTS_V1), graphOf(contacts)).getMigrationStatements()).containsExactly(
+        "CREATE TABLE contacts_new (_id INTEGER PRIMARY KEY, name TEXT, email TEXT) WITHOUT ROWID, STRICT",
+        "INSERT INTO contacts_new (_id, name) SELECT _id, name FROM contacts",
+        "DROP TABLE contacts",
+        "ALTER TABLE contacts_new RENAME TO contacts"
+    );
+  }
+
+  @Test
+  public void shouldCompareTableOptionsRegardlessOfOrderAndCase() throws Exception {
+    ModelInterface strictContacts = table("contacts", "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, name TEXT) STRICT, WITHOUT ROWID;");
+    ModelInterface reorderedContacts = table("contacts", "CREATE TABLE contacts (_id INTEGER PRIMARY KEY, name TEXT) without  rowid, strict");
+
+    assertThat(SchemaDiff.between(graphOf(CONTACTS_V1), graphOf(strictContacts)).mChangedModels).containsOnly(strictContacts);
+    assertThat(SchemaDiff.between(graphOf(strictContacts), graphOf(reorderedContacts)).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void shouldAlterOrRebuildOnlyChangedTables() throws Exception {
+    assertThat(SchemaDiff.between(V1, V2).getMigrationStatements()).containsExactly(
+        "DROP TABLE IF EXISTS notes",
+        "ALTER TABLE contacts ADD COLUMN email TEXT",
+        "CREATE TABLE tags (_id INTEGER PRIMARY KEY, name TEXT)",
+        "CREATE TABLE deals_new (_id INTEGER PRIMARY KEY, contact_id INTEGER, title TEXT NOT NULL, tag_id INTEGER)",
+        "INSERT INTO deals_new (_id, contact_id, title) SELECT _id, contact_id, title FROM deals",
+        "DROP TABLE deals",
+        "ALTER TABLE deals_new RENAME TO deals",
+        "CREATE INDEX IF NOT EXISTS idx_deals_contact_id ON deals (contact_id)",
+        "CREATE INDEX IF NOT EXISTS idx_deals_tag_id ON deals (tag_id)"
+    );
+  }
+
+  @Test
+  public void shouldMigrateClosureTablesOnlyOnRequest() throws Exception {
+    ModelGraph<ModelInterface> flat = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CATEGORIES_V1)
+        .build();
+
+    assertThat(SchemaDiff.between(flat, tree(CATEGORIES_V2)).getMigrationStatements()).containsExactly(
+        "ALTER TABLE categories ADD COLUMN parent_id INTEGER",
+        "CREATE INDEX IF NOT EXISTS idx_categories_parent_id ON categories (parent_id)"
+    );
+  }
+
+  @Test
+  public void shouldCreateAndPopulateClosureTableOfAddedRecursiveRelationship() throws Exception {
+    ModelGraph<ModelInterface> flat = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CATEGORIES_V1)
+        .build();
+    ModelGraph<ModelInterface> tree = tree(CATEGORIES_V2);
+    HierarchyQueries<ModelInterface> queries = hierarchyQueries(tree);
+
+    assertThat(SchemaDiff.between(flat, tree).withClosureTables().getMigrationStatements()).isEqualTo(ImmutableList.<String>builder()
+        .add("ALTER TABLE categories ADD COLUMN parent_id INTEGER")
+        .add("CREATE INDEX IF NOT EXISTS idx_categories_parent_id ON categories (parent_id)")
+        .addAll(queries.getClosureTableStatements())
+        .add(queries.getClosureTablePopulateStatement())
+        .build());
+  }
+
+  @Test
+  public void shouldRecreateClosureTriggersOfRebuiltTable() throws Exception {
+    ModelGraph<ModelInterface> tree = tree(CATEGORIES_V3);
+
+    assertThat(SchemaDiff.between(tree(CATEGORIES_V2), tree).withClosureTables().getMigrationStatements()).isEqualTo(ImmutableList.<String>builder()
+        .add("CREATE TABLE categories_new (_id INTEGER PRIMARY KEY, name TEXT NOT NULL, parent_id INTEGER)")
+        .add("INSERT INTO categories_new (_id, name, parent_id) SELECT _id, name, parent_id FROM categories")
+        .add("DROP TABLE categories")
+        .add("ALTER TABLE categories_new RENAME TO categories")
+        .add("CREATE INDEX IF NOT EXISTS idx_categories_parent_id ON categories (parent_id)")
+        .addAll(hierarchyQueries(tree).getClosureTriggerStatements())
+        .build());
+  }
+
+  @Test
+  public void shouldDropClosureTableOfRemovedRecursiveRelationship() throws Exception {
+    ModelGraph<ModelInterface> tree = tree(CATEGORIES_V2);
+    ModelGraph<ModelInterface> flat = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(CATEGORIES_V2)
+        .build();
+
+    assertThat(SchemaDiff.between(tree, flat).withClosureTables().getMigrationStatements()).isEqualTo(ImmutableList.<String>builder()
+        .addAll(hierarchyQueries(tree).getClosureTableDropStatements())
+        .add("DROP INDEX IF EXISTS idx_categories_parent_id")
+        .build());
+  }
+
+  private static ModelGraph<ModelInterface> tree(ModelInterface categories) {
+    return ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(categories).groupsOther().by(PARENT_ID)
+        .build();
+  }
+
+  private static ModelGraph<ModelInterface> graphOf(ModelInterface model) {
+    return ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(model)
+        .build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static HierarchyQueries<ModelInterface> hierarchyQueries(ModelGraph<ModelInterface> graph) {
+    return HierarchyQueries.of((RecursiveModelRelationship<ModelInterface>) graph.getRelationships().get(0));
+  }
+
+  private static ModelInterface table(final String name, final String createStatement) {
+    return new ModelInterface() {
+      @Override
+      public String getTableName() {
+        return name;
+      }
+
+      @Override
+      public String getCreateTableStatement() {
+        return createStatement;
+      }
+
+      @Override
+      public String toString() {
+        return name;
+      }
+    };
+  }
+}
@@ -27,6 +27,7 @@ import com.google.common.collect.Lists;
 import org.chalup.thneed.ModelGraph;
 import org.chalup.thneed.ModelVisitor;
 import org.chalup.thneed.Thneeds;
+import org.chalup.thneed.Thneeds.CompiledModelCases;
 import org.chalup.thneed.tests.TestData.ModelInterface;
 import org.junit.Before;
 import org.junit.Test;
@@ -93,4 +94,25 @@ public class SpecialModelCasesTest {
         .with(fullModelGraph, defaultVisitor)
         .plus(Lists.newArrayList(DEAL), specialCaseVisitor);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldProcessCompiledSpecialCasesRepeatedly() throws Exception {
+    ModelGraph<ModelInterface> fullModelGraph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .with(TASK)
+        .with(CONTACT)
+        .build();
+
+    CompiledModelCases<ModelInterface> compiledCases = Thneeds
+        .with(fullModelGraph, defaultVisitor)
+        .plus(Lists.newArrayList(TASK), specialCaseVisitor)
+        .compile();
+
+    compiledCases.process();
+    compiledCases.process();
+
+    verify(defaultVisitor, times(2)).visit(CONTACT);
+    verify(defaultVisitor, never()).visit(TASK);
+    verify(specialCaseVisitor, times(2)).visit(TASK);
+  }
+}
@@ -30,6 +30,7 @@ import org.chalup.thneed.ModelGraph;
 import org.chalup.thneed.OneToManyRelationship;
 import org.chalup.thneed.RelationshipVisitor;
 import org.chalup.thneed.Thneeds;
+import org.chalup.thneed.Thneeds.CompiledRelationshipCases;
 import org.chalup.thneed.tests.TestData.ModelInterface;
 import org.junit.Before;
 import org.junit.Test;
@@ -116,4 +117,34 @@ public class SpecialRelationshipCasesTest {
     assertThat(relationshipHandledInDefaultWay.mModel).isEqualTo(TAGGING);
     assertThat(relationshipHandledInDefaultWay.mReferencedModel).isEqualTo(TAG);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void shouldProcessCompiledSpecialCasesRepeatedly() throws Exception {
+    ModelGraph<ModelInterface> fullModelGraph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .the(TAGGING).references(TAG).by(TAG_ID)
+        .build();
+
+    ModelGraph<ModelInterface> specialCasesGraph = ModelGraph.of(ModelInterface.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(DEAL).references(CONTACT).by(CONTACT_ID)
+        .build();
+
+    CompiledRelationshipCases<ModelInterface> compiledCases = Thneeds
+        .with(fullModelGraph, defaultVisitor)
+        .plus(specialCasesGraph, specialCaseVisitor)
+        .compile();
+
+    compiledCases.process();
+    compiledCases.process();
+
+    verify(defaultVisitor, times(2)).visit(defaultCasesCaptor.capture());
+    assertThat(defaultCasesCaptor.getValue().mModel).isEqualTo(TAGGING);
+
+    verify(specialCaseVisitor, times(2)).visit(specialCasesCaptor.capture());
+    assertThat(specialCasesCaptor.getValue().mModel).isEqualTo(DEAL);
+  }
+}
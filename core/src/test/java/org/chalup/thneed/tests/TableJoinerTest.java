@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.TestData.CONTACT;
+import static org.chalup.thneed.tests.TestData.CONTACT_ID;
+import static org.chalup.thneed.tests.TestData.DEAL;
+import static org.chalup.thneed.tests.TestData.ID;
+import static org.chalup.thneed.tests.TestData.LEAD;
+import static org.chalup.thneed.tests.TestData.Models.CONTACT_DATA;
+import static org.chalup.thneed.tests.TestData.Models.TAG;
+import static org.chalup.thneed.tests.TestData.Models.TAGGING;
+import static org.chalup.thneed.tests.TestData.Models.TASK;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_ID;
+import static org.chalup.thneed.tests.TestData.TAGGABLE_TYPE;
+import static org.chalup.thneed.tests.TestData.TAG_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_ID;
+import static org.chalup.thneed.tests.TestData.TASKABLE_TYPE;
+import static org.chalup.thneed.tests.TestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.TableJoiner;
+import org.chalup.thneed.tests.TestData.ModelInterface;
+import org.junit.Test;
+
+public class TableJoinerTest {
+
+  private static final ModelGraph<ModelInterface> GRAPH = ModelGraph.of(ModelInterface.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(DEAL).references(CONTACT).by(CONTACT_ID)
+      .the(CONTACT).mayHave(CONTACT_DATA).linked().by(CONTACT_ID)
+      .the(TASK).references(ImmutableList.of(CONTACT, DEAL, LEAD)).by(TASKABLE_TYPE, TASKABLE_ID)
+      .the(TAGGING)
+      .links(TAG).by(TAG_ID)
+      .with(ImmutableList.of(CONTACT, DEAL)).by(TAGGABLE_TYPE, TAGGABLE_ID)
+      .the(TAG).groupsOther().by(ID)
+      .build();
+
+  private final TableJoiner<ModelInterface> mJoiner = TableJoiner.from(GRAPH);
+
+  @Test
+  public void shouldJoinOneToManyRelationshipInBothDirections() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.of(DEAL, CONTACT)))
+        .isEqualTo("deals JOIN contacts ON deals.contact_id = contacts._id");
+    assertThat(mJoiner.tables(ImmutableList.of(CONTACT, DEAL)))
+        .isEqualTo("contacts JOIN deals ON deals.contact_id = contacts._id");
+  }
+
+  @Test
+  public void shouldJoinOneToOneRelationship() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.<ModelInterface>of(CONTACT, CONTACT_DATA)))
+        .isEqualTo("contacts JOIN contact_datas ON contact_datas.contact_id = contacts._id");
+  }
+
+  @Test
+  public void shouldJoinPolymorphicRelationshipWithTypeCondition() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.<ModelInterface>of(TASK, LEAD)))
+        .isEqualTo("tasks JOIN leads ON tasks.taskable_id = leads._id AND tasks.taskable_type = 'Lead'");
+  }
+
+  @Test
+  public void shouldJoinManyToManyRelationshipThroughJoinTable() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.<ModelInterface>of(TAG, DEAL)))
+        .isEqualTo("tags JOIN taggings ON taggings.tag_id = tags._id JOIN deals ON taggings.taggable_id = deals._id AND taggings.taggable_type = 'Deal'");
+  }
+
+  @Test
+  public void shouldNotJoinJoinTableTwice() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.<ModelInterface>of(TAG, DEAL, TAGGING)))
+        .isEqualTo("tags JOIN taggings ON taggings.tag_id = tags._id JOIN deals ON taggings.taggable_id = deals._id AND taggings.taggable_type = 'Deal'");
+  }
+
+  @Test
+  public void shouldJoinWithNearestRelatedModel() throws Exception {
+    assertThat(mJoiner.tables(ImmutableList.<ModelInterface>of(DEAL, CONTACT, TASK)))
+        .isEqualTo("deals JOIN contacts ON deals.contact_id = contacts._id JOIN tasks ON tasks.taskable_id = contacts._id AND tasks.taskable_type = 'Contact'");
+  }
+
+  @Test
+  public void shouldBuildSelectStatement() throws Exception {
+    assertThat(mJoiner.query(ImmutableList.of(DEAL, CONTACT), ImmutableList.of("deals._id", "contacts._id")))
+        .isEqualTo("SELECT deals._id, contacts._id FROM deals JOIN contacts ON deals.contact_id = contacts._id");
+    assertThat(mJoiner.query(ImmutableList.of(DEAL), ImmutableList.<String>of()))
+        .isEqualTo("SELECT * FROM deals");
+  }
+
+  @Test
+  public void shouldCacheGeneratedQueries() throws Exception {
+    String query = mJoiner.query(ImmutableList.of(DEAL, CONTACT), ImmutableList.of("deals._id"));
+
+    assertThat(mJoiner.query(ImmutableList.of(DEAL, CONTACT), ImmutableList.of("deals._id"))).isSameAs(query);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnrelatedModels() throws Exception {
+    mJoiner.tables(ImmutableList.<ModelInterface>of(CONTACT_DATA, TAG));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectRecursiveJoins() throws Exception {
+    mJoiner.tables(ImmutableList.<ModelInterface>of(TAG, TAG));
+  }
+}
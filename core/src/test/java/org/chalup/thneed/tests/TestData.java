@@ -17,6 +17,8 @@
 package org.chalup.thneed.tests;
 
 import org.chalup.thneed.PolymorphicType;
+import org.chalup.thneed.models.DatabaseModel;
+import org.chalup.thneed.models.SchemaModel;
 
 class TestData {
 
@@ -33,7 +35,7 @@ class TestData {
   static final String TAGGABLE_ID = "taggable_id";
   static final String TAGGABLE_TYPE = "taggable_type";
 
-  public interface ModelInterface {
+  public interface ModelInterface extends DatabaseModel, SchemaModel {
   }
 
   public static abstract class PolyModel implements ModelInterface, PolymorphicType<PolyModel> {
@@ -41,6 +43,16 @@ class TestData {
     public PolyModel self() {
       return this;
     }
+
+    @Override
+    public String getTableName() {
+      return getModelName().toLowerCase() + "s";
+    }
+
+    @Override
+    public String getCreateTableStatement() {
+      return "CREATE TABLE " + getTableName() + " (" + _ID + " INTEGER PRIMARY KEY)";
+    }
   }
 
   public enum Models implements ModelInterface {
@@ -49,7 +61,17 @@ class TestData {
     TASK,
     CONTACT_DATA,
     CUSTOM_FIELD,
-    CUSTOM_FIELD_VALUE
+    CUSTOM_FIELD_VALUE;
+
+    @Override
+    public String getTableName() {
+      return name().toLowerCase() + "s";
+    }
+
+    @Override
+    public String getCreateTableStatement() {
+      return "CREATE TABLE " + getTableName() + " (" + _ID + " INTEGER PRIMARY KEY)";
+    }
   }
 
   public static final PolyModel CONTACT = new PolyModel() {
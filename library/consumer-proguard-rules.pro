@@ -1 +1,5 @@
 # Add ProGuard rules for library users
+
+# PojoHydrator looks up the generated hydrators by the name of the hydrated class
+-keepnames @org.chalup.thneed.annotations.Hydrated class *
+-keep class **$$Hydrator { <init>(); }
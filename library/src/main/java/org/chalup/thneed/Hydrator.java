@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.database.Cursor;
+
+/**
+ * Creates the objects of a single class and sets their fields from the {@link Cursor} columns. The implementations
+ * are generated for the classes annotated with {@code org.chalup.thneed.annotations.Hydrated}.
+ */
+public interface Hydrator<T> {
+  /**
+   * Returns the index of the field bound to the column or -1 if the column is not bound to any field.
+   */
+  int fieldIndex(String columnName);
+
+  T newInstance();
+
+  void set(T object, int fieldIndex, Cursor cursor, int column);
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.collect.SetMultimap;
+
+import org.chalup.thneed.models.ContentProviderModel;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Precomputed sets of Uris which have to be notified when the rows of given model change: the Uri of the model itself
+ * and the Uris of the models which related models endpoints (see {@link UriRouter}) return the changed rows or depend
+ * on the changed join model rows.
+ * <p/>
+ * The sets are minimal: the ContentResolver notifies the observers of the descendant Uris as well, so the Uris
+ * descending from another Uri in the set are dropped.
+ */
+public class NotificationPlanner<TModel extends ContentProviderModel> {
+  private final ImmutableMap<TModel, ImmutableList<Uri>> mNotifications;
+
+  private NotificationPlanner(ModelGraph<TModel> graph) {
+    final SetMultimap<TModel, Uri> notifications = LinkedHashMultimap.create();
+
+    for (TModel model : graph.getModels()) {
+      putUri(notifications, model, model);
+    }
+
+    graph.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        putUri(notifications, relationship.mModel, relationship.mReferencedModel);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        putUri(notifications, relationship.mLinkedModel, relationship.mModel);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        // the model's own Uri is already there
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        List<TModel> linkedModels = Lists.newArrayList();
+        linkedModels.addAll(UriRouter.linkedModels(relationship.mLeftRelationship));
+        linkedModels.addAll(UriRouter.linkedModels(relationship.mRightRelationship));
+
+        // endpoints like /sessions/42/speakers depend both on the join model and the linked models
+        for (TModel parentModel : linkedModels) {
+          putUri(notifications, relationship.mModel, parentModel);
+          for (TModel model : linkedModels) {
+            putUri(notifications, model, parentModel);
+          }
+        }
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        for (TModel polymorphicModel : relationship.mPolymorphicModels.values()) {
+          putUri(notifications, relationship.mModel, polymorphicModel);
+        }
+      }
+    });
+
+    ImmutableMap.Builder<TModel, ImmutableList<Uri>> builder = ImmutableMap.builder();
+    for (TModel model : notifications.keySet()) {
+      builder.put(model, minimal(notifications.get(model)));
+    }
+    mNotifications = builder.build();
+  }
+
+  public static <TModel extends ContentProviderModel> NotificationPlanner<TModel> from(ModelGraph<TModel> graph) {
+    return new NotificationPlanner<TModel>(graph);
+  }
+
+  /**
+   * Uris to notify when the rows of given model change.
+   */
+  public ImmutableList<Uri> getUrisToNotify(TModel model) {
+    ImmutableList<Uri> uris = mNotifications.get(model);
+    return uris != null ? uris : ImmutableList.<Uri>of();
+  }
+
+  public void notifyChange(ContentResolver resolver, TModel model) {
+    for (Uri uri : getUrisToNotify(model)) {
+      resolver.notifyChange(uri, null);
+    }
+  }
+
+  /**
+   * Starts collecting the changes, e.g. for the duration of the transaction, so every Uri is notified only once.
+   */
+  public Batch newBatch() {
+    return new Batch();
+  }
+
+  public class Batch {
+    private final Set<TModel> mChangedModels = Sets.newLinkedHashSet();
+
+    private Batch() {
+    }
+
+    public Batch changed(TModel model) {
+      mChangedModels.add(model);
+      return this;
+    }
+
+    public ImmutableList<Uri> getUrisToNotify() {
+      if (mChangedModels.size() == 1) {
+        return NotificationPlanner.this.getUrisToNotify(mChangedModels.iterator().next());
+      }
+
+      Set<Uri> uris = Sets.newLinkedHashSet();
+      for (TModel model : mChangedModels) {
+        uris.addAll(NotificationPlanner.this.getUrisToNotify(model));
+      }
+      return minimal(uris);
+    }
+
+    /**
+     * Notifies the Uris affected by the collected changes and clears the batch.
+     */
+    public void notifyChange(ContentResolver resolver) {
+      for (Uri uri : getUrisToNotify()) {
+        resolver.notifyChange(uri, null);
+      }
+      mChangedModels.clear();
+    }
+  }
+
+  private static <TModel extends ContentProviderModel> void putUri(SetMultimap<TModel, Uri> notifications, TModel changedModel, TModel notifiedModel) {
+    Uri uri = notifiedModel.getUri();
+    if (uri != null) {
+      notifications.put(changedModel, uri);
+    }
+  }
+
+  private static ImmutableList<Uri> minimal(Collection<Uri> uris) {
+    ImmutableList.Builder<Uri> builder = ImmutableList.builder();
+    for (Uri uri : uris) {
+      boolean covered = false;
+      for (Uri other : uris) {
+        if (other != uri && isDescendant(uri, other)) {
+          covered = true;
+          break;
+        }
+      }
+      if (!covered) {
+        builder.add(uri);
+      }
+    }
+    return builder.build();
+  }
+
+  private static boolean isDescendant(Uri uri, Uri ancestor) {
+    if (!Objects.equal(uri.getAuthority(), ancestor.getAuthority())) {
+      return false;
+    }
+
+    List<String> segments = uri.getPathSegments();
+    List<String> ancestorSegments = ancestor.getPathSegments();
+    return segments.size() > ancestorSegments.size() && segments.subList(0, ancestorSegments.size()).equals(ancestorSegments);
+  }
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.database.Cursor;
+
+import com.google.common.base.CaseFormat;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import org.chalup.thneed.collect.LongObjectHashMap;
+import org.chalup.thneed.models.DatabaseModel;
+import org.chalup.thneed.models.PojoModel;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates the objects of the {@link PojoModel#getModelClass()} from the {@link Cursor} rows.
+ * <p/>
+ * The column is bound to the field with the same name, its camel case form or the camel case form with the {@code m}
+ * prefix, e.g. the {@code first_name} column is bound to the {@code first_name}, {@code firstName} or
+ * {@code mFirstName} field. The fields and the constructors of the model classes are looked up once per class, and
+ * the column indexes once per cursor, so hydrating the row only sets the fields.
+ * <p/>
+ * The objects of the classes annotated with {@code org.chalup.thneed.annotations.Hydrated} are created and filled by
+ * the {@link Hydrator} generated by the annotation processor, with the plain constructor call and field assignments.
+ * The other classes fall back to reflection, which costs several times more, especially on Dalvik. The related
+ * objects are always set to the fields of the joined objects through reflection.
+ * <p/>
+ * The joined cursor, e.g. from the {@link TableJoiner} query, can also fill the related objects: the columns of the
+ * related models have to be aliased as {@code <table>.<column>}. The root objects are deduplicated by their id
+ * column, and the related objects are set to the field of the related model class or added to the collection field
+ * of the related model class.
+ */
+public class PojoHydrator<TModel extends DatabaseModel & PojoModel> {
+  private static final String HYDRATOR_SUFFIX = "$$Hydrator";
+
+  private static final ConcurrentMap<Class<?>, ClassBinding> CLASS_BINDINGS = new ConcurrentHashMap<Class<?>, ClassBinding>();
+
+  private final ModelGraph<TModel> mGraph;
+
+  private PojoHydrator(ModelGraph<TModel> graph) {
+    mGraph = graph;
+  }
+
+  public static <TModel extends DatabaseModel & PojoModel> PojoHydrator<TModel> from(ModelGraph<TModel> graph) {
+    return new PojoHydrator<TModel>(graph);
+  }
+
+  /**
+   * Hydrates all remaining rows of the cursor.
+   */
+  public <T> List<T> hydrate(Cursor cursor, TModel model) {
+    return hydrate(cursor, model, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Hydrates at most {@code maxRows} following rows of the cursor, so the large cursors can be processed in batches.
+   */
+  public <T> List<T> hydrate(Cursor cursor, TModel model, int maxRows) {
+    Preconditions.checkArgument(maxRows > 0, "Max rows has to be positive");
+
+    RowBinding binding = RowBinding.of(cursor, model, null, true);
+    List<T> result = Lists.newArrayListWithCapacity(Math.min(maxRows, Math.max(cursor.getCount() - cursor.getPosition() - 1, 0)));
+    for (int i = 0; i != maxRows && cursor.moveToNext(); ++i) {
+      result.add(binding.<T>create(cursor));
+    }
+    return result;
+  }
+
+  /**
+   * Hydrates all remaining rows of the joined cursor into the objects of the model, with the objects of the related
+   * models set or added to their fields. The related models have to be linked with the model by the one-to-one or
+   * one-to-many relationship.
+   */
+  public <T> List<T> hydrate(Cursor cursor, TModel model, List<? extends TModel> relatedModels) {
+    RowBinding rootBinding = RowBinding.of(cursor, model, model.getTableName() + ".", true);
+    int rootIdColumn = idColumnIndex(cursor, model, true);
+
+    List<RelatedBinding> relatedBindings = Lists.newArrayList();
+    for (TModel relatedModel : relatedModels) {
+      Preconditions.checkArgument(isLinked(model, relatedModel), "Model %s is not linked with %s by one-to-one or one-to-many relationship", relatedModel, model);
+
+      String prefix = relatedModel.getTableName() + ".";
+      int idColumn = idColumnIndex(cursor, relatedModel, false);
+      Preconditions.checkArgument(idColumn >= 0, "Cursor doesn't contain the %s%s column", prefix, mGraph.getIdColumn(relatedModel));
+
+      relatedBindings.add(new RelatedBinding(
+          RowBinding.of(cursor, relatedModel, prefix, false),
+          idColumn,
+          ClassBinding.of(model.getModelClass()).relatedField(relatedModel.getModelClass())));
+    }
+
+    List<T> result = Lists.newArrayList();
+    LongObjectHashMap<Object> roots = new LongObjectHashMap<Object>();
+    while (cursor.moveToNext()) {
+      Object root = null;
+      if (rootIdColumn >= 0 && !cursor.isNull(rootIdColumn)) {
+        root = roots.get(cursor.getLong(rootIdColumn));
+      }
+      if (root == null) {
+        root = rootBinding.create(cursor);
+        if (rootIdColumn >= 0 && !cursor.isNull(rootIdColumn)) {
+          roots.put(cursor.getLong(rootIdColumn), root);
+        }
+        @SuppressWarnings("unchecked")
+        T typedRoot = (T) root;
+        result.add(typedRoot);
+      }
+
+      for (RelatedBinding relatedBinding : relatedBindings) {
+        relatedBinding.bind(cursor, root);
+      }
+    }
+    return result;
+  }
+
+  private boolean isLinked(TModel model, TModel relatedModel) {
+    for (Relationship<? extends TModel> relationship : mGraph.getOutgoingRelationships(model)) {
+      if (links(relationship, model, relatedModel)) {
+        return true;
+      }
+    }
+    for (Relationship<? extends TModel> relationship : mGraph.getIncomingRelationships(model)) {
+      if (links(relationship, model, relatedModel)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <TModel> boolean links(Relationship<? extends TModel> relationship, final TModel first, final TModel second) {
+    final boolean[] links = new boolean[1];
+    relationship.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        links[0] = connects(relationship.mModel, relationship.mReferencedModel);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        links[0] = connects(relationship.mModel, relationship.mLinkedModel);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+      }
+
+      private boolean connects(TModel a, TModel b) {
+        return (a.equals(first) && b.equals(second)) || (a.equals(second) && b.equals(first));
+      }
+    });
+    return links[0];
+  }
+
+  private int idColumnIndex(Cursor cursor, TModel model, boolean allowUnprefixed) {
+    String idColumn = mGraph.getIdColumn(model);
+    if (idColumn == null) {
+      return -1;
+    }
+    // Cursor.getColumnIndex() ignores everything up to the last dot, so it can't find the prefixed column
+    String[] columnNames = cursor.getColumnNames();
+    int index = indexOf(columnNames, model.getTableName() + "." + idColumn);
+    if (index < 0 && allowUnprefixed) {
+      index = indexOf(columnNames, idColumn);
+    }
+    return index;
+  }
+
+  private static int indexOf(String[] columnNames, String columnName) {
+    for (int i = 0; i != columnNames.length; ++i) {
+      if (columnNames[i].equalsIgnoreCase(columnName)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static class RelatedBinding {
+    private final RowBinding mBinding;
+    private final int mIdColumn;
+    private final Field mField;
+    private final boolean mCollection;
+    private final LongObjectHashMap<Object> mObjects = new LongObjectHashMap<Object>();
+    private final LongObjectHashMap<Object> mOwners = new LongObjectHashMap<Object>();
+
+    RelatedBinding(RowBinding binding, int idColumn, Field field) {
+      mBinding = binding;
+      mIdColumn = idColumn;
+      mField = field;
+      mCollection = Collection.class.isAssignableFrom(field.getType());
+    }
+
+    void bind(Cursor cursor, Object owner) {
+      if (cursor.isNull(mIdColumn)) {
+        return;
+      }
+
+      long id = cursor.getLong(mIdColumn);
+      Object related = mObjects.get(id);
+      if (related == null) {
+        related = mBinding.create(cursor);
+        mObjects.put(id, related);
+      }
+
+      try {
+        if (!mCollection) {
+          mField.set(owner, related);
+        } else if (mOwners.get(id) != owner) {
+          mOwners.put(id, owner);
+          collection(owner).add(related);
+        }
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Collection<Object> collection(Object owner) throws IllegalAccessException {
+      Collection<Object> collection = (Collection<Object>) mField.get(owner);
+      if (collection == null) {
+        collection = Set.class.isAssignableFrom(mField.getType())
+            ? Sets.newLinkedHashSet()
+            : Lists.newArrayList();
+        mField.set(owner, collection);
+      }
+      return collection;
+    }
+  }
+
+  /**
+   * Fields of the model class bound to the cursor columns.
+   */
+  private static class RowBinding {
+    private final Hydrator<Object> mHydrator;
+    private final int[] mColumns;
+    private final int[] mFields;
+
+    private RowBinding(Hydrator<Object> hydrator, int[] columns, int[] fields) {
+      mHydrator = hydrator;
+      mColumns = columns;
+      mFields = fields;
+    }
+
+    /**
+     * Binds the columns with the prefix and, if allowed, the columns without any prefix.
+     */
+    static RowBinding of(Cursor cursor, PojoModel model, String prefix, boolean allowUnprefixed) {
+      Hydrator<Object> hydrator = ClassBinding.of(model.getModelClass()).mHydrator;
+
+      List<Integer> columns = Lists.newArrayList();
+      List<Integer> fields = Lists.newArrayList();
+      String[] columnNames = cursor.getColumnNames();
+      for (int i = 0; i != columnNames.length; ++i) {
+        String columnName = columnNames[i];
+        if (prefix != null && columnName.startsWith(prefix)) {
+          columnName = columnName.substring(prefix.length());
+        } else if (!allowUnprefixed || columnName.indexOf('.') >= 0) {
+          continue;
+        }
+
+        int field = hydrator.fieldIndex(columnName);
+        if (field >= 0) {
+          columns.add(i);
+          fields.add(field);
+        }
+      }
+
+      return new RowBinding(hydrator, Ints.toArray(columns), Ints.toArray(fields));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T create(Cursor cursor) {
+      Object object = mHydrator.newInstance();
+      for (int i = 0; i != mColumns.length; ++i) {
+        mHydrator.set(object, mFields[i], cursor, mColumns[i]);
+      }
+      return (T) object;
+    }
+  }
+
+  /**
+   * Hydrator of the model class, looked up once per class.
+   */
+  private static class ClassBinding {
+    final Class<?> mClass;
+    final Hydrator<Object> mHydrator;
+
+    private ClassBinding(Class<?> klass) {
+      mClass = klass;
+      mHydrator = hydrator(klass);
+    }
+
+    static ClassBinding of(Class<?> klass) {
+      ClassBinding binding = CLASS_BINDINGS.get(klass);
+      if (binding == null) {
+        binding = new ClassBinding(klass);
+        ClassBinding previous = CLASS_BINDINGS.putIfAbsent(klass, binding);
+        if (previous != null) {
+          binding = previous;
+        }
+      }
+      return binding;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Hydrator<Object> hydrator(Class<?> klass) {
+      Class<?> hydratorClass;
+      try {
+        hydratorClass = Class.forName(klass.getName() + HYDRATOR_SUFFIX, true, klass.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        return new ReflectiveHydrator(klass);
+      }
+
+      try {
+        return (Hydrator<Object>) hydratorClass.newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Cannot create " + hydratorClass, e);
+      }
+    }
+
+    Field relatedField(Class<?> relatedClass) {
+      Field result = null;
+      for (Field field : fields(mClass)) {
+        if (field.getType().isAssignableFrom(relatedClass) && field.getType() != Object.class || isCollectionOf(field, relatedClass)) {
+          Preconditions.checkArgument(result == null, "Class %s has more than one field for %s", mClass, relatedClass);
+          result = field;
+        }
+      }
+      Preconditions.checkArgument(result != null, "Class %s doesn't have the field for %s", mClass, relatedClass);
+      result.setAccessible(true);
+      return result;
+    }
+
+    private static boolean isCollectionOf(Field field, Class<?> elementClass) {
+      if (!Collection.class.isAssignableFrom(field.getType())) {
+        return false;
+      }
+      Type type = field.getGenericType();
+      if (!(type instanceof ParameterizedType)) {
+        return false;
+      }
+      Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+      return arguments.length == 1 && arguments[0] == elementClass;
+    }
+  }
+
+  /**
+   * Instance fields of the class and its superclasses, starting with the fields of the class.
+   */
+  private static List<Field> fields(Class<?> klass) {
+    List<Field> fields = Lists.newArrayList();
+    for (Class<?> c = klass; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()) && !field.isSynthetic()) {
+          fields.add(field);
+        }
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Fallback for the classes without the generated {@link Hydrator}, which creates the objects and sets the fields
+   * through reflection.
+   */
+  private static class ReflectiveHydrator implements Hydrator<Object> {
+    private final Constructor<?> mConstructor;
+    private final List<FieldBinding> mFields = Lists.newArrayList();
+    private final Map<String, Integer> mFieldIndexes = Maps.newHashMap();
+
+    ReflectiveHydrator(Class<?> klass) {
+      try {
+        mConstructor = klass.getDeclaredConstructor();
+        mConstructor.setAccessible(true);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalArgumentException("Class " + klass + " doesn't have the no-arg constructor", e);
+      }
+
+      for (Field field : fields(klass)) {
+        FieldType type = FieldType.of(field.getType());
+        if (type != null) {
+          field.setAccessible(true);
+          for (String columnName : columnNames(field.getName())) {
+            if (!mFieldIndexes.containsKey(columnName)) {
+              mFieldIndexes.put(columnName, mFields.size());
+            }
+          }
+          mFields.add(new FieldBinding(field, type));
+        }
+      }
+    }
+
+    private static List<String> columnNames(String fieldName) {
+      String name = fieldName;
+      if (name.length() > 1 && name.charAt(0) == 'm' && Character.isUpperCase(name.charAt(1))) {
+        name = Character.toLowerCase(name.charAt(1)) + name.substring(2);
+      }
+      return ImmutableList.of(fieldName, name, CaseFormat.LOWER_CAMEL.to(CaseFormat.LOWER_UNDERSCORE, name));
+    }
+
+    @Override
+    public int fieldIndex(String columnName) {
+      Integer index = mFieldIndexes.get(columnName);
+      return index != null ? index : -1;
+    }
+
+    @Override
+    public Object newInstance() {
+      try {
+        return mConstructor.newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Cannot create " + mConstructor.getDeclaringClass(), e);
+      }
+    }
+
+    @Override
+    public void set(Object object, int fieldIndex, Cursor cursor, int column) {
+      try {
+        mFields.get(fieldIndex).set(object, cursor, column);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private enum FieldType {
+    LONG, INT, SHORT, DOUBLE, FLOAT, BOOLEAN, BOXED_LONG, BOXED_INT, BOXED_SHORT, BOXED_DOUBLE, BOXED_FLOAT, BOXED_BOOLEAN, STRING, BLOB;
+
+    static FieldType of(Class<?> type) {
+      if (type == long.class) return LONG;
+      if (type == int.class) return INT;
+      if (type == short.class) return SHORT;
+      if (type == double.class) return DOUBLE;
+      if (type == float.class) return FLOAT;
+      if (type == boolean.class) return BOOLEAN;
+      if (type == Long.class) return BOXED_LONG;
+      if (type == Integer.class) return BOXED_INT;
+      if (type == Short.class) return BOXED_SHORT;
+      if (type == Double.class) return BOXED_DOUBLE;
+      if (type == Float.class) return BOXED_FLOAT;
+      if (type == Boolean.class) return BOXED_BOOLEAN;
+      if (type == String.class) return STRING;
+      if (type == byte[].class) return BLOB;
+      return null;
+    }
+  }
+
+  private static class FieldBinding {
+    private final Field mField;
+    private final FieldType mType;
+
+    FieldBinding(Field field, FieldType type) {
+      mField = field;
+      mType = type;
+    }
+
+    void set(Object object, Cursor cursor, int column) throws IllegalAccessException {
+      switch (mType) {
+        case LONG:
+          mField.setLong(object, cursor.getLong(column));
+          return;
+        case INT:
+          mField.setInt(object, cursor.getInt(column));
+          return;
+        case SHORT:
+          mField.setShort(object, cursor.getShort(column));
+          return;
+        case DOUBLE:
+          mField.setDouble(object, cursor.getDouble(column));
+          return;
+        case FLOAT:
+          mField.setFloat(object, cursor.getFloat(column));
+          return;
+        case BOOLEAN:
+          mField.setBoolean(object, cursor.getInt(column) != 0);
+          return;
+        default:
+          mField.set(object, cursor.isNull(column) ? null : boxedValue(cursor, column));
+      }
+    }
+
+    private Object boxedValue(Cursor cursor, int column) {
+      switch (mType) {
+        case BOXED_LONG:
+          return cursor.getLong(column);
+        case BOXED_INT:
+          return cursor.getInt(column);
+        case BOXED_SHORT:
+          return cursor.getShort(column);
+        case BOXED_DOUBLE:
+          return cursor.getDouble(column);
+        case BOXED_FLOAT:
+          return cursor.getFloat(column);
+        case BOXED_BOOLEAN:
+          return cursor.getInt(column) != 0;
+        case STRING:
+          return cursor.getString(column);
+        case BLOB:
+          return cursor.getBlob(column);
+        default:
+          throw new AssertionError(mType);
+      }
+    }
+  }
+}
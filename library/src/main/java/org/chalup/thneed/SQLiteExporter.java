@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Streams the rows of the {@link ExportPlan} from {@link SQLiteDatabase} to the {@link NdjsonWriter}, reading every
+ * step in pages of limited size. The export runs in a transaction, so the temporary tables of the plan are created,
+ * read and dropped on the same connection. Before Honeycomb the cursor doesn't report the column types, so all values
+ * except nulls are written as strings.
+ */
+public final class SQLiteExporter {
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  private SQLiteExporter() {
+  }
+
+  public static void export(SQLiteDatabase db, ExportPlan<?> plan, long rootId, Writer writer) throws IOException {
+    export(db, plan, rootId, writer, DEFAULT_PAGE_SIZE);
+  }
+
+  public static void export(SQLiteDatabase db, ExportPlan<?> plan, long rootId, Writer writer, int pageSize) throws IOException {
+    Preconditions.checkArgument(pageSize > 0, "Page size has to be positive");
+
+    db.beginTransaction();
+    try {
+      List<String> setupStatements = plan.getSetupStatements();
+      for (int i = 0; i != setupStatements.size(); ++i) {
+        if (i == 0) {
+          db.execSQL(setupStatements.get(i), new Object[] { rootId });
+        } else {
+          db.execSQL(setupStatements.get(i));
+        }
+      }
+      try {
+        export(db, plan.getSteps(), rootId, new NdjsonWriter(writer), pageSize);
+      } finally {
+        for (String statement : plan.getCleanupStatements()) {
+          db.execSQL(statement);
+        }
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  private static void export(SQLiteDatabase db, List<? extends ExportPlan.Step<?>> steps, long rootId, NdjsonWriter ndjsonWriter, int pageSize) throws IOException {
+    String[] selectionArgs = new String[] { String.valueOf(rootId), null };
+    for (ExportPlan.Step<?> step : steps) {
+      String query = step.getPageQuery(pageSize);
+      String table = step.mModel.getTableName();
+
+      long lastId = Long.MIN_VALUE;
+      int rowsCount;
+      do {
+        selectionArgs[1] = String.valueOf(lastId);
+        Cursor cursor = db.rawQuery(query, selectionArgs);
+        try {
+          rowsCount = cursor.getCount();
+          String[] columns = cursor.getColumnNames();
+          int idColumn = cursor.getColumnIndexOrThrow(step.mIdColumn);
+          Object[] values = new Object[columns.length];
+          while (cursor.moveToNext()) {
+            for (int i = 0; i != columns.length; ++i) {
+              values[i] = value(cursor, i);
+            }
+            ndjsonWriter.writeRow(table, columns, values);
+            lastId = cursor.getLong(idColumn);
+          }
+        } finally {
+          cursor.close();
+        }
+      } while (rowsCount == pageSize);
+    }
+    ndjsonWriter.flush();
+  }
+
+  private static Object value(Cursor cursor, int column) {
+    if (cursor.isNull(column)) {
+      return null;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+      return typedValue(cursor, column);
+    }
+    return cursor.getString(column);
+  }
+
+  @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+  private static Object typedValue(Cursor cursor, int column) {
+    switch (cursor.getType(column)) {
+      case Cursor.FIELD_TYPE_INTEGER:
+        return cursor.getLong(column);
+      case Cursor.FIELD_TYPE_FLOAT:
+        return cursor.getDouble(column);
+      case Cursor.FIELD_TYPE_BLOB:
+        return cursor.getBlob(column);
+      default:
+        return cursor.getString(column);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ImportWriter} inserting the {@link ContentValues} into {@link SQLiteDatabase} through compiled statements,
+ * reused for all rows of the model with the same set of columns. The column sets already seen for the model are
+ * matched against the row keys, so the SQL is built only for the new column sets. Also executes the {@link IdRemapper} statements as
+ * the {@link RemapWriter}. The statements are released by {@link #close()}.
+ */
+public class SQLiteImportWriter<TModel extends DatabaseModel> implements ImportWriter<TModel, ContentValues>, RemapWriter {
+  private final SQLiteDatabase mDb;
+  private final Map<String, SQLiteStatement> mStatements = Maps.newHashMap();
+  private final Map<TModel, List<InsertStatement>> mInsertStatements = Maps.newHashMap();
+
+  public SQLiteImportWriter(SQLiteDatabase db) {
+    mDb = db;
+  }
+
+  @Override
+  public void beginTransaction() {
+    mDb.beginTransaction();
+  }
+
+  @Override
+  public void setTransactionSuccessful() {
+    mDb.setTransactionSuccessful();
+  }
+
+  @Override
+  public void endTransaction() {
+    mDb.endTransaction();
+  }
+
+  @Override
+  public long insert(TModel model, ContentValues row, String deferredColumn) {
+    InsertStatement insert = getInsertStatement(model, row);
+    String[] columns = insert.mColumns;
+    for (int i = 0; i != columns.length; ++i) {
+      bind(insert.mStatement, i + 1, columns[i].equals(deferredColumn) ? null : row.get(columns[i]));
+    }
+    return insert.mStatement.executeInsert();
+  }
+
+  private InsertStatement getInsertStatement(TModel model, ContentValues row) {
+    List<InsertStatement> inserts = mInsertStatements.get(model);
+    if (inserts == null) {
+      inserts = Lists.newArrayList();
+      mInsertStatements.put(model, inserts);
+    }
+    for (InsertStatement insert : inserts) {
+      if (insert.matches(row)) {
+        return insert;
+      }
+    }
+
+    String[] columns = new String[row.size()];
+    int index = 0;
+    for (Map.Entry<String, Object> value : row.valueSet()) {
+      columns[index++] = value.getKey();
+    }
+    Arrays.sort(columns);
+
+    String sql = "INSERT INTO " + model.getTableName() + " (" + Joiner.on(", ").join(columns) + ") VALUES (" + Joiner.on(", ").join(Collections.nCopies(columns.length, "?")) + ")";
+    InsertStatement insert = new InsertStatement(columns, getStatement(sql));
+    inserts.add(insert);
+    return insert;
+  }
+
+  @Override
+  public void update(TModel model, String idColumn, long id, String column, long value) {
+    SQLiteStatement statement = getStatement("UPDATE " + model.getTableName() + " SET " + column + " = ? WHERE " + idColumn + " = ?");
+    statement.bindLong(1, value);
+    statement.bindLong(2, id);
+    statement.execute();
+  }
+
+  @Override
+  public void execute(String sql, long... args) {
+    SQLiteStatement statement = getStatement(sql);
+    for (int i = 0; i != args.length; ++i) {
+      statement.bindLong(i + 1, args[i]);
+    }
+    statement.execute();
+  }
+
+  @Override
+  public boolean isNull(ContentValues row, String column) {
+    return row.get(column) == null;
+  }
+
+  @Override
+  public long getLong(ContentValues row, String column) {
+    return row.getAsLong(column);
+  }
+
+  public void close() {
+    for (SQLiteStatement statement : mStatements.values()) {
+      statement.close();
+    }
+    mStatements.clear();
+    mInsertStatements.clear();
+  }
+
+  private SQLiteStatement getStatement(String sql) {
+    SQLiteStatement statement = mStatements.get(sql);
+    if (statement == null) {
+      statement = mDb.compileStatement(sql);
+      mStatements.put(sql, statement);
+    }
+    return statement;
+  }
+
+  private static class InsertStatement {
+    final String[] mColumns;
+    final SQLiteStatement mStatement;
+
+    InsertStatement(String[] columns, SQLiteStatement statement) {
+      mColumns = columns;
+      mStatement = statement;
+    }
+
+    boolean matches(ContentValues row) {
+      if (row.size() != mColumns.length) {
+        return false;
+      }
+      for (String column : mColumns) {
+        if (!row.containsKey(column)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static void bind(SQLiteStatement statement, int index, Object value) {
+    if (value == null) {
+      statement.bindNull(index);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      statement.bindLong(index, ((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      statement.bindDouble(index, ((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      statement.bindLong(index, (Boolean) value ? 1 : 0);
+    } else if (value instanceof byte[]) {
+      statement.bindBlob(index, (byte[]) value);
+    } else {
+      statement.bindString(index, value.toString());
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+
+/**
+ * Reads the existing indexes of the models' tables using {@code PRAGMA index_list} and {@code PRAGMA index_info}, e.g.
+ * to compare them with the indexes advised by the {@link IndexAdvisor}.
+ */
+public final class SQLiteIndexes {
+  private SQLiteIndexes() {
+  }
+
+  public static <TModel extends DatabaseModel> ImmutableList<TableIndex> read(SQLiteDatabase db, ModelGraph<TModel> graph) {
+    ImmutableList.Builder<TableIndex> indexes = ImmutableList.builder();
+    for (TModel model : graph.getModels()) {
+      indexes.addAll(read(db, model.getTableName()));
+    }
+    return indexes.build();
+  }
+
+  public static ImmutableList<TableIndex> read(SQLiteDatabase db, String table) {
+    ImmutableList.Builder<TableIndex> indexes = ImmutableList.builder();
+
+    Cursor cursor = db.rawQuery("PRAGMA index_list(" + quote(table) + ")", null);
+    try {
+      int nameColumn = cursor.getColumnIndexOrThrow("name");
+      int uniqueColumn = cursor.getColumnIndexOrThrow("unique");
+      while (cursor.moveToNext()) {
+        String name = cursor.getString(nameColumn);
+        List<String> columns = columns(db, name);
+        if (!columns.isEmpty()) {
+          indexes.add(new TableIndex(name, table, columns, cursor.getInt(uniqueColumn) != 0));
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+
+    return indexes.build();
+  }
+
+  private static List<String> columns(SQLiteDatabase db, String index) {
+    List<String> columns = Lists.newArrayList();
+
+    Cursor cursor = db.rawQuery("PRAGMA index_info(" + quote(index) + ")", null);
+    try {
+      int nameColumn = cursor.getColumnIndexOrThrow("name");
+      while (cursor.moveToNext()) {
+        // rows are ordered by the position of the column in the index
+        columns.add(cursor.getString(nameColumn));
+      }
+    } finally {
+      cursor.close();
+    }
+
+    return columns;
+  }
+
+  private static String quote(String name) {
+    return "'" + name.replace("'", "''") + "'";
+  }
+}
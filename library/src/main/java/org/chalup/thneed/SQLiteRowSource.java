@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * {@link RowSource} reading the rows from {@link SQLiteDatabase} into {@link ContentValues}, e.g. for executing the
+ * {@link PrefetchPlan}.
+ */
+public class SQLiteRowSource implements RowSource<ContentValues> {
+  private final SQLiteDatabase mDb;
+
+  public SQLiteRowSource(SQLiteDatabase db) {
+    mDb = db;
+  }
+
+  @Override
+  public List<ContentValues> query(String sql, String[] selectionArgs) {
+    Cursor cursor = mDb.rawQuery(sql, selectionArgs);
+    try {
+      List<ContentValues> rows = Lists.newArrayListWithCapacity(cursor.getCount());
+      while (cursor.moveToNext()) {
+        ContentValues row = new ContentValues();
+        DatabaseUtils.cursorRowToContentValues(cursor, row);
+        rows.add(row);
+      }
+      return rows;
+    } finally {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public boolean isNull(ContentValues row, String column) {
+    return row.get(column) == null;
+  }
+
+  @Override
+  public long getLong(ContentValues row, String column) {
+    return row.getAsLong(column);
+  }
+
+  @Override
+  public String getString(ContentValues row, String column) {
+    return row.getAsString(column);
+  }
+}
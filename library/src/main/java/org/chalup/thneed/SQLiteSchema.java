@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.List;
+
+/**
+ * Creates the {@link DatabaseSchema} or applies the {@link SchemaDiff} migration in a single transaction, e.g. from
+ * {@code SQLiteOpenHelper.onCreate()} and {@code onUpgrade()}.
+ */
+public final class SQLiteSchema {
+  private SQLiteSchema() {
+  }
+
+  public static void create(SQLiteDatabase db, DatabaseSchema<?> schema) {
+    execute(db, schema.getStatements());
+  }
+
+  public static void migrate(SQLiteDatabase db, SchemaDiff<?> diff) {
+    execute(db, diff.getMigrationStatements());
+  }
+
+  private static void execute(SQLiteDatabase db, List<String> statements) {
+    db.beginTransaction();
+    try {
+      for (String statement : statements) {
+        SQLiteStatement compiledStatement = db.compileStatement(statement);
+        try {
+          compiledStatement.execute();
+        } finally {
+          compiledStatement.close();
+        }
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.models.DatabaseModel;
+
+import java.util.List;
+
+/**
+ * Reads the {@link ModelStatistics} gathered by SQLite ANALYZE command from the {@code sqlite_stat1} table. The first
+ * number of each entry is the number of rows in the table, the second one is the average number of rows with the same
+ * value of the first indexed column, so the number of distinct values in that column is the quotient of both.
+ */
+public final class SQLiteStatistics {
+  private static final Splitter STAT_SPLITTER = Splitter.on(' ').omitEmptyStrings();
+
+  private SQLiteStatistics() {
+  }
+
+  /**
+   * Returns the statistics of the models' tables; the statistics are empty if ANALYZE was never run on the database.
+   */
+  public static <TModel extends DatabaseModel> ModelStatistics<TModel> collect(SQLiteDatabase db, ModelGraph<TModel> graph) {
+    ImmutableMap.Builder<String, TModel> modelsBuilder = ImmutableMap.builder();
+    for (TModel model : graph.getModels()) {
+      modelsBuilder.put(model.getTableName(), model);
+    }
+    ImmutableMap<String, TModel> models = modelsBuilder.build();
+
+    ModelStatistics.Builder<TModel> statistics = ModelStatistics.builder();
+    if (!hasStatTable(db)) {
+      return statistics.build();
+    }
+
+    Cursor cursor = db.rawQuery("SELECT tbl, idx, stat FROM sqlite_stat1", null);
+    try {
+      while (cursor.moveToNext()) {
+        TModel model = models.get(cursor.getString(0));
+        if (model == null || cursor.isNull(2)) {
+          continue;
+        }
+
+        List<Long> stat = parseStat(cursor.getString(2));
+        if (stat.isEmpty()) {
+          continue;
+        }
+
+        long rowCount = stat.get(0);
+        statistics.rowCount(model, rowCount);
+
+        if (!cursor.isNull(1) && stat.size() > 1 && stat.get(1) > 0) {
+          String column = firstIndexedColumn(db, cursor.getString(1));
+          if (column != null) {
+            statistics.distinctValues(model, column, rowCount / stat.get(1));
+          }
+        }
+      }
+    } finally {
+      cursor.close();
+    }
+
+    return statistics.build();
+  }
+
+  private static boolean hasStatTable(SQLiteDatabase db) {
+    Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'", null);
+    try {
+      return cursor.moveToFirst();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static List<Long> parseStat(String stat) {
+    List<Long> values = Lists.newArrayList();
+    for (String value : STAT_SPLITTER.split(stat)) {
+      try {
+        values.add(Long.parseLong(value));
+      } catch (NumberFormatException e) {
+        // newer SQLite versions append the options like "unordered" or "sz=N"
+        break;
+      }
+    }
+    return values;
+  }
+
+  private static String firstIndexedColumn(SQLiteDatabase db, String indexName) {
+    Cursor cursor = db.rawQuery("PRAGMA index_info('" + indexName.replace("'", "''") + "')", null);
+    try {
+      int nameColumn = cursor.getColumnIndexOrThrow("name");
+      int seqnoColumn = cursor.getColumnIndexOrThrow("seqno");
+      while (cursor.moveToNext()) {
+        if (cursor.getInt(seqnoColumn) == 0) {
+          return cursor.getString(nameColumn);
+        }
+      }
+      return null;
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed;
+
+import android.net.Uri;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+
+import org.chalup.thneed.models.ContentProviderModel;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches the content Uris against the endpoints derived from the {@link ModelGraph}: the collection and the single
+ * item endpoint of every model, and the related models endpoints, e.g. {@code /sessions/42/speakers}.
+ * <p/>
+ * The endpoints are stored in a trie keyed by the Uri authority and path segments, with hash map of literal segments
+ * in every node, so the match takes time proportional to the number of path segments.
+ */
+public class UriRouter<TModel extends ContentProviderModel> {
+  public static final int NO_MATCH = -1;
+
+  private static final String ID_SEGMENT = "#";
+
+  public enum RouteType {
+    COLLECTION,
+    ITEM,
+    RELATED
+  }
+
+  public static class Route<TModel> {
+    public final int mCode;
+    public final RouteType mType;
+
+    /**
+     * Model which rows are returned by the endpoint.
+     */
+    public final TModel mModel;
+
+    /**
+     * Model identified by the id segment of the related models endpoint, null for other endpoints.
+     */
+    public final TModel mParentModel;
+
+    /**
+     * Relationships between the parent model and the model in the declaration order, e.g. both foreign keys when the
+     * model references the parent model twice. Empty for other than related models endpoints.
+     */
+    public final ImmutableList<Relationship<? extends TModel>> mRelationships;
+
+    private Route(int code, RouteType type, TModel model, TModel parentModel, ImmutableList<Relationship<? extends TModel>> relationships) {
+      mCode = code;
+      mType = type;
+      mModel = model;
+      mParentModel = parentModel;
+      mRelationships = relationships;
+    }
+
+    @Override
+    public String toString() {
+      return "Route{" + mType + " " + mModel + (mParentModel != null ? " of " + mParentModel : "") + "}";
+    }
+  }
+
+  private static class Node {
+    final Map<String, Node> mChildren = Maps.newHashMap();
+    Node mIdChild;
+    int mCode = NO_MATCH;
+
+    Node child(String segment) {
+      if (ID_SEGMENT.equals(segment)) {
+        if (mIdChild == null) {
+          mIdChild = new Node();
+        }
+        return mIdChild;
+      }
+
+      Node child = mChildren.get(segment);
+      if (child == null) {
+        child = new Node();
+        mChildren.put(segment, child);
+      }
+      return child;
+    }
+  }
+
+  private final Node mRoot = new Node();
+  private final ImmutableList<Route<TModel>> mRoutes;
+
+  private UriRouter(ModelGraph<TModel> graph) {
+    final List<Route<TModel>> routes = Lists.newArrayList();
+
+    for (TModel model : graph.getModels()) {
+      Uri uri = model.getUri();
+      if (uri == null) {
+        continue;
+      }
+
+      ImmutableList<Relationship<? extends TModel>> noRelationships = ImmutableList.of();
+      add(routes, segments(uri), new Route<TModel>(routes.size(), RouteType.COLLECTION, model, null, noRelationships));
+      add(routes, withId(segments(uri)), new Route<TModel>(routes.size(), RouteType.ITEM, model, null, noRelationships));
+    }
+
+    // keyed by (parent model, model), so all relationships between the same models share a single endpoint
+    final SetMultimap<List<TModel>, Relationship<? extends TModel>> related = LinkedHashMultimap.create();
+    graph.accept(new RelationshipVisitor<TModel>() {
+      private void addRelated(TModel parentModel, TModel model, Relationship<? extends TModel> relationship) {
+        related.put(ImmutableList.of(parentModel, model), relationship);
+      }
+
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        addRelated(relationship.mReferencedModel, relationship.mModel, relationship);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        addRelated(relationship.mModel, relationship.mLinkedModel, relationship);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        addRelated(relationship.mModel, relationship.mModel, relationship);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+        Collection<? extends TModel> leftModels = linkedModels(relationship.mLeftRelationship);
+        Collection<? extends TModel> rightModels = linkedModels(relationship.mRightRelationship);
+
+        for (TModel left : leftModels) {
+          for (TModel right : rightModels) {
+            addRelated(left, right, relationship);
+            if (!left.equals(right)) {
+              addRelated(right, left, relationship);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        for (TModel polymorphicModel : relationship.mPolymorphicModels.values()) {
+          addRelated(polymorphicModel, relationship.mModel, relationship);
+        }
+      }
+    });
+
+    for (List<TModel> models : related.keySet()) {
+      addRelated(routes, models.get(0), models.get(1), ImmutableList.copyOf(related.get(models)));
+    }
+
+    mRoutes = ImmutableList.copyOf(routes);
+  }
+
+  public static <TModel extends ContentProviderModel> UriRouter<TModel> from(ModelGraph<TModel> graph) {
+    return new UriRouter<TModel>(graph);
+  }
+
+  /**
+   * Returns the code of the route matching given Uri or {@link #NO_MATCH}.
+   */
+  public int match(Uri uri) {
+    Node node = mRoot.mChildren.get(uri.getAuthority());
+    if (node == null) {
+      return NO_MATCH;
+    }
+
+    List<String> segments = uri.getPathSegments();
+    for (int i = 0; i != segments.size() && node != null; ++i) {
+      String segment = segments.get(i);
+
+      Node child = node.mChildren.get(segment);
+      if (child == null && isId(segment)) {
+        child = node.mIdChild;
+      }
+      node = child;
+    }
+
+    return node != null ? node.mCode : NO_MATCH;
+  }
+
+  /**
+   * Returns the route matching given Uri or null.
+   */
+  public Route<TModel> route(Uri uri) {
+    int code = match(uri);
+    return code != NO_MATCH ? mRoutes.get(code) : null;
+  }
+
+  public Route<TModel> getRoute(int code) {
+    return mRoutes.get(code);
+  }
+
+  public ImmutableList<Route<TModel>> getRoutes() {
+    return mRoutes;
+  }
+
+  private void addRelated(List<Route<TModel>> routes, TModel parentModel, TModel model, ImmutableList<Relationship<? extends TModel>> relationships) {
+    Uri parentUri = parentModel.getUri();
+    Uri uri = model.getUri();
+    if (parentUri == null || uri == null) {
+      return;
+    }
+
+    List<String> segments = withId(segments(parentUri));
+    segments.addAll(uri.getPathSegments());
+
+    add(routes, segments, new Route<TModel>(routes.size(), RouteType.RELATED, model, parentModel, relationships));
+  }
+
+  private void add(List<Route<TModel>> routes, List<String> segments, Route<TModel> route) {
+    Node node = mRoot;
+    for (String segment : segments) {
+      node = node.child(segment);
+    }
+
+    if (node.mCode != NO_MATCH) {
+      throw new IllegalStateException("Ambiguous endpoint " + segments + " for " + route + " and " + routes.get(node.mCode));
+    }
+    node.mCode = route.mCode;
+    routes.add(route);
+  }
+
+  private static List<String> segments(Uri uri) {
+    Preconditions.checkArgument(uri.getAuthority() != null, "Uri %s has no authority", uri);
+
+    List<String> segments = Lists.newArrayList();
+    segments.add(uri.getAuthority());
+    segments.addAll(uri.getPathSegments());
+    return segments;
+  }
+
+  private static List<String> withId(List<String> segments) {
+    segments.add(ID_SEGMENT);
+    return segments;
+  }
+
+  private static boolean isId(String segment) {
+    if (segment.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i != segment.length(); ++i) {
+      char c = segment.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static <TModel> Collection<? extends TModel> linkedModels(Relationship<? extends TModel> relationship) {
+    final List<TModel> models = Lists.newArrayList();
+    relationship.accept(new RelationshipVisitor<TModel>() {
+      @Override
+      public void visit(OneToManyRelationship<? extends TModel> relationship) {
+        models.add(relationship.mReferencedModel);
+      }
+
+      @Override
+      public void visit(OneToOneRelationship<? extends TModel> relationship) {
+        models.add(relationship.mLinkedModel);
+      }
+
+      @Override
+      public void visit(RecursiveModelRelationship<? extends TModel> relationship) {
+        models.add(relationship.mModel);
+      }
+
+      @Override
+      public void visit(ManyToManyRelationship<? extends TModel> relationship) {
+      }
+
+      @Override
+      public void visit(PolymorphicRelationship<? extends TModel> relationship) {
+        models.addAll(relationship.mPolymorphicModels.values());
+      }
+    });
+    return models;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.Models.CATEGORIES;
+import static org.chalup.thneed.tests.ProviderTestData.PARENT_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.HierarchyQueries;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.RecursiveModelRelationship;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class ClosureTableTest {
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(CATEGORIES).groupsOther().by(PARENT_ID)
+      .build();
+
+  private final HierarchyQueries<Models> mQueries = HierarchyQueries.of((RecursiveModelRelationship<? extends Models>) GRAPH.getRelationships().get(0));
+
+  private SQLiteDatabase mDb;
+
+  @Before
+  public void setUp() throws Exception {
+    mDb = SQLiteDatabase.create(null);
+    mDb.execSQL("CREATE TABLE categories (_id INTEGER PRIMARY KEY, parent_id INTEGER)");
+    for (String statement : mQueries.getClosureTableStatements()) {
+      mDb.execSQL(statement);
+    }
+
+    // 1 <- 2 <- 3, 4
+    insert(1, null);
+    insert(2, 1L);
+    insert(3, 2L);
+    insert(4, null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mDb.close();
+  }
+
+  @Test
+  public void shouldAddPathsOfInsertedRows() throws Exception {
+    assertThat(paths()).containsOnly(
+        "1-1:0", "2-2:0", "3-3:0", "4-4:0",
+        "1-2:1", "2-3:1", "1-3:2"
+    );
+  }
+
+  @Test
+  public void shouldReplacePathsOfMovedSubtree() throws Exception {
+    mDb.execSQL("UPDATE categories SET parent_id = 4 WHERE _id = 2");
+
+    assertThat(paths()).containsOnly(
+        "1-1:0", "2-2:0", "3-3:0", "4-4:0",
+        "4-2:1", "2-3:1", "4-3:2"
+    );
+  }
+
+  @Test
+  public void shouldRemovePathsOfDeletedRows() throws Exception {
+    mDb.execSQL("DELETE FROM categories WHERE _id = 3");
+
+    assertThat(paths()).containsOnly(
+        "1-1:0", "2-2:0", "4-4:0",
+        "1-2:1"
+    );
+  }
+
+  @Test
+  public void shouldQuerySubtreeAndAncestorsThroughClosureTable() throws Exception {
+    assertThat(ids(mQueries.getClosureSubtreeQuery(), 1)).containsExactly(1L, 2L, 3L);
+    assertThat(ids(mQueries.getClosureAncestorsQuery(), 3)).containsExactly(2L, 1L);
+  }
+
+  @Test
+  public void shouldPopulateClosureTableOfExistingRows() throws Exception {
+    mDb.execSQL("DELETE FROM categories_closure");
+    mDb.execSQL(mQueries.getClosureTablePopulateStatement());
+
+    assertThat(paths()).containsOnly(
+        "1-1:0", "2-2:0", "3-3:0", "4-4:0",
+        "1-2:1", "2-3:1", "1-3:2"
+    );
+  }
+
+  @Test
+  public void shouldMaintainClosureTableAfterTableRebuild() throws Exception {
+    mDb.execSQL("CREATE TABLE categories_new (_id INTEGER PRIMARY KEY, parent_id INTEGER, name TEXT)");
+    mDb.execSQL("INSERT INTO categories_new (_id, parent_id) SELECT _id, parent_id FROM categories");
+    mDb.execSQL("DROP TABLE categories");
+    mDb.execSQL("ALTER TABLE categories_new RENAME TO categories");
+    for (String statement : mQueries.getClosureTriggerStatements()) {
+      mDb.execSQL(statement);
+    }
+
+    insert(5, 3L);
+
+    assertThat(paths()).containsOnly(
+        "1-1:0", "2-2:0", "3-3:0", "4-4:0", "5-5:0",
+        "1-2:1", "2-3:1", "1-3:2", "3-5:1", "2-5:2", "1-5:3"
+    );
+  }
+
+  @Test
+  public void shouldDropClosureTable() throws Exception {
+    for (String statement : mQueries.getClosureTableDropStatements()) {
+      mDb.execSQL(statement);
+    }
+
+    insert(5, 3L);
+
+    Cursor cursor = mDb.rawQuery("SELECT name FROM sqlite_master WHERE name LIKE 'categories_closure%'", null);
+    try {
+      assertThat(cursor.getCount()).isZero();
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private void insert(long id, Long parentId) {
+    mDb.execSQL("INSERT INTO categories (_id, parent_id) VALUES (?, ?)", new Object[] { id, parentId });
+  }
+
+  private List<String> paths() {
+    List<String> paths = Lists.newArrayList();
+    Cursor cursor = mDb.rawQuery("SELECT ancestor_id, descendant_id, depth FROM categories_closure", null);
+    try {
+      while (cursor.moveToNext()) {
+        paths.add(cursor.getLong(0) + "-" + cursor.getLong(1) + ":" + cursor.getLong(2));
+      }
+    } finally {
+      cursor.close();
+    }
+    return paths;
+  }
+
+  private List<Long> ids(String query, long id) {
+    List<Long> ids = Lists.newArrayList();
+    Cursor cursor = mDb.rawQuery(query, new String[] { String.valueOf(id) });
+    try {
+      while (cursor.moveToNext()) {
+        ids.add(cursor.getLong(cursor.getColumnIndexOrThrow(_ID)));
+      }
+    } finally {
+      cursor.close();
+    }
+    return ids;
+  }
+}
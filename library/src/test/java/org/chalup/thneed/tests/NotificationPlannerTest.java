@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.Models.CATEGORIES;
+import static org.chalup.thneed.tests.ProviderTestData.Models.ROOMS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS_SPEAKERS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SPEAKERS;
+import static org.chalup.thneed.tests.ProviderTestData.PARENT_ID;
+import static org.chalup.thneed.tests.ProviderTestData.ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData.SESSION_ID;
+import static org.chalup.thneed.tests.ProviderTestData.SPEAKER_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.NotificationPlanner;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class NotificationPlannerTest {
+
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+      .the(SESSIONS_SPEAKERS)
+      .links(SESSIONS).by(SESSION_ID)
+      .with(SPEAKERS).by(SPEAKER_ID)
+      .the(CATEGORIES).groupsOther().by(PARENT_ID)
+      .build();
+
+  private final NotificationPlanner<Models> mPlanner = NotificationPlanner.from(GRAPH);
+
+  @Mock
+  ContentResolver mockResolver;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  @Test
+  public void shouldNotifyModelAndReferencedModels() throws Exception {
+    assertThat(mPlanner.getUrisToNotify(SESSIONS)).containsOnly(SESSIONS.getUri(), ROOMS.getUri(), SPEAKERS.getUri());
+    assertThat(mPlanner.getUrisToNotify(ROOMS)).containsOnly(ROOMS.getUri());
+    assertThat(mPlanner.getUrisToNotify(CATEGORIES)).containsOnly(CATEGORIES.getUri());
+  }
+
+  @Test
+  public void shouldNotifyBothSidesOfManyToManyRelationship() throws Exception {
+    assertThat(mPlanner.getUrisToNotify(SESSIONS_SPEAKERS)).containsOnly(SESSIONS_SPEAKERS.getUri(), SESSIONS.getUri(), SPEAKERS.getUri());
+  }
+
+  @Test
+  public void shouldNotifyEveryUriOncePerBatch() throws Exception {
+    NotificationPlanner<Models>.Batch batch = mPlanner.newBatch();
+    for (int i = 0; i != 100; ++i) {
+      batch.changed(SESSIONS_SPEAKERS).changed(SESSIONS);
+    }
+
+    batch.notifyChange(mockResolver);
+
+    verify(mockResolver, times(4)).notifyChange(any(Uri.class), any(ContentObserver.class));
+    verify(mockResolver).notifyChange(SESSIONS_SPEAKERS.getUri(), null);
+    verify(mockResolver).notifyChange(SESSIONS.getUri(), null);
+    verify(mockResolver).notifyChange(SPEAKERS.getUri(), null);
+    verify(mockResolver).notifyChange(ROOMS.getUri(), null);
+  }
+
+  @Test
+  public void shouldClearBatchAfterNotifying() throws Exception {
+    NotificationPlanner<Models>.Batch batch = mPlanner.newBatch().changed(ROOMS);
+
+    batch.notifyChange(mockResolver);
+    batch.notifyChange(mockResolver);
+
+    verify(mockResolver, times(1)).notifyChange(ROOMS.getUri(), null);
+  }
+}
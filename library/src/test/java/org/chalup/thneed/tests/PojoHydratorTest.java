@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.database.MatrixCursor;
+
+import com.google.common.collect.ImmutableList;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.PojoHydrator;
+import org.chalup.thneed.models.DatabaseModel;
+import org.chalup.thneed.models.PojoModel;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class PojoHydratorTest {
+
+  public static class Room {
+    long mId;
+    String mName;
+    List<Session> mSessions;
+  }
+
+  public static class Session {
+    long _id;
+    Long room_id;
+    String title;
+    boolean mStarred;
+    Room mRoom;
+  }
+
+  enum Models implements DatabaseModel, PojoModel {
+    ROOMS(Room.class),
+    SESSIONS(Session.class);
+
+    private final Class<?> mModelClass;
+
+    Models(Class<?> modelClass) {
+      mModelClass = modelClass;
+    }
+
+    @Override
+    public String getTableName() {
+      return name().toLowerCase();
+    }
+
+    @Override
+    public Class<?> getModelClass() {
+      return mModelClass;
+    }
+  }
+
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by("_id")
+      .where()
+      .the(Models.SESSIONS).references("id").in(Models.ROOMS).by("room_id")
+      .build();
+
+  private final PojoHydrator<Models> mHydrator = PojoHydrator.from(GRAPH);
+
+  @Test
+  public void shouldBindColumnsToFields() throws Exception {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "room_id", "title", "starred", "unknown" });
+    cursor.addRow(new Object[] { 1L, 7L, "Keynote", 1L, "ignored" });
+    cursor.addRow(new Object[] { 2L, null, "Lunch", 0L, "ignored" });
+
+    List<Session> sessions = mHydrator.hydrate(cursor, Models.SESSIONS);
+
+    assertThat(sessions).hasSize(2);
+    assertThat(sessions.get(0)._id).isEqualTo(1L);
+    assertThat(sessions.get(0).room_id).isEqualTo(7L);
+    assertThat(sessions.get(0).title).isEqualTo("Keynote");
+    assertThat(sessions.get(0).mStarred).isTrue();
+    assertThat(sessions.get(1).room_id).isNull();
+    assertThat(sessions.get(1).mStarred).isFalse();
+  }
+
+  @Test
+  public void shouldHydrateInBatches() throws Exception {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "_id" });
+    for (long i = 0; i != 5; ++i) {
+      cursor.addRow(new Object[] { i });
+    }
+
+    assertThat(mHydrator.<Session>hydrate(cursor, Models.SESSIONS, 2)).hasSize(2);
+    assertThat(mHydrator.<Session>hydrate(cursor, Models.SESSIONS, 2)).hasSize(2);
+    List<Session> last = mHydrator.hydrate(cursor, Models.SESSIONS, 2);
+    assertThat(last).hasSize(1);
+    assertThat(last.get(0)._id).isEqualTo(4L);
+  }
+
+  @Test
+  public void shouldCollectRelatedObjectsFromJoinedCursor() throws Exception {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "id", "name", "sessions._id", "sessions.title" });
+    cursor.addRow(new Object[] { 1L, "Hall", 10L, "Keynote" });
+    cursor.addRow(new Object[] { 1L, "Hall", 11L, "Closing" });
+    cursor.addRow(new Object[] { 2L, "Lab", null, null });
+
+    List<Room> rooms = mHydrator.hydrate(cursor, Models.ROOMS, ImmutableList.of(Models.SESSIONS));
+
+    assertThat(rooms).hasSize(2);
+    assertThat(rooms.get(0).mId).isEqualTo(1L);
+    assertThat(rooms.get(0).mName).isEqualTo("Hall");
+    assertThat(rooms.get(0).mSessions).hasSize(2);
+    assertThat(rooms.get(0).mSessions.get(1).title).isEqualTo("Closing");
+    assertThat(rooms.get(1).mSessions).isNull();
+  }
+
+  @Test
+  public void shouldSetReferencedObjectFromJoinedCursor() throws Exception {
+    MatrixCursor cursor = new MatrixCursor(new String[] { "sessions._id", "sessions.title", "rooms.id", "rooms.name" });
+    cursor.addRow(new Object[] { 10L, "Keynote", 1L, "Hall" });
+    cursor.addRow(new Object[] { 11L, "Closing", 1L, "Hall" });
+
+    List<Session> sessions = mHydrator.hydrate(cursor, Models.SESSIONS, ImmutableList.of(Models.ROOMS));
+
+    assertThat(sessions).hasSize(2);
+    assertThat(sessions.get(0).mRoom.mName).isEqualTo("Hall");
+    assertThat(sessions.get(1).mRoom).isSameAs(sessions.get(0).mRoom);
+  }
+}
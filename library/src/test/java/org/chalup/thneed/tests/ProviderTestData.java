@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import android.net.Uri;
+
+import org.chalup.thneed.models.ContentProviderModel;
+import org.chalup.thneed.models.DatabaseModel;
+
+class ProviderTestData {
+  static final String AUTHORITY = "org.chalup.thneed.tests";
+
+  static final String _ID = "_id";
+  static final String ROOM_ID = "room_id";
+  static final String BACKUP_ROOM_ID = "backup_room_id";
+  static final String SESSION_ID = "session_id";
+  static final String SPEAKER_ID = "speaker_id";
+  static final String PARENT_ID = "parent_id";
+
+  enum Models implements DatabaseModel, ContentProviderModel {
+    ROOMS,
+    SESSIONS,
+    SPEAKERS,
+    SESSIONS_SPEAKERS,
+    SESSIONS_MODERATORS,
+    CATEGORIES;
+
+    @Override
+    public String getTableName() {
+      return name().toLowerCase();
+    }
+
+    @Override
+    public Uri getUri() {
+      return Uri.parse("content://" + AUTHORITY + "/" + getTableName());
+    }
+  }
+}
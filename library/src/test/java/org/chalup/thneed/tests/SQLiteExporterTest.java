@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.Models.ROOMS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS;
+import static org.chalup.thneed.tests.ProviderTestData.ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.chalup.thneed.ExportPlan;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.SQLiteExporter;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.StringWriter;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class SQLiteExporterTest {
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+      .build();
+
+  private SQLiteDatabase mDb;
+
+  @Before
+  public void setUp() throws Exception {
+    mDb = SQLiteDatabase.create(null);
+    mDb.execSQL("CREATE TABLE rooms (_id INTEGER PRIMARY KEY)");
+    mDb.execSQL("CREATE TABLE sessions (_id INTEGER PRIMARY KEY, room_id INTEGER)");
+    mDb.execSQL("INSERT INTO rooms (_id) VALUES (1), (2)");
+    mDb.execSQL("INSERT INTO sessions (_id, room_id) VALUES (10, 1), (11, 1), (12, 2)");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mDb.close();
+  }
+
+  @Test
+  public void shouldExportRootRowWithOwnedRowsAndDropTemporaryTables() throws Exception {
+    StringWriter writer = new StringWriter();
+
+    SQLiteExporter.export(mDb, ExportPlan.from(GRAPH, ROOMS), 1, writer, 1);
+
+    assertThat(writer.toString()).isEqualTo(
+        "{\"table\":\"rooms\",\"row\":{\"_id\":1}}\n" +
+            "{\"table\":\"sessions\",\"row\":{\"_id\":10,\"room_id\":1}}\n" +
+            "{\"table\":\"sessions\",\"row\":{\"_id\":11,\"room_id\":1}}\n");
+
+    Cursor cursor = mDb.rawQuery("SELECT name FROM sqlite_temp_master", null);
+    try {
+      assertThat(cursor.getCount()).isZero();
+    } finally {
+      cursor.close();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.Models.ROOMS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS;
+import static org.chalup.thneed.tests.ProviderTestData.ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.google.common.collect.Lists;
+
+import org.chalup.thneed.IdRemapper;
+import org.chalup.thneed.ImportWriter;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.SQLiteImportWriter;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class SQLiteImportWriterTest {
+  private static final String REMOTE_ID = "remote_id";
+
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+      .build();
+
+  private SQLiteDatabase mDb;
+  private SQLiteImportWriter<Models> mWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    mDb = SQLiteDatabase.create(null);
+    mDb.execSQL("CREATE TABLE rooms (_id INTEGER PRIMARY KEY, remote_id INTEGER)");
+    mDb.execSQL("CREATE TABLE sessions (_id INTEGER PRIMARY KEY, remote_id INTEGER, room_id INTEGER)");
+    mWriter = new SQLiteImportWriter<Models>(mDb);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mWriter.close();
+    mDb.close();
+  }
+
+  @Test
+  public void shouldRemapReferencesOnceWhenLocalAndRemoteIdsOverlap() throws Exception {
+    IdRemapper<Models> remapper = IdRemapper.from(GRAPH);
+    ImportWriter<Models, ContentValues> writer = remapper.recordingOn(mWriter, REMOTE_ID);
+
+    // the sessions are streamed before their rooms
+    writer.insert(SESSIONS, row(10, 100L), null);
+    writer.insert(ROOMS, row(100, null), null);
+    remapper.remap(mWriter);
+
+    // the room with remote id 1 gets local id 2, while the first session already references the local room 1
+    writer.insert(SESSIONS, row(11, 1L), null);
+    writer.insert(ROOMS, row(1, null), null);
+    remapper.remap(mWriter);
+
+    assertThat(roomIds()).containsExactly(1L, 2L);
+  }
+
+  @Test
+  public void shouldInsertRowsWithDifferentColumnSets() throws Exception {
+    mWriter.insert(SESSIONS, row(10, 1L), null);
+    mWriter.insert(SESSIONS, row(11, null), null);
+
+    ContentValues sameColumnsOtherOrder = new ContentValues();
+    sameColumnsOtherOrder.put(ROOM_ID, 3L);
+    sameColumnsOtherOrder.put(REMOTE_ID, 12L);
+    mWriter.insert(SESSIONS, sameColumnsOtherOrder, null);
+
+    ContentValues otherColumnsSameCount = new ContentValues();
+    otherColumnsSameCount.put(_ID, 100L);
+    otherColumnsSameCount.put(REMOTE_ID, 13L);
+    mWriter.insert(SESSIONS, otherColumnsSameCount, null);
+
+    mWriter.insert(SESSIONS, row(14, 5L), ROOM_ID);
+
+    assertThat(roomIds()).containsExactly(1L, 0L, 3L, 0L, 0L);
+  }
+
+  private static ContentValues row(long remoteId, Long roomId) {
+    ContentValues values = new ContentValues();
+    values.put(REMOTE_ID, remoteId);
+    if (roomId != null) {
+      values.put(ROOM_ID, roomId);
+    }
+    return values;
+  }
+
+  private List<Long> roomIds() {
+    List<Long> roomIds = Lists.newArrayList();
+    Cursor cursor = mDb.rawQuery("SELECT room_id FROM sessions ORDER BY _id", null);
+    try {
+      while (cursor.moveToNext()) {
+        roomIds.add(cursor.getLong(0));
+      }
+    } finally {
+      cursor.close();
+    }
+    return roomIds;
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.Models.ROOMS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SPEAKERS;
+import static org.chalup.thneed.tests.ProviderTestData.ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.ModelStatistics;
+import org.chalup.thneed.SQLiteStatistics;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class SQLiteStatisticsTest {
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .with(SPEAKERS)
+      .where()
+      .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+      .build();
+
+  private SQLiteDatabase mDb;
+
+  @Before
+  public void setUp() throws Exception {
+    mDb = SQLiteDatabase.create(null);
+    mDb.execSQL("CREATE TABLE rooms (_id INTEGER PRIMARY KEY)");
+    mDb.execSQL("CREATE TABLE sessions (_id INTEGER PRIMARY KEY, room_id INTEGER)");
+    mDb.execSQL("CREATE INDEX sessions_room_id ON sessions (room_id)");
+    mDb.execSQL("CREATE TABLE speakers (_id INTEGER PRIMARY KEY)");
+
+    for (int i = 0; i != 3; ++i) {
+      mDb.execSQL("INSERT INTO rooms (_id) VALUES (?)", new Object[] { i });
+    }
+    for (int i = 0; i != 12; ++i) {
+      mDb.execSQL("INSERT INTO sessions (room_id) VALUES (?)", new Object[] { i % 3 });
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mDb.close();
+  }
+
+  @Test
+  public void shouldReadStatisticsGatheredByAnalyze() throws Exception {
+    mDb.execSQL("ANALYZE");
+
+    ModelStatistics<Models> statistics = SQLiteStatistics.collect(mDb, GRAPH);
+
+    assertThat(statistics.getRowCount(ROOMS)).isEqualTo(3);
+    assertThat(statistics.getRowCount(SESSIONS)).isEqualTo(12);
+    assertThat(statistics.getDistinctValues(SESSIONS, ROOM_ID)).isEqualTo(3);
+  }
+
+  @Test
+  public void shouldReturnUnknownStatisticsOfNotAnalyzedTables() throws Exception {
+    mDb.execSQL("ANALYZE");
+
+    ModelStatistics<Models> statistics = SQLiteStatistics.collect(mDb, GRAPH);
+
+    assertThat(statistics.getRowCount(SPEAKERS)).isEqualTo(ModelStatistics.UNKNOWN);
+    assertThat(statistics.getDistinctValues(ROOMS, _ID)).isEqualTo(ModelStatistics.UNKNOWN);
+  }
+
+  @Test
+  public void shouldReturnEmptyStatisticsWithoutAnalyze() throws Exception {
+    ModelStatistics<Models> statistics = SQLiteStatistics.collect(mDb, GRAPH);
+
+    assertThat(statistics.getRowCount(SESSIONS)).isEqualTo(ModelStatistics.UNKNOWN);
+    assertThat(statistics.getDistinctValues(SESSIONS, ROOM_ID)).isEqualTo(ModelStatistics.UNKNOWN);
+  }
+}
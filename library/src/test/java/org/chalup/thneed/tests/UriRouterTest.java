@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Jerzy Chalupski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.chalup.thneed.tests;
+
+import static org.chalup.thneed.tests.ProviderTestData.BACKUP_ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData.Models.CATEGORIES;
+import static org.chalup.thneed.tests.ProviderTestData.Models.ROOMS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS_MODERATORS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SESSIONS_SPEAKERS;
+import static org.chalup.thneed.tests.ProviderTestData.Models.SPEAKERS;
+import static org.chalup.thneed.tests.ProviderTestData.PARENT_ID;
+import static org.chalup.thneed.tests.ProviderTestData.ROOM_ID;
+import static org.chalup.thneed.tests.ProviderTestData.SESSION_ID;
+import static org.chalup.thneed.tests.ProviderTestData.SPEAKER_ID;
+import static org.chalup.thneed.tests.ProviderTestData._ID;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.net.Uri;
+
+import org.chalup.thneed.ManyToManyRelationship;
+import org.chalup.thneed.ModelGraph;
+import org.chalup.thneed.OneToManyRelationship;
+import org.chalup.thneed.UriRouter;
+import org.chalup.thneed.UriRouter.Route;
+import org.chalup.thneed.UriRouter.RouteType;
+import org.chalup.thneed.tests.ProviderTestData.Models;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(emulateSdk = 18, manifest = Config.NONE)
+public class UriRouterTest {
+
+  private static final ModelGraph<Models> GRAPH = ModelGraph.of(Models.class)
+      .identifiedByDefault().by(_ID)
+      .where()
+      .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+      .the(SESSIONS_SPEAKERS)
+      .links(SESSIONS).by(SESSION_ID)
+      .with(SPEAKERS).by(SPEAKER_ID)
+      .the(CATEGORIES).groupsOther().by(PARENT_ID)
+      .build();
+
+  private final UriRouter<Models> mRouter = UriRouter.from(GRAPH);
+
+  @Test
+  public void shouldMatchCollectionAndItemEndpoints() throws Exception {
+    Route<Models> collection = mRouter.route(uri("/sessions"));
+    assertThat(collection.mType).isEqualTo(RouteType.COLLECTION);
+    assertThat(collection.mModel).isEqualTo(SESSIONS);
+
+    Route<Models> item = mRouter.route(uri("/sessions/42"));
+    assertThat(item.mType).isEqualTo(RouteType.ITEM);
+    assertThat(item.mModel).isEqualTo(SESSIONS);
+  }
+
+  @Test
+  public void shouldMatchOneToManyEndpoints() throws Exception {
+    Route<Models> route = mRouter.route(uri("/rooms/7/sessions"));
+
+    assertThat(route.mType).isEqualTo(RouteType.RELATED);
+    assertThat(route.mModel).isEqualTo(SESSIONS);
+    assertThat(route.mParentModel).isEqualTo(ROOMS);
+    assertThat(route.mRelationships).hasSize(1);
+    assertThat(route.mRelationships.get(0)).isInstanceOf(OneToManyRelationship.class);
+  }
+
+  @Test
+  public void shouldMatchManyToManyEndpointsInBothDirections() throws Exception {
+    Route<Models> speakers = mRouter.route(uri("/sessions/42/speakers"));
+    assertThat(speakers.mModel).isEqualTo(SPEAKERS);
+    assertThat(speakers.mParentModel).isEqualTo(SESSIONS);
+    assertThat(speakers.mRelationships.get(0)).isInstanceOf(ManyToManyRelationship.class);
+
+    Route<Models> sessions = mRouter.route(uri("/speakers/3/sessions"));
+    assertThat(sessions.mModel).isEqualTo(SESSIONS);
+    assertThat(sessions.mParentModel).isEqualTo(SPEAKERS);
+  }
+
+  @Test
+  public void shouldMatchRecursiveEndpoints() throws Exception {
+    Route<Models> route = mRouter.route(uri("/categories/1/categories"));
+
+    assertThat(route.mModel).isEqualTo(CATEGORIES);
+    assertThat(route.mParentModel).isEqualTo(CATEGORIES);
+  }
+
+  @Test
+  public void shouldShareEndpointOfRelationshipsBetweenSameModels() throws Exception {
+    ModelGraph<Models> graph = ModelGraph.of(Models.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(SESSIONS).references(ROOMS).by(ROOM_ID)
+        .the(SESSIONS).references(ROOMS).by(BACKUP_ROOM_ID)
+        .build();
+
+    Route<Models> route = UriRouter.from(graph).route(uri("/rooms/7/sessions"));
+
+    assertThat(route.mModel).isEqualTo(SESSIONS);
+    assertThat(route.mRelationships).hasSize(2);
+  }
+
+  @Test
+  public void shouldShareEndpointOfManyToManyRelationshipsWithDifferentJoinModels() throws Exception {
+    ModelGraph<Models> graph = ModelGraph.of(Models.class)
+        .identifiedByDefault().by(_ID)
+        .where()
+        .the(SESSIONS_SPEAKERS)
+        .links(SESSIONS).by(SESSION_ID)
+        .with(SPEAKERS).by(SPEAKER_ID)
+        .the(SESSIONS_MODERATORS)
+        .links(SESSIONS).by(SESSION_ID)
+        .with(SPEAKERS).by(SPEAKER_ID)
+        .build();
+
+    UriRouter<Models> router = UriRouter.from(graph);
+
+    assertThat(router.route(uri("/sessions/42/speakers")).mRelationships).hasSize(2);
+    assertThat(router.route(uri("/speakers/3/sessions")).mRelationships).hasSize(2);
+  }
+
+  @Test
+  public void shouldReturnStableCodes() throws Exception {
+    int code = mRouter.match(uri("/sessions/42/speakers"));
+
+    assertThat(code).isNotEqualTo(UriRouter.NO_MATCH);
+    assertThat(mRouter.getRoute(code).mCode).isEqualTo(code);
+    assertThat(mRouter.match(uri("/sessions/1/speakers"))).isEqualTo(code);
+  }
+
+  @Test
+  public void shouldNotMatchUnknownEndpoints() throws Exception {
+    assertThat(mRouter.match(uri("/sessions/abc"))).isEqualTo(UriRouter.NO_MATCH);
+    assertThat(mRouter.match(uri("/rooms/7/speakers"))).isEqualTo(UriRouter.NO_MATCH);
+    assertThat(mRouter.match(uri("/sessions/42/speakers/1"))).isEqualTo(UriRouter.NO_MATCH);
+    assertThat(mRouter.match(Uri.parse("content://other.authority/sessions"))).isEqualTo(UriRouter.NO_MATCH);
+  }
+
+  private static Uri uri(String path) {
+    return Uri.parse("content://" + ProviderTestData.AUTHORITY + path);
+  }
+}